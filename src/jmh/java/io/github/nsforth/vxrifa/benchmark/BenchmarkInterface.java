@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa.benchmark;
+
+import io.github.nsforth.vxrifa.VxRifa;
+import io.vertx.core.Future;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@VxRifa
+public interface BenchmarkInterface {
+    
+    void fire(int value);
+    
+    Future<Integer> call(int value);
+    
+    Future<Integer> ping();
+    
+    ReadStream<Integer> stream(int count);
+    
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa.benchmark;
+
+import io.vertx.core.Handler;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+class CountingReadStream implements ReadStream<Integer> {
+
+    private int counter;
+    private Handler<Integer> handler;
+    private Handler<Void> endHandler;
+    private boolean flowing;
+
+    CountingReadStream(int count) {
+        this.counter = count;
+    }
+
+    @Override
+    public ReadStream<Integer> exceptionHandler(Handler<Throwable> handler) {
+        return this;
+    }
+
+    @Override
+    public ReadStream<Integer> handler(Handler<Integer> handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    @Override
+    public ReadStream<Integer> pause() {
+        this.flowing = false;
+        return this;
+    }
+
+    @Override
+    public ReadStream<Integer> resume() {
+        this.flowing = true;
+        while (handle()) {
+
+        }
+        return this;
+    }
+
+    @Override
+    public ReadStream<Integer> endHandler(Handler<Void> endHandler) {
+        this.endHandler = endHandler;
+        return this;
+    }
+
+    @Override
+    public ReadStream<Integer> fetch(long amount) {
+        return this;
+    }
+
+    private boolean handle() {
+        if (handler == null || !flowing) {
+            return false;
+        }
+        if (counter > 0) {
+            handler.handle(counter--);
+            return true;
+        }
+        if (counter == 0) {
+            counter = -1;
+            endHandler.handle(null);
+            return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa.benchmark;
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.streams.ReadStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures cost of generated sender calls. Run with <tt>mvn -Pjmh test-compile exec:exec</tt>,
+ * gc profiler reports bytes allocated per call as <tt>gc.alloc.rate.norm</tt>.
+ * Allocations of eventBus and receiver side are included because they happen on event loop threads.
+ * @author Nikita Staroverov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SenderAllocationBenchmark {
+    
+    // Void calls are not acknowledged so event loop is drained by request after every batch of them
+    private static final int FIRE_BATCH = 1024;
+    
+    private Vertx vertx;
+    private Context senderContext;
+    private BenchmarkInterface sender;
+    private final Completion completion = new Completion();
+    private int fired;
+
+    @Setup
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        VxRifaUtil.registerRIFACodec(vertx);
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(new ReceiverVerticle(), result -> {
+            if (result.succeeded()) {
+                deployed.complete(result.result());
+            } else {
+                deployed.completeExceptionally(result.cause());
+            }
+        });
+        deployed.get(10, TimeUnit.SECONDS);
+        sender = VxRifaUtil.getSenderByInterface(vertx, BenchmarkInterface.class);
+        senderContext = vertx.getOrCreateContext();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(result -> closed.complete(null));
+        closed.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void voidMethod() {
+        sender.fire(fired);
+        if (++fired % FIRE_BATCH == 0) {
+            completion.await(sender.call(fired));
+        }
+    }
+
+    @Benchmark
+    public Object futureMethod() {
+        return completion.await(sender.call(fired++));
+    }
+
+    @Benchmark
+    public Object parameterlessMethod() {
+        return completion.await(sender.ping());
+    }
+
+    @Benchmark
+    public Object streamMethod() {
+        // Stream handlers should be set on context where stream was created
+        return completion.await(senderContext, sender);
+    }
+    
+    /**
+     * Reusable waiter so benchmark itself does not allocate handlers per call.
+     */
+    private static class Completion implements Handler<AsyncResult<Integer>> {
+        
+        private final Handler<Integer> itemHandler = item -> result = item;
+        private final Handler<Void> endHandler = v -> done = true;
+        private final Handler<Throwable> exceptionHandler = ex -> done = true;
+        private final Handler<Void> streamStarter = v -> startStream();
+        private volatile boolean done;
+        private volatile Object result;
+        private BenchmarkInterface streamSender;
+
+        @Override
+        public void handle(AsyncResult<Integer> asyncResult) {
+            result = asyncResult.succeeded() ? asyncResult.result() : asyncResult.cause();
+            done = true;
+        }
+        
+        private Object await(Future<Integer> future) {
+            done = false;
+            future.onComplete(this);
+            return await();
+        }
+        
+        private Object await(Context context, BenchmarkInterface sender) {
+            done = false;
+            streamSender = sender;
+            context.runOnContext(streamStarter);
+            return await();
+        }
+        
+        private void startStream() {
+            ReadStream<Integer> stream = streamSender.stream(1);
+            stream.exceptionHandler(exceptionHandler).endHandler(endHandler).handler(itemHandler);
+        }
+        
+        private Object await() {
+            while (!done) {
+                LockSupport.parkNanos(1000);
+            }
+            return result;
+        }
+        
+    }
+    
+    private static class ReceiverVerticle extends AbstractVerticle implements BenchmarkInterface {
+
+        @Override
+        public void start(Promise<Void> startPromise) {
+            VxRifaUtil.registerReceiver(vertx, BenchmarkInterface.class, this).onComplete(result -> {
+                if (result.succeeded()) {
+                    startPromise.complete();
+                } else {
+                    startPromise.fail(result.cause());
+                }
+            });
+        }
+
+        @Override
+        public void fire(int value) {
+        }
+
+        @Override
+        public Future<Integer> call(int value) {
+            return Future.succeededFuture(value);
+        }
+
+        @Override
+        public Future<Integer> ping() {
+            return Future.succeededFuture(0);
+        }
+
+        @Override
+        public ReadStream<Integer> stream(int count) {
+            return new CountingReadStream(count);
+        }
+        
+    }
+    
+}
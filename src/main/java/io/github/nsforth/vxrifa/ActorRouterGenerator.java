@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.List;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates implementation of interface annotated with {@link VxRifa} that passes every call
+ * to actor of {@link VxRifaActors} chosen by {@link VxRifaShardKey} parameter without reflection.
+ *
+ * @author Nikita Staroverov
+ */
+class ActorRouterGenerator {
+
+    static final String VXRIFA_ACTOR_ROUTER_SUFFIX = "VxRifaActorRouter";
+
+    private final Messager messager;
+    private final TypeElement interfaceElement;
+    private final Elements elements;
+
+    private FieldSpec actorsField;
+
+    private TypeSpec.Builder tsb;
+
+    ActorRouterGenerator(Messager messager, TypeElement interfaceElement, Elements elements) {
+        this.messager = messager;
+        this.interfaceElement = interfaceElement;
+        this.elements = elements;
+    }
+
+    ActorRouterGenerator generateInitializing() {
+
+        tsb = GeneratorsHelper.generateClass(interfaceElement, VXRIFA_ACTOR_ROUTER_SUFFIX);
+
+        tsb.addSuperinterface(TypeName.get(interfaceElement.asType()));
+
+        actorsField = FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(VxRifaActors.class), TypeName.get(interfaceElement.asType())), "actors", Modifier.PRIVATE, Modifier.FINAL).build();
+        tsb.addField(actorsField);
+
+        tsb.addMethod(
+                MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(actorsField.type, actorsField.name)
+                        .addStatement("this.$N = $N", actorsField, actorsField)
+                        .build()
+        );
+
+        return this;
+
+    }
+
+    ActorRouterGenerator generateMethods() {
+
+        List<ExecutableElement> methods = GeneratorsHelper.getSuitableMethods(elements, interfaceElement);
+
+        for (ExecutableElement method : methods) {
+
+            TypeMirror returnType = method.getReturnType();
+            boolean returnsFuture = returnType.toString().startsWith(io.vertx.core.Future.class.getCanonicalName());
+
+            if (returnType.getKind() != TypeKind.VOID && !returnsFuture) {
+
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return void or io.vertx.core.Future to be called on actor", interfaceElement, method), method);
+                continue;
+
+            }
+
+            VariableElement shardKey = getShardKey(method);
+
+            if (shardKey == null) {
+
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should have @VxRifaShardKey parameter to be called on actor", interfaceElement, method), method);
+                continue;
+
+            }
+
+            MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(method.getSimpleName().toString())
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.get(returnType));
+
+            MethodsHelper methodsHelper = new MethodsHelper(method);
+
+            methodsHelper.getParameters().forEach(param -> methodBuilder.addParameter(param));
+
+            // Lambda parameter is prefixed so it could not clash with parameters of method
+            if (returnsFuture) {
+                methodBuilder.addStatement("return this.$N.call($N, vxRifaActor -> vxRifaActor.$N($L))", actorsField, shardKey.getSimpleName().toString(), method.getSimpleName().toString(), methodsHelper.getParamsNamesCommaSeparated());
+            } else {
+                methodBuilder.addStatement("this.$N.send($N, vxRifaActor -> vxRifaActor.$N($L))", actorsField, shardKey.getSimpleName().toString(), method.getSimpleName().toString(), methodsHelper.getParamsNamesCommaSeparated());
+            }
+
+            methodBuilder.addAnnotation(Override.class);
+
+            tsb.addMethod(methodBuilder.build());
+
+        }
+
+        return this;
+
+    }
+
+    private VariableElement getShardKey(ExecutableElement method) {
+
+        for (VariableElement parameter : method.getParameters()) {
+            if (parameter.getAnnotation(VxRifaShardKey.class) != null) {
+                return parameter;
+            }
+        }
+
+        return null;
+
+    }
+
+    TypeSpec buildClass() {
+
+        return tsb.build();
+
+    }
+
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates {@link MessageCodec} for interface annotated with {@link VxRifa} or {@link VxRifaPublish}.
+ * Generated codec knows parameters types of every method at compile time so it writes them to the wire
+ * without reflection and type tags. Parameters of unsupported types are reported as compiler warnings
+ * and such methods could be used only with local eventBus.
+ *
+ * @author Nikita Staroverov
+ */
+class CodecGenerator {
+
+    static final String VXRIFA_CODEC_SUFFIX = "VxRifaCodec";
+
+    private static final String CLUSTER_SERIALIZABLE = "io.vertx.core.shareddata.impl.ClusterSerializable";
+
+    private final Messager messager;
+    private final TypeElement interfaceElement;
+    private final Elements elements;
+    private final Types types;
+
+    private final Map<String, FieldSpec> enumValuesFields = new LinkedHashMap<>();
+
+    private FieldSpec codecNameField;
+    private FieldSpec signatureHashField;
+    private TypeSpec.Builder tsb;
+
+    CodecGenerator(Messager messager, TypeElement interfaceElement, Elements elements, Types types) {
+        this.messager = messager;
+        this.interfaceElement = interfaceElement;
+        this.elements = elements;
+        this.types = types;
+    }
+
+    static ClassName getCodecClassName(TypeElement interfaceElement) {
+        return ClassName.get(ClassName.get(interfaceElement).packageName(), interfaceElement.getSimpleName() + VXRIFA_CODEC_SUFFIX);
+    }
+
+    CodecGenerator generateInitializing() {
+
+        tsb = GeneratorsHelper.generateClass(interfaceElement, VXRIFA_CODEC_SUFFIX);
+
+        tsb.addSuperinterface(ParameterizedTypeName.get(ClassName.get(MessageCodec.class), TypeName.get(RIFAInvocation.class), TypeName.get(RIFAInvocation.class)));
+
+        codecNameField = FieldSpec.builder(String.class, "CODEC_NAME", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$S", getCodecClassName(interfaceElement).canonicalName())
+                .build();
+        tsb.addField(codecNameField);
+
+        signatureHashField = FieldSpec.builder(int.class, "SIGNATURE_HASH", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", GeneratorsHelper.getSignatureHash(GeneratorsHelper.getSuitableMethods(elements, interfaceElement)))
+                .build();
+        tsb.addField(signatureHashField);
+
+        return this;
+
+    }
+
+    CodecGenerator generateWireMethods() {
+
+        CodeBlock.Builder encodeCode = CodeBlock.builder()
+                .addStatement("int methodId = message.getMethodId()")
+                .addStatement("buffer.appendInt($N).appendShort((short) methodId)", signatureHashField)
+                .beginControlFlow("switch (methodId)");
+
+        CodeBlock.Builder decodeCode = CodeBlock.builder()
+                .beginControlFlow("if (buffer.getInt(pos) != $N)", signatureHashField)
+                .addStatement("throw new $T($S)", IllegalStateException.class, String.format("Message was sent by incompatible version of %s", interfaceElement))
+                .endControlFlow()
+                .addStatement("int methodId = buffer.getShort(pos + 4)")
+                .addStatement("pos += 6")
+                .beginControlFlow("switch (methodId)");
+
+        List<ExecutableElement> methods = GeneratorsHelper.getSuitableMethods(elements, interfaceElement);
+
+        for (int methodId = 0; methodId < methods.size(); methodId++) {
+
+            ExecutableElement method = methods.get(methodId);
+
+            ClassName messageClassName = MessagesGenerator.getMessageClassName(interfaceElement, methods, methodId);
+
+            encodeCode.beginControlFlow("case $L:", methodId);
+            decodeCode.beginControlFlow("case $L:", methodId);
+
+            List<? extends VariableElement> parameters = method.getParameters();
+            StringBuilder decodedNames = new StringBuilder();
+            boolean encodable = true;
+            if (!parameters.isEmpty()) {
+                encodeCode.addStatement("$T typedMessage = ($T) message", messageClassName, messageClassName);
+            }
+            for (int i = 0; i < parameters.size(); i++) {
+                VariableElement parameter = parameters.get(i);
+                String name = "p" + i;
+                TypeMirror type = parameter.asType();
+                if (isWireSupported(type)) {
+                    encodeCode.addStatement("$T $L = typedMessage.$L", TypeName.get(type), name, parameter.getSimpleName());
+                    encodeCode.add(writeValue(type, name));
+                    decodeCode.add(readValue(type, name));
+                } else {
+                    messager.printMessage(Diagnostic.Kind.WARNING,
+                            String.format("%s.%s parameter %s of type %s can not be encoded for clustered eventBus, method is usable only locally", interfaceElement, method, parameter.getSimpleName(), type),
+                            parameter);
+                    String error = String.format("Parameter %s of %s.%s has no wire encoding", parameter.getSimpleName(), interfaceElement, method);
+                    encodeCode.addStatement("throw new $T($S)", UnsupportedOperationException.class, error);
+                    decodeCode.addStatement("throw new $T($S)", UnsupportedOperationException.class, error);
+                    encodable = false;
+                    break;
+                }
+                if (decodedNames.length() > 0) {
+                    decodedNames.append(",");
+                }
+                decodedNames.append(name);
+            }
+
+            if (encodable) {
+                encodeCode.addStatement("break");
+                decodeCode.addStatement("return $L", MessagesGenerator.getMessage(messageClassName, method, CodeBlock.of("$L", decodedNames)));
+            }
+
+            encodeCode.endControlFlow();
+            decodeCode.endControlFlow();
+
+        }
+
+        // Batch envelope encodes its invocations by this codec
+        encodeCode.beginControlFlow("case $T.METHOD_ID:", RIFABatch.class)
+                .addStatement("$T.encodeToWire(buffer, ($T) message, this)", RIFABatch.class, RIFABatch.class)
+                .addStatement("break")
+                .endControlFlow();
+        decodeCode.beginControlFlow("case $T.METHOD_ID:", RIFABatch.class)
+                .addStatement("return $T.decodeFromWire(pos, buffer, this)", RIFABatch.class)
+                .endControlFlow();
+
+        encodeCode.add("default:\n").indent()
+                .addStatement("throw new $T(\"Unknown method id \" + methodId)", IllegalArgumentException.class)
+                .unindent()
+                .endControlFlow();
+
+        decodeCode.add("default:\n").indent()
+                .addStatement("throw new $T(\"Unknown method id \" + methodId)", IllegalArgumentException.class)
+                .unindent()
+                .endControlFlow();
+
+        enumValuesFields.values().forEach(field -> tsb.addField(field));
+
+        tsb.addMethod(
+                MethodSpec.methodBuilder("encodeToWire")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(Buffer.class, "buffer")
+                        .addParameter(RIFAInvocation.class, "message")
+                        .addCode(encodeCode.build())
+                        .build()
+        );
+
+        tsb.addMethod(
+                MethodSpec.methodBuilder("decodeFromWire")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(int.class, "pos")
+                        .addParameter(Buffer.class, "buffer")
+                        .returns(RIFAInvocation.class)
+                        .addCode(decodeCode.build())
+                        .build()
+        );
+
+        return this;
+
+    }
+
+    CodecGenerator generateLocalMethods() {
+
+        tsb.addMethod(
+                MethodSpec.methodBuilder("transform")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(RIFAInvocation.class, "message")
+                        .returns(RIFAInvocation.class)
+                        .addStatement("return message")
+                        .build()
+        );
+
+        tsb.addMethod(
+                MethodSpec.methodBuilder("name")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(String.class)
+                        .addStatement("return $N", codecNameField)
+                        .build()
+        );
+
+        tsb.addMethod(
+                MethodSpec.methodBuilder("systemCodecID")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(byte.class)
+                        .addStatement("return -1")
+                        .build()
+        );
+
+        return this;
+
+    }
+
+    TypeSpec buildClass() {
+
+        return tsb.build();
+
+    }
+
+    private boolean isWireSupported(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            return type.toString().equals("byte[]");
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        if (isBoxedPrimitive(type) || isType(type, String.class) || isType(type, Buffer.class) || isEnum(type)) {
+            return true;
+        }
+        return isClusterSerializable(type);
+    }
+
+    private CodeBlock writeValue(TypeMirror type, String name) {
+        CodeBlock.Builder code = CodeBlock.builder();
+        if (type.getKind().isPrimitive()) {
+            code.addStatement(writePrimitive(type.getKind(), name));
+        } else if (type.getKind() == TypeKind.ARRAY) {
+            code.beginControlFlow("if ($L == null)", name)
+                    .addStatement("buffer.appendInt(-1)")
+                    .nextControlFlow("else")
+                    .addStatement("buffer.appendInt($L.length).appendBytes($L)", name, name)
+                    .endControlFlow();
+        } else if (isBoxedPrimitive(type)) {
+            code.beginControlFlow("if ($L == null)", name)
+                    .addStatement("buffer.appendByte((byte) 0)")
+                    .nextControlFlow("else")
+                    .addStatement("buffer.appendByte((byte) 1)")
+                    .addStatement(writePrimitive(types.unboxedType(type).getKind(), name))
+                    .endControlFlow();
+        } else if (isType(type, String.class)) {
+            code.beginControlFlow("if ($L == null)", name)
+                    .addStatement("buffer.appendInt(-1)")
+                    .nextControlFlow("else")
+                    .addStatement("byte[] $LBytes = $L.getBytes($T.UTF_8)", name, name, StandardCharsets.class)
+                    .addStatement("buffer.appendInt($LBytes.length).appendBytes($LBytes)", name, name)
+                    .endControlFlow();
+        } else if (isType(type, Buffer.class)) {
+            code.beginControlFlow("if ($L == null)", name)
+                    .addStatement("buffer.appendInt(-1)")
+                    .nextControlFlow("else")
+                    .addStatement("buffer.appendInt($L.length()).appendBuffer($L)", name, name)
+                    .endControlFlow();
+        } else if (isEnum(type)) {
+            code.addStatement("buffer.appendInt($L == null ? -1 : $L.ordinal())", name, name);
+        } else {
+            code.beginControlFlow("if ($L == null)", name)
+                    .addStatement("buffer.appendByte((byte) 0)")
+                    .nextControlFlow("else")
+                    .addStatement("buffer.appendByte((byte) 1)")
+                    .addStatement("$L.writeToBuffer(buffer)", name)
+                    .endControlFlow();
+        }
+        return code.build();
+    }
+
+    private CodeBlock readValue(TypeMirror type, String name) {
+        CodeBlock.Builder code = CodeBlock.builder();
+        TypeName typeName = TypeName.get(type);
+        if (type.getKind().isPrimitive()) {
+            code.addStatement("$T $L = $L", typeName, name, readPrimitive(type.getKind()));
+            code.addStatement("pos += $L", primitiveSize(type.getKind()));
+        } else if (type.getKind() == TypeKind.ARRAY) {
+            code.addStatement("int $LLength = buffer.getInt(pos)", name)
+                    .addStatement("pos += 4")
+                    .addStatement("byte[] $L = null", name)
+                    .beginControlFlow("if ($LLength >= 0)", name)
+                    .addStatement("$L = buffer.getBytes(pos, pos + $LLength)", name, name)
+                    .addStatement("pos += $LLength", name)
+                    .endControlFlow();
+        } else if (isBoxedPrimitive(type)) {
+            TypeKind primitiveKind = types.unboxedType(type).getKind();
+            code.addStatement("$T $L = null", typeName, name)
+                    .addStatement("pos += 1")
+                    .beginControlFlow("if (buffer.getByte(pos - 1) != 0)")
+                    .addStatement("$L = $L", name, readPrimitive(primitiveKind))
+                    .addStatement("pos += $L", primitiveSize(primitiveKind))
+                    .endControlFlow();
+        } else if (isType(type, String.class)) {
+            code.addStatement("int $LLength = buffer.getInt(pos)", name)
+                    .addStatement("pos += 4")
+                    .addStatement("$T $L = null", typeName, name)
+                    .beginControlFlow("if ($LLength >= 0)", name)
+                    .addStatement("$L = buffer.getString(pos, pos + $LLength, $S)", name, name, "UTF-8")
+                    .addStatement("pos += $LLength", name)
+                    .endControlFlow();
+        } else if (isType(type, Buffer.class)) {
+            code.addStatement("int $LLength = buffer.getInt(pos)", name)
+                    .addStatement("pos += 4")
+                    .addStatement("$T $L = null", typeName, name)
+                    .beginControlFlow("if ($LLength >= 0)", name)
+                    .addStatement("$L = buffer.getBuffer(pos, pos + $LLength)", name, name)
+                    .addStatement("pos += $LLength", name)
+                    .endControlFlow();
+        } else if (isEnum(type)) {
+            FieldSpec valuesField = getEnumValuesField(type);
+            code.addStatement("int $LOrdinal = buffer.getInt(pos)", name)
+                    .addStatement("pos += 4")
+                    .addStatement("$T $L = $LOrdinal < 0 ? null : $N[$LOrdinal]", typeName, name, name, valuesField, name);
+        } else {
+            code.addStatement("$T $L = null", typeName, name)
+                    .addStatement("pos += 1")
+                    .beginControlFlow("if (buffer.getByte(pos - 1) != 0)")
+                    .addStatement("$L = new $T()", name, typeName)
+                    .addStatement("pos = $L.readFromBuffer(pos, buffer)", name)
+                    .endControlFlow();
+        }
+        return code.build();
+    }
+
+    private FieldSpec getEnumValuesField(TypeMirror type) {
+        TypeName typeName = TypeName.get(type);
+        return enumValuesFields.computeIfAbsent(typeName.toString(), key -> {
+            String name = String.format("%s_VALUES_%d", ((DeclaredType) type).asElement().getSimpleName().toString().toUpperCase(), enumValuesFields.size());
+            // Enum.values() clones array on every call so codec keeps its own copy
+            return FieldSpec.builder(ArrayTypeName.of(typeName), name, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$T.values()", typeName)
+                    .build();
+        });
+    }
+
+    private static String writePrimitive(TypeKind kind, String name) {
+        switch (kind) {
+            case BOOLEAN:
+                return "buffer.appendByte(" + name + " ? (byte) 1 : (byte) 0)";
+            case BYTE:
+                return "buffer.appendByte(" + name + ")";
+            case SHORT:
+                return "buffer.appendShort(" + name + ")";
+            case CHAR:
+                return "buffer.appendShort((short) " + name + ")";
+            case INT:
+                return "buffer.appendInt(" + name + ")";
+            case LONG:
+                return "buffer.appendLong(" + name + ")";
+            case FLOAT:
+                return "buffer.appendFloat(" + name + ")";
+            case DOUBLE:
+                return "buffer.appendDouble(" + name + ")";
+            default:
+                throw new IllegalArgumentException("Not a primitive type " + kind);
+        }
+    }
+
+    private static String readPrimitive(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+                return "buffer.getByte(pos) != 0";
+            case BYTE:
+                return "buffer.getByte(pos)";
+            case SHORT:
+                return "buffer.getShort(pos)";
+            case CHAR:
+                return "(char) buffer.getShort(pos)";
+            case INT:
+                return "buffer.getInt(pos)";
+            case LONG:
+                return "buffer.getLong(pos)";
+            case FLOAT:
+                return "buffer.getFloat(pos)";
+            case DOUBLE:
+                return "buffer.getDouble(pos)";
+            default:
+                throw new IllegalArgumentException("Not a primitive type " + kind);
+        }
+    }
+
+    private static int primitiveSize(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+            case BYTE:
+                return 1;
+            case SHORT:
+            case CHAR:
+                return 2;
+            case INT:
+            case FLOAT:
+                return 4;
+            case LONG:
+            case DOUBLE:
+                return 8;
+            default:
+                throw new IllegalArgumentException("Not a primitive type " + kind);
+        }
+    }
+
+    private boolean isBoxedPrimitive(TypeMirror type) {
+        try {
+            types.unboxedType(type);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private boolean isType(TypeMirror type, Class<?> clazz) {
+        return types.isSameType(types.erasure(type), types.erasure(elements.getTypeElement(clazz.getCanonicalName()).asType()));
+    }
+
+    private boolean isEnum(TypeMirror type) {
+        return ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    private boolean isClusterSerializable(TypeMirror type) {
+        TypeElement clusterSerializable = elements.getTypeElement(CLUSTER_SERIALIZABLE);
+        if (clusterSerializable == null || !types.isAssignable(type, clusterSerializable.asType())) {
+            return false;
+        }
+        TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+        if (typeElement.getKind() != ElementKind.CLASS || typeElement.getModifiers().contains(Modifier.ABSTRACT) || !((DeclaredType) type).getTypeArguments().isEmpty()) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(typeElement.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Generates {@link VxRifaFactory} that creates sender or publisher, receiver and router of actors of interface without reflection.
+ * 
+ * @author Nikita Staroverov
+ */
+class FactoryGenerator {
+
+    static final String VXRIFA_FACTORY_SUFFIX = "VxRifaFactory";
+
+    private final Messager messager;
+    private final TypeElement interfaceElement;
+    private final boolean publisher;
+    private final boolean actors;
+
+    private ClassName interfaceClassName;
+
+    private TypeSpec.Builder tsb;
+
+    FactoryGenerator(Messager messager, TypeElement interfaceElement, boolean publisher, boolean actors) {
+        this.messager = messager;
+        this.interfaceElement = interfaceElement;
+        this.publisher = publisher;
+        this.actors = actors;
+    }
+
+    static ClassName getFactoryClassName(TypeElement interfaceElement) {
+        return ClassName.get(ClassName.get(interfaceElement).packageName(), interfaceElement.getSimpleName() + VXRIFA_FACTORY_SUFFIX);
+    }
+
+    FactoryGenerator generateInitializing() {
+
+        interfaceClassName = ClassName.get(interfaceElement);
+
+        tsb = GeneratorsHelper.generateClass(interfaceElement, VXRIFA_FACTORY_SUFFIX)
+                .addModifiers(Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(VxRifaFactory.class), interfaceClassName));
+
+        tsb.addMethod(
+                MethodSpec.methodBuilder("getInterfaceType")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(ParameterizedTypeName.get(ClassName.get(Class.class), interfaceClassName))
+                        .addStatement("return $T.class", interfaceClassName)
+                        .build()
+        );
+
+        return this;
+
+    }
+
+    FactoryGenerator generateFactoryMethods() {
+
+        String packageName = interfaceClassName.packageName();
+        ClassName senderClassName = ClassName.get(packageName, interfaceElement.getSimpleName() + SenderGenerator.VXRIFA_SENDER_SUFFIX);
+        ClassName publisherClassName = ClassName.get(packageName, interfaceElement.getSimpleName() + PublisherGenerator.VXRIFA_PUBLISHER_SUFFIX);
+        ClassName receiverClassName = ClassName.get(packageName, interfaceElement.getSimpleName() + ReceiverGenerator.VXRIFA_RECEIVER_SUFFIX);
+
+        tsb.addMethod(generateCreateMethod("createSender", interfaceClassName, publisher ? null : senderClassName, VxRifa.class));
+        tsb.addMethod(generateCreateMethod("createPublisher", interfaceClassName, publisher ? publisherClassName : null, VxRifaPublish.class));
+        tsb.addMethod(generateCreateMethod("createReceiver", ParameterizedTypeName.get(ClassName.get(VxRifaReceiver.class), interfaceClassName), receiverClassName, null));
+        tsb.addMethod(MethodSpec.methodBuilder("createReceiver")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(VxRifaReceiver.class), interfaceClassName))
+                .addParameter(io.vertx.core.Vertx.class, "vertx")
+                .addParameter(String.class, "eventBusAddress")
+                .addParameter(VxRifaCallObserver.class, "callObserver")
+                .addStatement("return new $T(vertx, eventBusAddress, callObserver)", receiverClassName)
+                .build());
+
+        MethodSpec.Builder actorRouterBuilder = MethodSpec.methodBuilder("createActorRouter")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(interfaceClassName)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(VxRifaActors.class), interfaceClassName), "actors");
+        if (actors) {
+            actorRouterBuilder.addStatement("return new $T(actors)", ClassName.get(packageName, interfaceElement.getSimpleName() + ActorRouterGenerator.VXRIFA_ACTOR_ROUTER_SUFFIX));
+        } else {
+            actorRouterBuilder.addStatement("throw new $T($S)", IllegalArgumentException.class,
+                    String.format("%s is not annotated with @VxRifa(actors = true)", interfaceClassName));
+        }
+        tsb.addMethod(actorRouterBuilder.build());
+
+        return this;
+
+    }
+
+    private MethodSpec generateCreateMethod(String methodName, TypeName returnType, ClassName implementationClassName, Class<?> requiredAnnotation) {
+
+        MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(methodName)
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(returnType)
+                .addParameter(io.vertx.core.Vertx.class, "vertx")
+                .addParameter(String.class, "eventBusAddress");
+
+        if (implementationClassName == null) {
+            methodBuilder.addStatement("throw new $T($S)", IllegalArgumentException.class,
+                    String.format("%s is not annotated with @%s", interfaceClassName, requiredAnnotation.getSimpleName()));
+        } else {
+            methodBuilder.beginControlFlow("if (eventBusAddress == null)")
+                    .addStatement("return new $T(vertx)", implementationClassName)
+                    .endControlFlow()
+                    .addStatement("return new $T(vertx, eventBusAddress)", implementationClassName);
+        }
+
+        return methodBuilder.build();
+
+    }
+
+    TypeSpec buildClass() {
+
+        return tsb.build();
+
+    }
+
+}
@@ -20,13 +20,19 @@ package io.github.nsforth.vxrifa;
 
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.TypeSpec;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
 
 /**
  *
@@ -50,6 +56,42 @@ class GeneratorsHelper {
         
     }
     
+    /**
+     * Returns methods of interface sorted by eventBus suffix. Index of method in that list is used as method id in messages,
+     * so ids are the same for sender and receiver regardless of methods declaration order.
+     */
+    static List<ExecutableElement> getSuitableMethods(Elements elements, TypeElement interfaceElement) {
+        
+        List<ExecutableElement> methods = new ArrayList<>();
+        
+        for (Element enclosedElement : elements.getAllMembers(interfaceElement)) {
+            if (enclosedElement.getKind() == ElementKind.METHOD && isElementSuitableMethod(enclosedElement)) {
+                methods.add((ExecutableElement) enclosedElement);
+            }
+        }
+        
+        methods.sort(Comparator.comparing(method -> new MethodsHelper(method).generateEventBusSuffix()));
+        
+        return methods;
+        
+    }
+    
+    /**
+     * Hash of all methods signatures. Sender and receiver compiled from different versions of interface would have different hashes.
+     */
+    static int getSignatureHash(List<ExecutableElement> methods) {
+        
+        CRC32 crc = new CRC32();
+        
+        for (ExecutableElement method : methods) {
+            String signature = String.format("%s %s;", method.getReturnType(), new MethodsHelper(method).generateEventBusSuffix());
+            crc.update(signature.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        return (int) crc.getValue();
+        
+    }
+    
     static TypeSpec.Builder generateClass(TypeElement interfaceElement, String suffix) {
         
         return TypeSpec.classBuilder(String.format("%s%s", interfaceElement.getSimpleName(), suffix))
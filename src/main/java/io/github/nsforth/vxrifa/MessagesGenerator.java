@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+
+/**
+ * Generates holder class with message class for every method of interface annotated with {@link VxRifa} or {@link VxRifaPublish}.
+ * Every message extends {@link RIFAInvocation} and keeps method parameters in typed final fields named same as parameters.
+ * Messages are equal when they have equal parameters so they could be used as keys of in-flight calls or cached results.
+ *
+ * @author Nikita Staroverov
+ */
+class MessagesGenerator {
+
+    static final String VXRIFA_MESSAGES_SUFFIX = "VxRifaMessages";
+
+    private final Messager messager;
+    private final TypeElement interfaceElement;
+    private final Elements elements;
+
+    private TypeSpec.Builder tsb;
+
+    MessagesGenerator(Messager messager, TypeElement interfaceElement, Elements elements) {
+        this.messager = messager;
+        this.interfaceElement = interfaceElement;
+        this.elements = elements;
+    }
+
+    /**
+     * Message class is named after method, overloaded methods also get method id at the end of class name.
+     */
+    static ClassName getMessageClassName(TypeElement interfaceElement, List<ExecutableElement> methods, int methodId) {
+
+        String methodName = methods.get(methodId).getSimpleName().toString();
+
+        String messageName = Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1) + "Message";
+
+        long sameNamedMethods = methods.stream().filter(method -> method.getSimpleName().contentEquals(methodName)).count();
+        if (sameNamedMethods > 1) {
+            messageName = messageName + methodId;
+        }
+
+        ClassName interfaceClassName = ClassName.get(interfaceElement);
+
+        return ClassName.get(interfaceClassName.packageName(), interfaceElement.getSimpleName() + VXRIFA_MESSAGES_SUFFIX, messageName);
+
+    }
+
+    /**
+     * Messages of methods without parameters are immutable and equal to each other, so one instance is shared by all calls.
+     */
+    static CodeBlock getMessage(ClassName messageClassName, ExecutableElement method, CodeBlock parameters) {
+
+        if (method.getParameters().isEmpty()) {
+            return CodeBlock.of("$T.INSTANCE", messageClassName);
+        }
+
+        return CodeBlock.of("new $T($L)", messageClassName, parameters);
+
+    }
+
+    MessagesGenerator generateInitializing() {
+
+        tsb = GeneratorsHelper.generateClass(interfaceElement, VXRIFA_MESSAGES_SUFFIX)
+                .addModifiers(Modifier.FINAL);
+
+        tsb.addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+
+        return this;
+
+    }
+
+    MessagesGenerator generateMessages() {
+
+        List<ExecutableElement> methods = GeneratorsHelper.getSuitableMethods(elements, interfaceElement);
+
+        for (int methodId = 0; methodId < methods.size(); methodId++) {
+
+            ExecutableElement method = methods.get(methodId);
+
+            MethodsHelper methodsHelper = new MethodsHelper(method);
+
+            TypeSpec.Builder messageBuilder = TypeSpec.classBuilder(getMessageClassName(interfaceElement, methods, methodId))
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .superclass(RIFAInvocation.class)
+                    .addJavadoc("Parameters of {@link $T#$L}\n", ClassName.get(interfaceElement), method.getSimpleName());
+
+            MethodSpec.Builder constructorBuilder = MethodSpec.constructorBuilder()
+                    .addModifiers(Modifier.PUBLIC);
+
+            for (ParameterSpec parameter : methodsHelper.getParameters()) {
+                messageBuilder.addField(FieldSpec.builder(parameter.type, parameter.name, Modifier.PUBLIC, Modifier.FINAL).build());
+                constructorBuilder.addParameter(parameter.type, parameter.name)
+                        .addStatement("this.$N = $N", parameter.name, parameter.name);
+            }
+
+            messageBuilder.addMethod(constructorBuilder.build());
+
+            if (method.getParameters().isEmpty()) {
+                ClassName messageClassName = getMessageClassName(interfaceElement, methods, methodId);
+                messageBuilder.addField(FieldSpec.builder(messageClassName, "INSTANCE", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", messageClassName)
+                        .build());
+            }
+
+            messageBuilder.addMethod(
+                    MethodSpec.methodBuilder("getMethodId")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .returns(int.class)
+                            .addStatement("return $L", methodId)
+                            .build()
+            );
+
+            ClassName messageClassName = getMessageClassName(interfaceElement, methods, methodId);
+
+            messageBuilder.addMethod(generateEquals(messageClassName, methodsHelper.getParameters()));
+
+            messageBuilder.addMethod(generateHashCode(methodsHelper.getParameters()));
+
+            tsb.addType(messageBuilder.build());
+
+        }
+
+        return this;
+
+    }
+
+    private MethodSpec generateEquals(ClassName messageClassName, List<ParameterSpec> parameters) {
+
+        MethodSpec.Builder equalsBuilder = MethodSpec.methodBuilder("equals")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addParameter(Object.class, "obj")
+                .beginControlFlow("if (this == obj)")
+                .addStatement("return true")
+                .endControlFlow()
+                .beginControlFlow("if (!(obj instanceof $T))", messageClassName)
+                .addStatement("return false")
+                .endControlFlow();
+
+        if (parameters.isEmpty()) {
+            return equalsBuilder.addStatement("return true").build();
+        }
+
+        equalsBuilder.addStatement("$T other = ($T) obj", messageClassName, messageClassName);
+
+        CodeBlock.Builder comparison = CodeBlock.builder();
+        for (ParameterSpec parameter : parameters) {
+            if (!comparison.isEmpty()) {
+                comparison.add("\n&& ");
+            }
+            if (parameter.type.equals(TypeName.FLOAT) || parameter.type.equals(TypeName.DOUBLE)) {
+                comparison.add("$T.compare(this.$N, other.$N) == 0", parameter.type.box(), parameter.name, parameter.name);
+            } else if (parameter.type.isPrimitive()) {
+                comparison.add("this.$N == other.$N", parameter.name, parameter.name);
+            } else if (parameter.type instanceof ArrayTypeName) {
+                comparison.add("$T.equals(this.$N, other.$N)", Arrays.class, parameter.name, parameter.name);
+            } else {
+                comparison.add("$T.equals(this.$N, other.$N)", Objects.class, parameter.name, parameter.name);
+            }
+        }
+
+        return equalsBuilder.addStatement("return $L", comparison.build()).build();
+
+    }
+
+    private MethodSpec generateHashCode(List<ParameterSpec> parameters) {
+
+        MethodSpec.Builder hashCodeBuilder = MethodSpec.methodBuilder("hashCode")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("int hash = getMethodId()");
+
+        for (ParameterSpec parameter : parameters) {
+            if (parameter.type.isPrimitive()) {
+                hashCodeBuilder.addStatement("hash = 31 * hash + $T.hashCode(this.$N)", parameter.type.box(), parameter.name);
+            } else if (parameter.type instanceof ArrayTypeName) {
+                hashCodeBuilder.addStatement("hash = 31 * hash + $T.hashCode(this.$N)", Arrays.class, parameter.name);
+            } else {
+                hashCodeBuilder.addStatement("hash = 31 * hash + $T.hashCode(this.$N)", Objects.class, parameter.name);
+            }
+        }
+
+        return hashCodeBuilder.addStatement("return hash").build();
+
+    }
+
+    TypeSpec buildClass() {
+
+        return tsb.build();
+
+    }
+
+}
@@ -19,11 +19,14 @@
 package io.github.nsforth.vxrifa;
 
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
+import io.vertx.core.eventbus.DeliveryOptions;
 import java.text.MessageFormat;
+import java.util.List;
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
@@ -48,6 +51,7 @@ class PublisherGenerator {
 
     private FieldSpec vertxField;
     private FieldSpec eventBusAddressField;
+    private ClassName codecClassName;
 
     private TypeSpec.Builder tsb;
 
@@ -63,6 +67,8 @@ class PublisherGenerator {
 
         tsb.addSuperinterface(TypeName.get(interfaceElement.asType()));
 
+        codecClassName = CodecGenerator.getCodecClassName(interfaceElement);
+
         vertxField = FieldSpec.builder(io.vertx.core.Vertx.class, "vertx", Modifier.PRIVATE, Modifier.FINAL).build();
         tsb.addField(vertxField);
 
@@ -76,6 +82,7 @@ class PublisherGenerator {
                         .addStatement("assert $N != null: \"vertx should not be null! May be you try to create publisher not in verticle start?\"", vertxField)
                         .addStatement("this.$N = $N", vertxField, vertxField)
                         .addStatement("this.$N = $S", eventBusAddressField, interfaceElement.getQualifiedName().toString())
+                        .addStatement("$T.registerInterfaceCodec($N, new $T())", VxRifaUtil.class, vertxField, codecClassName)
                         .build()
         );
 
@@ -87,6 +94,7 @@ class PublisherGenerator {
                         .addStatement("assert $N != null: \"vertx should not be null! May be you try to create publisher not in verticle start?\"", vertxField)
                         .addStatement("this.$N = $N", vertxField, vertxField)
                         .addStatement("this.$N = $N", eventBusAddressField, eventBusAddressField)
+                        .addStatement("$T.registerInterfaceCodec($N, new $T())", VxRifaUtil.class, vertxField, codecClassName)
                         .build()
         );
 
@@ -96,40 +104,35 @@ class PublisherGenerator {
 
     PublisherGenerator generateMethods() {
 
-        for (Element enclosedElement : elements.getAllMembers(interfaceElement)) {
-
-            if (GeneratorsHelper.isElementSuitableMethod(enclosedElement)) {
+        List<ExecutableElement> methods = GeneratorsHelper.getSuitableMethods(elements, interfaceElement);
 
-                ExecutableElement method = (ExecutableElement) enclosedElement;
+        for (int methodId = 0; methodId < methods.size(); methodId++) {
 
-                TypeMirror returnType = method.getReturnType();
+            ExecutableElement method = methods.get(methodId);
 
-                if (returnType.getKind() != TypeKind.VOID) {
+            TypeMirror returnType = method.getReturnType();
 
-                    messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return void", interfaceElement, enclosedElement), enclosedElement);
-                    continue;
+            if (returnType.getKind() != TypeKind.VOID) {
 
-                }
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return void", interfaceElement, method), method);
+                continue;
 
-                MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(method.getSimpleName().toString())
-                        .addModifiers(Modifier.PUBLIC)
-                        .returns(TypeName.get(returnType));
+            }
 
-                MethodsHelper methodsHelper = new MethodsHelper(method);
+            MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(method.getSimpleName().toString())
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.get(returnType));
 
-                methodsHelper.getParameters().forEach(param -> methodBuilder.addParameter(param));
+            MethodsHelper methodsHelper = new MethodsHelper(method);
 
-                if (methodsHelper.getParameters().isEmpty()) {
-                    methodBuilder.addStatement("this.$N.eventBus().publish($N, $T.of($S, null))", vertxField, eventBusAddressField, RIFAMessage.class, methodsHelper.generateEventBusSuffix());
-                } else {
-                    methodBuilder.addStatement("this.$N.eventBus().publish($N, $T.of($S, $N))", vertxField, eventBusAddressField, RIFAMessage.class, methodsHelper.generateEventBusSuffix(), methodsHelper.getParamsNamesCommaSeparated());
-                }
+            methodsHelper.getParameters().forEach(param -> methodBuilder.addParameter(param));
 
-                methodBuilder.addAnnotation(Override.class);
+            methodBuilder.addStatement("this.$N.eventBus().publish($N, $L, new $T().setCodecName($T.CODEC_NAME))", vertxField, eventBusAddressField,
+                    MessagesGenerator.getMessage(MessagesGenerator.getMessageClassName(interfaceElement, methods, methodId), method, CodeBlock.of("$L", methodsHelper.getParamsNamesCommaSeparated())), DeliveryOptions.class, codecClassName);
 
-                tsb.addMethod(methodBuilder.build());
+            methodBuilder.addAnnotation(Override.class);
 
-            }
+            tsb.addMethod(methodBuilder.build());
 
         }
 
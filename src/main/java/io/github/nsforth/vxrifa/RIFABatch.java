@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import java.util.List;
+
+/**
+ * Envelope with invocations packed by {@link VxRifaRequestBatcher} into one eventBus message.
+ * Receiver dispatches every invocation as if it came in separate message and replies once with {@link RIFAReply}
+ * which result is array of replies in the same order as invocations. Invocations of void methods get null in that array.
+ * @author Nikita Staroverov
+ */
+public final class RIFABatch extends RIFAInvocation {
+    
+    public static final int METHOD_ID = -1;
+    
+    private final RIFAInvocation[] invocations;
+    private final boolean[] replyExpected;
+
+    public RIFABatch(List<RIFAInvocation> invocations, boolean[] replyExpected) {
+        this(invocations.toArray(new RIFAInvocation[0]), replyExpected);
+    }
+    
+    private RIFABatch(RIFAInvocation[] invocations, boolean[] replyExpected) {
+        this.invocations = invocations;
+        this.replyExpected = replyExpected;
+    }
+
+    @Override
+    public int getMethodId() {
+        return METHOD_ID;
+    }
+    
+    public int size() {
+        return invocations.length;
+    }
+    
+    public RIFAInvocation getInvocation(int index) {
+        return invocations[index];
+    }
+    
+    public boolean isReplyExpected(int index) {
+        return replyExpected[index];
+    }
+    
+    /**
+     * @return Method id of all invocations or {@link #METHOD_ID} if batch contains invocations of different methods
+     */
+    public int getCommonMethodId() {
+        int methodId = invocations.length > 0 ? invocations[0].getMethodId() : METHOD_ID;
+        for (RIFAInvocation invocation : invocations) {
+            if (invocation.getMethodId() != methodId) {
+                return METHOD_ID;
+            }
+        }
+        return methodId;
+    }
+    
+    /**
+     * Called by generated codec. Every invocation is prefixed by reply flag and length of its encoding.
+     * @param buffer Buffer
+     * @param batch Batch
+     * @param codec Codec of interface
+     */
+    public static void encodeToWire(Buffer buffer, RIFABatch batch, MessageCodec<RIFAInvocation, RIFAInvocation> codec) {
+        buffer.appendInt(batch.invocations.length);
+        for (int i = 0; i < batch.invocations.length; i++) {
+            buffer.appendByte(batch.replyExpected[i] ? (byte) 1 : (byte) 0);
+            int lengthPos = buffer.length();
+            buffer.appendInt(0);
+            codec.encodeToWire(buffer, batch.invocations[i]);
+            buffer.setInt(lengthPos, buffer.length() - lengthPos - 4);
+        }
+    }
+    
+    /**
+     * Called by generated codec.
+     * @param pos Position of batch in buffer
+     * @param buffer Buffer
+     * @param codec Codec of interface
+     * @return Decoded batch
+     */
+    public static RIFABatch decodeFromWire(int pos, Buffer buffer, MessageCodec<RIFAInvocation, RIFAInvocation> codec) {
+        int size = buffer.getInt(pos);
+        pos += 4;
+        RIFAInvocation[] invocations = new RIFAInvocation[size];
+        boolean[] replyExpected = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            replyExpected[i] = buffer.getByte(pos) != 0;
+            int length = buffer.getInt(pos + 1);
+            invocations[i] = codec.decodeFromWire(pos + 5, buffer);
+            pos += 5 + length;
+        }
+        return new RIFABatch(invocations, replyExpected);
+    }
+    
+    /**
+     * Called by generated receiver when batch is received. Every invocation is passed to dispatcher
+     * wrapped into message which replies are collected and sent back by one reply.
+     * @param vertx Vertx instance
+     * @param envelope Message with batch
+     * @param dispatcher Dispatcher of generated receiver
+     */
+    public static void dispatch(Vertx vertx, Message<RIFAInvocation> envelope, Handler<Message<RIFAInvocation>> dispatcher) {
+        RIFABatch batch = (RIFABatch) envelope.body();
+        BatchReply batchReply = new BatchReply(vertx.eventBus(), envelope, batch);
+        for (int i = 0; i < batch.invocations.length; i++) {
+            try {
+                dispatcher.handle(new BatchedMessage(envelope, batch.invocations[i], batchReply, batch.replyExpected[i] ? i : -1));
+            } catch (Throwable ex) {
+                // One broken invocation should not prevent others from being dispatched
+                if (batch.replyExpected[i]) {
+                    batchReply.reply(i, RIFAReply.of(ex));
+                } else {
+                    VxRifaUtil.reportException(ex);
+                }
+            }
+        }
+    }
+    
+    private static class BatchReply {
+        
+        private final EventBus eventBus;
+        private final Message<RIFAInvocation> envelope;
+        private final RIFAReply[] replies;
+        private final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        private int remaining;
+
+        private BatchReply(EventBus eventBus, Message<RIFAInvocation> envelope, RIFABatch batch) {
+            this.eventBus = eventBus;
+            this.envelope = envelope;
+            this.replies = new RIFAReply[batch.invocations.length];
+            for (boolean replyExpected : batch.replyExpected) {
+                if (replyExpected) {
+                    remaining++;
+                }
+            }
+        }
+        
+        private synchronized void reply(int index, RIFAReply reply) {
+            if (index < 0 || replies[index] != null) {
+                return;
+            }
+            replies[index] = reply;
+            if (--remaining == 0) {
+                VxRifaReplyChannel.reply(eventBus, envelope, RIFAReply.of(replies));
+            }
+        }
+        
+    }
+    
+    private static class BatchedMessage implements Message<RIFAInvocation> {
+        
+        private final Message<RIFAInvocation> envelope;
+        private final RIFAInvocation body;
+        private final BatchReply batchReply;
+        private final int index;
+
+        private BatchedMessage(Message<RIFAInvocation> envelope, RIFAInvocation body, BatchReply batchReply, int index) {
+            this.envelope = envelope;
+            this.body = body;
+            this.batchReply = batchReply;
+            this.index = index;
+        }
+
+        @Override
+        public String address() {
+            return envelope.address();
+        }
+
+        @Override
+        public MultiMap headers() {
+            // Envelope headers are not exposed because they address reply of whole batch
+            return batchReply.headers;
+        }
+
+        @Override
+        public RIFAInvocation body() {
+            return body;
+        }
+
+        @Override
+        public String replyAddress() {
+            return null;
+        }
+
+        @Override
+        public boolean isSend() {
+            return true;
+        }
+
+        @Override
+        public void reply(Object message) {
+            batchReply.reply(index, message instanceof RIFAReply ? (RIFAReply) message : RIFAReply.of(message));
+        }
+
+        @Override
+        @Deprecated
+        public <R> void reply(Object message, Handler<AsyncResult<Message<R>>> replyHandler) {
+            reply(message);
+        }
+
+        @Override
+        public void reply(Object message, DeliveryOptions options) {
+            reply(message);
+        }
+
+        @Override
+        @Deprecated
+        public <R> void reply(Object message, DeliveryOptions options, Handler<AsyncResult<Message<R>>> replyHandler) {
+            reply(message);
+        }
+
+        @Override
+        public void fail(int failureCode, String message) {
+            // Same exception as eventBus delivers to requester of failed message, code is lost only when it goes by wire
+            reply(RIFAReply.of(new ReplyException(ReplyFailure.RECIPIENT_FAILURE, failureCode, message)));
+        }
+        
+    }
+    
+}
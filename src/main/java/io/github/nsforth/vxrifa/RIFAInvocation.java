@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+/**
+ * Base class of messages generated for every method of interface annotated with {@link VxRifa} or {@link VxRifaPublish}.
+ * Generated message holds method parameters in typed final fields so primitives are not boxed and no arrays are allocated.
+ * @author Nikita Staroverov
+ */
+public abstract class RIFAInvocation {
+    
+    /**
+     * @return Id of interface method, it is index of method in list sorted by name and parameters types
+     */
+    public abstract int getMethodId();
+    
+}
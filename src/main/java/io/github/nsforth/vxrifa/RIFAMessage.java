@@ -19,7 +19,7 @@
 package io.github.nsforth.vxrifa;
 
 /**
- * 
+ * Control message of streams. Interface methods invocations are sent as generated subclasses of {@link RIFAInvocation}.
  * @author Nikita Staroverov
  */
 public final class RIFAMessage {
@@ -26,15 +26,22 @@ public final class RIFAReply {
     
     private final Object result;
     private final Throwable exception;
+    private final int stackTraceDepth;
 
     private RIFAReply(Object result) {
         this.result = result;
         this.exception = null;
+        this.stackTraceDepth = 0;
     }
 
     public RIFAReply(Throwable exception) {
+        this(exception, 0);
+    }
+    
+    private RIFAReply(Throwable exception, int stackTraceDepth) {
         this.result = null;
         this.exception = exception;
+        this.stackTraceDepth = stackTraceDepth;
     }
     
     public Object getResult() {
@@ -45,6 +52,14 @@ public final class RIFAReply {
         return exception;
     }
     
+    /**
+     * How many stack trace elements of exception should be transferred by wire. Local eventBus always passes exception as is.
+     * @return Maximum stack trace depth
+     */
+    public int getStackTraceDepth() {
+        return stackTraceDepth;
+    }
+    
     public boolean isExceptional() {
         return !(exception == null);
     }
@@ -57,4 +72,8 @@ public final class RIFAReply {
         return new RIFAReply(exception);
     }
     
+    public static RIFAReply of(final Throwable exception, final int stackTraceDepth) {
+        return new RIFAReply(exception, stackTraceDepth);
+    }
+    
 }
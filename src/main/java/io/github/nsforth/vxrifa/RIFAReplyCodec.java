@@ -20,21 +20,140 @@ package io.github.nsforth.vxrifa;
 
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.nio.charset.StandardCharsets;
 
 /**
- *
+ * Codec for {@link RIFAReply}. Local eventBus passes replies as is.
+ * Wire format starts with one byte tag of result type so common results (null, String, primitive wrappers, byte[], Buffer, JsonObject, JsonArray)
+ * are encoded without any reflection. Exceptions are encoded as class name, message and no more than {@link RIFAReply#getStackTraceDepth()}
+ * stack trace elements and decoded as {@link VxRifaRemoteException}. Replies to {@link RIFABatch} are encoded one by one with their lengths.
  * @author Nikita Staroverov
  */
 class RIFAReplyCodec implements MessageCodec<RIFAReply, RIFAReply>{
 
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte SHORT = 7;
+    private static final byte BYTE = 8;
+    private static final byte CHARACTER = 9;
+    private static final byte BYTES = 10;
+    private static final byte BUFFER = 11;
+    private static final byte JSON_OBJECT = 12;
+    private static final byte JSON_ARRAY = 13;
+    private static final byte BATCH = 14;
+    private static final byte EXCEPTION = 100;
+
     @Override
     public void encodeToWire(Buffer buffer, RIFAReply s) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        if (s.isExceptional()) {
+            encodeException(buffer, s.getException(), s.getStackTraceDepth());
+            return;
+        }
+        Object result = s.getResult();
+        if (result == null) {
+            buffer.appendByte(NULL);
+        } else if (result instanceof String) {
+            buffer.appendByte(STRING);
+            writeString(buffer, (String) result);
+        } else if (result instanceof Integer) {
+            buffer.appendByte(INTEGER).appendInt((Integer) result);
+        } else if (result instanceof Long) {
+            buffer.appendByte(LONG).appendLong((Long) result);
+        } else if (result instanceof Double) {
+            buffer.appendByte(DOUBLE).appendDouble((Double) result);
+        } else if (result instanceof Float) {
+            buffer.appendByte(FLOAT).appendFloat((Float) result);
+        } else if (result instanceof Boolean) {
+            buffer.appendByte(BOOLEAN).appendByte((Boolean) result ? (byte) 1 : (byte) 0);
+        } else if (result instanceof Short) {
+            buffer.appendByte(SHORT).appendShort((Short) result);
+        } else if (result instanceof Byte) {
+            buffer.appendByte(BYTE).appendByte((Byte) result);
+        } else if (result instanceof Character) {
+            buffer.appendByte(CHARACTER).appendShort((short) ((Character) result).charValue());
+        } else if (result instanceof byte[]) {
+            byte[] bytes = (byte[]) result;
+            buffer.appendByte(BYTES).appendInt(bytes.length).appendBytes(bytes);
+        } else if (result instanceof Buffer) {
+            Buffer resultBuffer = (Buffer) result;
+            buffer.appendByte(BUFFER).appendInt(resultBuffer.length()).appendBuffer(resultBuffer);
+        } else if (result instanceof JsonObject) {
+            buffer.appendByte(JSON_OBJECT);
+            ((JsonObject) result).writeToBuffer(buffer);
+        } else if (result instanceof JsonArray) {
+            buffer.appendByte(JSON_ARRAY);
+            ((JsonArray) result).writeToBuffer(buffer);
+        } else if (result instanceof RIFAReply[]) {
+            RIFAReply[] replies = (RIFAReply[]) result;
+            buffer.appendByte(BATCH).appendInt(replies.length);
+            for (RIFAReply reply : replies) {
+                int lengthPos = buffer.length();
+                buffer.appendInt(0);
+                encodeToWire(buffer, reply == null ? RIFAReply.of((Object) null) : reply);
+                buffer.setInt(lengthPos, buffer.length() - lengthPos - 4);
+            }
+        } else {
+            encodeException(buffer, new UnsupportedOperationException("Result of type " + result.getClass().getName() + " can not be transferred by wire"), 0);
+        }
     }
 
     @Override
     public RIFAReply decodeFromWire(int pos, Buffer buffer) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        byte tag = buffer.getByte(pos);
+        pos += 1;
+        switch (tag) {
+            case NULL:
+                return RIFAReply.of((Object) null);
+            case STRING:
+                return RIFAReply.of(readString(buffer, pos));
+            case INTEGER:
+                return RIFAReply.of(buffer.getInt(pos));
+            case LONG:
+                return RIFAReply.of(buffer.getLong(pos));
+            case DOUBLE:
+                return RIFAReply.of(buffer.getDouble(pos));
+            case FLOAT:
+                return RIFAReply.of(buffer.getFloat(pos));
+            case BOOLEAN:
+                return RIFAReply.of(buffer.getByte(pos) != 0);
+            case SHORT:
+                return RIFAReply.of(buffer.getShort(pos));
+            case BYTE:
+                return RIFAReply.of(buffer.getByte(pos));
+            case CHARACTER:
+                return RIFAReply.of((char) buffer.getShort(pos));
+            case BYTES:
+                return RIFAReply.of(buffer.getBytes(pos + 4, pos + 4 + buffer.getInt(pos)));
+            case BUFFER:
+                return RIFAReply.of(buffer.getBuffer(pos + 4, pos + 4 + buffer.getInt(pos)));
+            case JSON_OBJECT:
+                JsonObject jsonObject = new JsonObject();
+                jsonObject.readFromBuffer(pos, buffer);
+                return RIFAReply.of(jsonObject);
+            case JSON_ARRAY:
+                JsonArray jsonArray = new JsonArray();
+                jsonArray.readFromBuffer(pos, buffer);
+                return RIFAReply.of(jsonArray);
+            case BATCH:
+                RIFAReply[] replies = new RIFAReply[buffer.getInt(pos)];
+                pos += 4;
+                for (int i = 0; i < replies.length; i++) {
+                    replies[i] = decodeFromWire(pos + 4, buffer);
+                    pos += 4 + buffer.getInt(pos);
+                }
+                return RIFAReply.of(replies);
+            case EXCEPTION:
+                return RIFAReply.of(decodeException(pos, buffer));
+            default:
+                throw new IllegalStateException("Unknown reply type " + tag);
+        }
     }
 
     @Override
@@ -52,4 +171,67 @@ class RIFAReplyCodec implements MessageCodec<RIFAReply, RIFAReply>{
         return -1;
     }
     
+    private static void encodeException(Buffer buffer, Throwable exception, int stackTraceDepth) {
+        buffer.appendByte(EXCEPTION);
+        String className = exception instanceof VxRifaRemoteException ? ((VxRifaRemoteException) exception).getRemoteClassName() : exception.getClass().getName();
+        writeString(buffer, className);
+        writeString(buffer, exception.getMessage());
+        if (stackTraceDepth <= 0) {
+            // Throwable.getStackTrace is expensive so it should not be called at all when trace is not needed
+            buffer.appendInt(0);
+            return;
+        }
+        StackTraceElement[] stackTrace = exception.getStackTrace();
+        int depth = Math.min(stackTraceDepth, stackTrace.length);
+        buffer.appendInt(depth);
+        for (int i = 0; i < depth; i++) {
+            writeString(buffer, stackTrace[i].getClassName());
+            writeString(buffer, stackTrace[i].getMethodName());
+            writeString(buffer, stackTrace[i].getFileName());
+            buffer.appendInt(stackTrace[i].getLineNumber());
+        }
+    }
+    
+    private static VxRifaRemoteException decodeException(int pos, Buffer buffer) {
+        String className = readString(buffer, pos);
+        pos = skipString(buffer, pos);
+        String message = readString(buffer, pos);
+        pos = skipString(buffer, pos);
+        int depth = buffer.getInt(pos);
+        pos += 4;
+        StackTraceElement[] stackTrace = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++) {
+            String declaringClass = readString(buffer, pos);
+            pos = skipString(buffer, pos);
+            String methodName = readString(buffer, pos);
+            pos = skipString(buffer, pos);
+            String fileName = readString(buffer, pos);
+            pos = skipString(buffer, pos);
+            stackTrace[i] = new StackTraceElement(declaringClass, methodName, fileName, buffer.getInt(pos));
+            pos += 4;
+        }
+        return new VxRifaRemoteException(className, message, stackTrace);
+    }
+    
+    private static void writeString(Buffer buffer, String str) {
+        if (str == null) {
+            buffer.appendInt(-1);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            buffer.appendInt(bytes.length).appendBytes(bytes);
+        }
+    }
+    
+    private static String readString(Buffer buffer, int pos) {
+        int length = buffer.getInt(pos);
+        if (length < 0) {
+            return null;
+        }
+        return buffer.getString(pos + 4, pos + 4 + length, "UTF-8");
+    }
+    
+    private static int skipString(Buffer buffer, int pos) {
+        return pos + 4 + Math.max(buffer.getInt(pos), 0);
+    }
+    
 }
@@ -18,11 +18,12 @@
  */
 package io.github.nsforth.vxrifa;
 
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
-import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
@@ -30,10 +31,15 @@ import com.squareup.javapoet.WildcardTypeName;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
+import io.vertx.core.WorkerExecutor;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.Element;
@@ -43,6 +49,7 @@ import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
 
 /**
  * Generates delegate class that do mapping between vertx.consumer handler and
@@ -62,8 +69,18 @@ class ReceiverGenerator {
     private FieldSpec vertxField;
     private FieldSpec eventBusAddressField;
     private FieldSpec handlersField;
+    private FieldSpec batchHandlersField;
     private FieldSpec consumerField;
+    private FieldSpec cancelConsumerField;
+    private FieldSpec callObserverField;
+    private FieldSpec directReceiverField;
+    private final Map<String, FieldSpec> memoizedResultsFields = new LinkedHashMap<>();
+    private final Map<String, FieldSpec> workerExecutorFields = new LinkedHashMap<>();
+    private final Map<String, Integer> workerPoolSizes = new HashMap<>();
+    private final Map<ExecutableElement, FieldSpec> virtualThreadExecutorFields = new LinkedHashMap<>();
     private TypeSpec.Builder tsb;
+    private int stackTraceDepth;
+    private boolean directInvocation;
 
     ReceiverGenerator(Messager messager, TypeElement interfaceElement, Elements elements) {
         this.messager = messager;
@@ -75,6 +92,10 @@ class ReceiverGenerator {
 
         tsb = GeneratorsHelper.generateClass(interfaceElement, VXRIFA_RECEIVER_SUFFIX);
 
+        VxRifa vxRifaAnnotation = interfaceElement.getAnnotation(VxRifa.class);
+        stackTraceDepth = vxRifaAnnotation != null ? vxRifaAnnotation.stackTraceDepth() : 0;
+        directInvocation = vxRifaAnnotation != null && vxRifaAnnotation.directInvocation();
+
         tsb.addSuperinterface(ParameterizedTypeName.get(ClassName.get(VxRifaReceiver.class), TypeName.get(interfaceElement.asType())));
 
         vertxField = FieldSpec.builder(io.vertx.core.Vertx.class, "vertx", Modifier.PRIVATE, Modifier.FINAL).build();
@@ -83,13 +104,24 @@ class ReceiverGenerator {
         eventBusAddressField = FieldSpec.builder(java.lang.String.class, "eventBusAddress", Modifier.PRIVATE, Modifier.FINAL).build();
         tsb.addField(eventBusAddressField);
 
-        handlersField = FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Map.class), TypeName.get(String.class), ParameterizedTypeName.get(ClassName.get(Handler.class), ParameterizedTypeName.get(ClassName.get(Message.class), ParameterizedTypeName.get(RIFAMessage.class)))), "handlers", Modifier.PRIVATE)
+        // Handlers are indexed by method id so dispatching does not need any hashing
+        handlersField = FieldSpec.builder(ArrayTypeName.of(ParameterizedTypeName.get(ClassName.get(Handler.class), ParameterizedTypeName.get(ClassName.get(Message.class), TypeName.get(RIFAInvocation.class)))), "handlers", Modifier.PRIVATE)
                 .build();
         tsb.addField(handlersField);
 
-        consumerField = FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(MessageConsumer.class), TypeName.get(RIFAMessage.class)), "consumer", Modifier.PRIVATE).build();
+        consumerField = FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(MessageConsumer.class), TypeName.get(RIFAInvocation.class)), "consumer", Modifier.PRIVATE).build();
         tsb.addField(consumerField);
 
+        callObserverField = FieldSpec.builder(VxRifaCallObserver.class, "callObserver", Modifier.PRIVATE, Modifier.FINAL).build();
+        tsb.addField(callObserverField);
+
+        if (directInvocation) {
+            // Dispatcher that senders from the same context pass messages to
+            directReceiverField = FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Handler.class), ParameterizedTypeName.get(ClassName.get(Message.class), TypeName.get(RIFAInvocation.class))),
+                    "directReceiver", Modifier.PRIVATE).build();
+            tsb.addField(directReceiverField);
+        }
+
         tsb.addMethod(
                 MethodSpec.constructorBuilder()
                         .addModifiers(Modifier.PUBLIC)
@@ -97,6 +129,8 @@ class ReceiverGenerator {
                         .addStatement("assert $N != null: \"vertx should not be null! May be you try to create receiver not in verticle start?\"", vertxField)
                         .addStatement("this.$N = $N", vertxField, vertxField)
                         .addStatement("this.$N = $S", eventBusAddressField, interfaceElement.getQualifiedName().toString())
+                        .addStatement("this.$N = null", callObserverField)
+                        .addStatement("$T.registerInterfaceCodec($N, new $T())", VxRifaUtil.class, vertxField, CodecGenerator.getCodecClassName(interfaceElement))
                         .build()
         );
 
@@ -108,6 +142,23 @@ class ReceiverGenerator {
                         .addStatement("assert $N != null: \"vertx should not be null! May be you try to create receiver not in verticle start?\"", vertxField)
                         .addStatement("this.$N = $N", vertxField, vertxField)
                         .addStatement("this.$N = $N", eventBusAddressField, eventBusAddressField)
+                        .addStatement("this.$N = null", callObserverField)
+                        .addStatement("$T.registerInterfaceCodec($N, new $T())", VxRifaUtil.class, vertxField, CodecGenerator.getCodecClassName(interfaceElement))
+                        .build()
+        );
+
+        // Used by factory for receivers of autoscaler which measures their calls
+        tsb.addMethod(
+                MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(io.vertx.core.Vertx.class, vertxField.name)
+                        .addParameter(java.lang.String.class, eventBusAddressField.name)
+                        .addParameter(VxRifaCallObserver.class, callObserverField.name)
+                        .addStatement("assert $N != null: \"vertx should not be null! May be you try to create receiver not in verticle start?\"", vertxField)
+                        .addStatement("this.$N = $N", vertxField, vertxField)
+                        .addStatement("this.$N = $N != null ? $N : $S", eventBusAddressField, eventBusAddressField, eventBusAddressField, interfaceElement.getQualifiedName().toString())
+                        .addStatement("this.$N = $N", callObserverField, callObserverField)
+                        .addStatement("$T.registerInterfaceCodec($N, new $T())", VxRifaUtil.class, vertxField, CodecGenerator.getCodecClassName(interfaceElement))
                         .build()
         );
 
@@ -119,56 +170,112 @@ class ReceiverGenerator {
 
         MethodSpec.Builder registerMB = MethodSpec.methodBuilder("registerReceiver");
 
+        List<ExecutableElement> methods = GeneratorsHelper.getSuitableMethods(elements, interfaceElement);
+
         registerMB.addAnnotation(Override.class)
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "{$S, $S}", "unchecked", "rawtypes").build())
                 .addModifiers(Modifier.PUBLIC)
                 .addParameter(TypeName.get(interfaceElement.asType()), "receiver", Modifier.FINAL)
                 .returns(ParameterizedTypeName.get(ClassName.get(Future.class), WildcardTypeName.subtypeOf(Object.class)));
 
-        registerMB.addStatement("$N = new $T<>()", handlersField, HashMap.class);
-
-        registerMB.beginControlFlow("try");
+        FieldSpec ignoredMethodsField = generateIgnoredMethods(methods);
 
-        for (Element enclosedElement : elements.getAllMembers(interfaceElement)) {
+        registerMB.addStatement("$N = new $T[$L]", handlersField, Handler.class, methods.size());
+        registerMB.addStatement("boolean[] ignoredMethods = $N.get(receiver.getClass())", ignoredMethodsField);
+        generateWorkerExecutors(registerMB, methods);
+        generateVirtualThreadExecutors(registerMB, methods);
 
-            if (GeneratorsHelper.isElementSuitableMethod(enclosedElement)) {
+        if (directInvocation) {
+            registerMB.addStatement("boolean completeImplementation = true");
+        }
 
-                ExecutableElement method = (ExecutableElement) enclosedElement;
+        for (int methodId = 0; methodId < methods.size(); methodId++) {
 
-                MethodsHelper methodsHelper = new MethodsHelper(method);
-
-                String paramsTypesClassesCommaSeparated = methodsHelper.getParamsTypesClassesCommaSeparated();
-                if ("".equals(paramsTypesClassesCommaSeparated)) {
-                    registerMB.beginControlFlow("if (receiver.getClass().getMethod($S, (Class<?>[]) null).getAnnotation($T.class) == null)",
-                            method.getSimpleName(), TypeName.get(VxRifaIgnore.class)
-                    );
-                } else {
-                    registerMB.beginControlFlow("if (receiver.getClass().getMethod($S, $L).getAnnotation($T.class) == null)",
-                            method.getSimpleName(), paramsTypesClassesCommaSeparated, TypeName.get(VxRifaIgnore.class)
-                    );
-                }
-                registerMB.addStatement("$N.put($S, handler -> {$W$L$W})",
-                        handlersField,
-                        methodsHelper.generateEventBusSuffix(),
-                        makeMethodHandler(method).toString()
-                );
-                registerMB.endControlFlow();
+            ExecutableElement method = methods.get(methodId);
 
+            registerMB.beginControlFlow("if (!ignoredMethods[$L])", methodId);
+            registerMB.addStatement("$N[$L] = handler -> {$W$L$W}",
+                    handlersField,
+                    methodId,
+                    makeMethodHandler(method, MessagesGenerator.getMessageClassName(interfaceElement, methods, methodId), generateMemoizedResults(method, methodId)).toString()
+            );
+            if (directInvocation) {
+                registerMB.nextControlFlow("else");
+                registerMB.addStatement("completeImplementation = false");
             }
+            registerMB.endControlFlow();
+
         }
         
-        registerMB.addStatement("$N = this.$N.eventBus().consumer($N, message -> $N.getOrDefault(message.body().getSuffix(), msg -> msg.reply($T.of(new UnsupportedOperationException(\"Method implementation is not provided\")))).handle(message))", 
-                consumerField, vertxField, eventBusAddressField, handlersField, RIFAReply.class
-        );
+        generateBatchHandlers(registerMB, methods);
+
+        registerMB.addStatement("$N = this.$N.eventBus().consumer($N, this::dispatch)", consumerField, vertxField, eventBusAddressField);
 
-        registerMB.nextControlFlow("catch ($T ex)", TypeName.get(NoSuchMethodException.class));
-        registerMB.addStatement("throw new $T(ex)", TypeName.get(IllegalArgumentException.class));
-        registerMB.endControlFlow();
         registerMB.addStatement("$T promise = $T.promise()", ParameterizedTypeName.get(ClassName.get(Promise.class), TypeName.get(Void.class)), Promise.class);
-        registerMB.addStatement("$N.completionHandler(promise)", consumerField);
-        registerMB.addStatement("return promise.future()");
+        if (directInvocation) {
+            registerMB.beginControlFlow("if (completeImplementation)");
+            registerMB.addStatement("$N.completionHandler(result -> {\n$>if (result.succeeded()) {\n$>$N = this::dispatch;\n$T.registerLocalReceiver($N, $N, $N);\n$<}\npromise.handle(result);\n$<})",
+                    consumerField, directReceiverField, VxRifaUtil.class, vertxField, eventBusAddressField, directReceiverField);
+            registerMB.nextControlFlow("else");
+            registerMB.addStatement("$N.completionHandler(promise)", consumerField);
+            registerMB.endControlFlow();
+        } else {
+            registerMB.addStatement("$N.completionHandler(promise)", consumerField);
+        }
+        if (methods.stream().anyMatch(method -> method.getAnnotation(VxRifaCancellable.class) != null)) {
+            // Cancellations are listened from registration so none is missed for the first calls
+            cancelConsumerField = FieldSpec.builder(ParameterizedTypeName.get(MessageConsumer.class, String.class), "cancelConsumer", Modifier.PRIVATE).build();
+            tsb.addField(cancelConsumerField);
+            registerMB.addStatement("$N = $T.subscribe(this.$N, $N)", cancelConsumerField, VxRifaCancellation.class, vertxField, eventBusAddressField);
+            registerMB.addStatement("$T cancelPromise = $T.promise()", ParameterizedTypeName.get(ClassName.get(Promise.class), TypeName.get(Void.class)), Promise.class);
+            registerMB.addStatement("$N.completionHandler(cancelPromise)", cancelConsumerField);
+            registerMB.addStatement("return promise.future().compose(v -> cancelPromise.future())");
+        } else {
+            registerMB.addStatement("return promise.future()");
+        }
 
         tsb.addMethod(registerMB.build());
 
+        if (!memoizedResultsFields.isEmpty()) {
+            MethodSpec.Builder memoizedResultsMB = MethodSpec.methodBuilder("getMemoizedResults")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(ParameterizedTypeName.get(Map.class, String.class, VxRifaResultCache.class))
+                    .addStatement("$T memoizedResults = new $T<>()", ParameterizedTypeName.get(Map.class, String.class, VxRifaResultCache.class), LinkedHashMap.class);
+            memoizedResultsFields.forEach((signature, field) -> memoizedResultsMB.addStatement("memoizedResults.put($S, $N)", signature, field));
+            tsb.addMethod(memoizedResultsMB.addStatement("return $T.unmodifiableMap(memoizedResults)", Collections.class).build());
+        }
+
+        CodeBlock.Builder batchDispatch = CodeBlock.builder()
+                .beginControlFlow("if (methodId == $T.METHOD_ID)", RIFABatch.class);
+        if (batchHandlersField != null) {
+            batchDispatch.addStatement("$T batch = ($T) message.body()", RIFABatch.class, RIFABatch.class)
+                    .addStatement("int commonMethodId = batch.getCommonMethodId()")
+                    .beginControlFlow("if (commonMethodId >= 0 && commonMethodId < $N.length && $N[commonMethodId] != null)", batchHandlersField, batchHandlersField)
+                    .addStatement("$N[commonMethodId].handle(batch)", batchHandlersField)
+                    .addStatement("return")
+                    .endControlFlow();
+        }
+        batchDispatch.addStatement("$T.dispatch($N, message, this::dispatch)", RIFABatch.class, vertxField)
+                .addStatement("return")
+                .endControlFlow();
+
+        tsb.addMethod(
+                MethodSpec.methodBuilder("dispatch")
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(ParameterizedTypeName.get(ClassName.get(Message.class), TypeName.get(RIFAInvocation.class)), "message")
+                        .addStatement("int methodId = message.body().getMethodId()")
+                        .addCode(batchDispatch.build())
+                        .addStatement("$T handler = methodId >= 0 && methodId < $N.length ? $N[methodId] : null",
+                                ParameterizedTypeName.get(ClassName.get(Handler.class), ParameterizedTypeName.get(ClassName.get(Message.class), TypeName.get(RIFAInvocation.class))), handlersField, handlersField)
+                        .beginControlFlow("if (handler != null)")
+                        .addStatement("handler.handle(message)")
+                        .nextControlFlow("else")
+                        .addStatement("$T.reply($N.eventBus(), message, $T.of(new $T(\"Method implementation is not provided\")))", VxRifaReplyChannel.class, vertxField, RIFAReply.class, UnsupportedOperationException.class)
+                        .endControlFlow()
+                        .build()
+        );
+
         return this;
 
     }
@@ -180,7 +287,29 @@ class ReceiverGenerator {
         // Generates cosumers waiting Future for success handler unregistration
         unregisterMB.addAnnotation(Override.class)
                 .addModifiers(Modifier.PUBLIC)
-                .addStatement("$T promise = $T.promise()", ParameterizedTypeName.get(ClassName.get(Promise.class), TypeName.get(Void.class)), Promise.class)
+                .addStatement("$T promise = $T.promise()", ParameterizedTypeName.get(ClassName.get(Promise.class), TypeName.get(Void.class)), Promise.class);
+
+        if (directInvocation) {
+            unregisterMB.beginControlFlow("if ($N != null)", directReceiverField)
+                    .addStatement("$T.unregisterLocalReceiver($N, $N, $N)", VxRifaUtil.class, vertxField, eventBusAddressField, directReceiverField)
+                    .addStatement("$N = null", directReceiverField)
+                    .endControlFlow();
+        }
+
+        workerExecutorFields.values().forEach(field -> unregisterMB
+                .beginControlFlow("if ($N != null)", field)
+                .addStatement("$N.close()", field)
+                .addStatement("$N = null", field)
+                .endControlFlow());
+
+        if (cancelConsumerField != null) {
+            unregisterMB.beginControlFlow("if ($N != null)", cancelConsumerField)
+                    .addStatement("$N.unregister()", cancelConsumerField)
+                    .addStatement("$N = null", cancelConsumerField)
+                    .endControlFlow();
+        }
+
+        unregisterMB
                 .addStatement("$N.unregister(promise)", consumerField)
                 .addStatement("return promise.future()")
                 .returns(ParameterizedTypeName.get(ClassName.get(Future.class), WildcardTypeName.subtypeOf(Object.class)));
@@ -191,70 +320,334 @@ class ReceiverGenerator {
 
     }
 
-    private CodeBlock makeMethodHandler(ExecutableElement method) {
+    /**
+     * Methods annotated with {@link VxRifaIgnore} are looked up by reflection once per implementation class
+     * and remembered in {@link ClassValue}, so registering many receivers of the same class costs nothing.
+     */
+    private FieldSpec generateIgnoredMethods(List<ExecutableElement> methods) {
+
+        MethodSpec.Builder computeValueMB = MethodSpec.methodBuilder("computeValue")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PROTECTED)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)), "type")
+                .returns(boolean[].class)
+                .addStatement("boolean[] ignoredMethods = new boolean[$L]", methods.size());
+
+        if (!methods.isEmpty()) {
+            computeValueMB.beginControlFlow("try");
+            for (int methodId = 0; methodId < methods.size(); methodId++) {
+                ExecutableElement method = methods.get(methodId);
+                String paramsTypesClassesCommaSeparated = new MethodsHelper(method).getParamsTypesClassesCommaSeparated();
+                computeValueMB.addStatement("ignoredMethods[$L] = type.getMethod($S, $L).getAnnotation($T.class) != null",
+                        methodId, method.getSimpleName(), "".equals(paramsTypesClassesCommaSeparated) ? "(Class<?>[]) null" : paramsTypesClassesCommaSeparated, VxRifaIgnore.class);
+            }
+            computeValueMB.nextControlFlow("catch ($T ex)", NoSuchMethodException.class)
+                    .addStatement("throw new $T(ex)", IllegalArgumentException.class)
+                    .endControlFlow();
+        }
+
+        computeValueMB.addStatement("return ignoredMethods");
+
+        TypeName classValueType = ParameterizedTypeName.get(ClassValue.class, boolean[].class);
+
+        FieldSpec field = FieldSpec.builder(classValueType, "IGNORED_METHODS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", TypeSpec.anonymousClassBuilder("").addSuperinterface(classValueType).addMethod(computeValueMB.build()).build())
+                .build();
+        tsb.addField(field);
+
+        return field;
+
+    }
+
+    /**
+     * Methods annotated with {@link VxRifaBlocking} with the same worker pool name share one executor of named pool created on registration.
+     * Executor is closed on unregistration and Vert.X closes it by itself when verticle that registered receiver is undeployed.
+     */
+    private void generateWorkerExecutors(MethodSpec.Builder registerMB, List<ExecutableElement> methods) {
+
+        for (ExecutableElement method : methods) {
+
+            VxRifaBlocking blocking = method.getAnnotation(VxRifaBlocking.class);
+            if (blocking == null) {
+                continue;
+            }
+
+            if (method.getReturnType().getKind() != TypeKind.VOID && !method.getReturnType().toString().startsWith(Future.class.getCanonicalName())) {
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return void or io.vertx.core.Future to be annotated with @VxRifaBlocking", interfaceElement, method), method);
+                continue;
+            }
+
+            if (blocking.workerPool().isEmpty()) {
+                continue;
+            }
+
+            // Pool is created once with size of the first method, so other sizes would be silently ignored
+            Integer poolSize = workerPoolSizes.putIfAbsent(blocking.workerPool(), blocking.poolSize());
+            if (poolSize != null) {
+                if (poolSize != blocking.poolSize()) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should have poolSize %d of worker pool %s like other methods of interface",
+                            interfaceElement, method, poolSize, blocking.workerPool()), method);
+                }
+                continue;
+            }
+
+            FieldSpec field = FieldSpec.builder(WorkerExecutor.class, "workerExecutor" + workerExecutorFields.size(), Modifier.PRIVATE).build();
+            tsb.addField(field);
+            workerExecutorFields.put(blocking.workerPool(), field);
+
+            registerMB.beginControlFlow("if ($N == null)", field)
+                    .addStatement("$N = this.$N.createSharedWorkerExecutor($S, $L)", field, vertxField, blocking.workerPool(), blocking.poolSize())
+                    .endControlFlow();
+
+        }
+
+    }
+
+    /**
+     * Methods annotated with {@link VxRifaVirtualThreads} have executor with own concurrency limit, methods of annotated interface share one.
+     */
+    private void generateVirtualThreadExecutors(MethodSpec.Builder registerMB, List<ExecutableElement> methods) {
+
+        VxRifaVirtualThreads interfaceAnnotation = interfaceElement.getAnnotation(VxRifaVirtualThreads.class);
+        FieldSpec interfaceField = null;
+
+        for (ExecutableElement method : methods) {
+
+            VxRifaVirtualThreads annotation = method.getAnnotation(VxRifaVirtualThreads.class);
+            boolean suitable = method.getReturnType().getKind() == TypeKind.VOID || method.getReturnType().toString().startsWith(Future.class.getCanonicalName());
+
+            if (annotation != null && !suitable) {
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return void or io.vertx.core.Future to be annotated with @VxRifaVirtualThreads", interfaceElement, method), method);
+                continue;
+            }
+
+            if (!suitable || method.getAnnotation(VxRifaBlocking.class) != null || (annotation == null && interfaceAnnotation == null)) {
+                continue;
+            }
+
+            FieldSpec field;
+            if (annotation != null) {
+                field = generateVirtualThreadExecutor(registerMB, "virtualThreadExecutor" + methods.indexOf(method), annotation.maxConcurrency());
+            } else {
+                if (interfaceField == null) {
+                    interfaceField = generateVirtualThreadExecutor(registerMB, "virtualThreadExecutor", interfaceAnnotation.maxConcurrency());
+                }
+                field = interfaceField;
+            }
+            virtualThreadExecutorFields.put(method, field);
+
+        }
+
+    }
+
+    private FieldSpec generateVirtualThreadExecutor(MethodSpec.Builder registerMB, String name, int maxConcurrency) {
+
+        // Executor lives as long as receiver so its limit holds across reregistrations
+        FieldSpec field = FieldSpec.builder(VxRifaVirtualThreadExecutor.class, name, Modifier.PRIVATE).build();
+        tsb.addField(field);
+
+        registerMB.beginControlFlow("if ($N == null)", field)
+                .addStatement("$N = new $T(this.$N, $L)", field, VxRifaVirtualThreadExecutor.class, vertxField, maxConcurrency)
+                .endControlFlow();
+
+        return field;
+
+    }
+
+    /**
+     * Batches of method annotated with {@link VxRifaBatch} are passed at once to overload of that method with List parameter if there is one.
+     */
+    private void generateBatchHandlers(MethodSpec.Builder registerMB, List<ExecutableElement> methods) {
+
+        FieldSpec field = FieldSpec.builder(ArrayTypeName.of(ParameterizedTypeName.get(ClassName.get(Handler.class), TypeName.get(RIFABatch.class))), "batchHandlers", Modifier.PRIVATE)
+                .build();
+
+        List<CodeBlock> batchHandlers = new ArrayList<>();
+
+        for (int methodId = 0; methodId < methods.size(); methodId++) {
+
+            ExecutableElement method = methods.get(methodId);
+
+            if (method.getAnnotation(VxRifaBatch.class) == null || method.getReturnType().getKind() != TypeKind.VOID || method.getParameters().size() != 1) {
+                continue;
+            }
+
+            VariableElement parameter = method.getParameters().get(0);
+            TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), TypeName.get(parameter.asType()).box());
+
+            for (int listMethodId = 0; listMethodId < methods.size(); listMethodId++) {
+
+                ExecutableElement listMethod = methods.get(listMethodId);
+
+                if (listMethod.getSimpleName().contentEquals(method.getSimpleName())
+                        && listMethod.getReturnType().getKind() == TypeKind.VOID
+                        && listMethod.getParameters().size() == 1
+                        && TypeName.get(listMethod.getParameters().get(0).asType()).equals(listType)) {
+
+                    ClassName messageClassName = MessagesGenerator.getMessageClassName(interfaceElement, methods, methodId);
+
+                    batchHandlers.add(CodeBlock.builder()
+                            .beginControlFlow("if ($N[$L] != null)", handlersField, listMethodId)
+                            .add("$N[$L] = batch -> {\n$>", field, methodId)
+                            .addStatement("$T values = new $T<>(batch.size())", listType, ArrayList.class)
+                            .beginControlFlow("for (int i = 0; i < batch.size(); i++)")
+                            .addStatement("values.add((($T) batch.getInvocation(i)).$L)", messageClassName, parameter.getSimpleName())
+                            .endControlFlow()
+                            .addStatement("receiver.$L(values)", method.getSimpleName())
+                            .add("$<};\n")
+                            .endControlFlow()
+                            .build());
+
+                }
+
+            }
+
+        }
+
+        if (batchHandlers.isEmpty()) {
+            return;
+        }
+
+        batchHandlersField = field;
+        tsb.addField(batchHandlersField);
+
+        registerMB.addStatement("$N = new $T[$L]", batchHandlersField, Handler.class, methods.size());
+        batchHandlers.forEach(registerMB::addCode);
+
+    }
+
+    /**
+     * Results of method annotated with {@link VxRifaPure} are memoized in cache that lives as long as receiver, so reregistration keeps them.
+     */
+    private FieldSpec generateMemoizedResults(ExecutableElement method, int methodId) {
+
+        VxRifaPure pureAnnotation = method.getAnnotation(VxRifaPure.class);
+        if (pureAnnotation == null) {
+            return null;
+        }
+        if (!method.getReturnType().toString().startsWith(io.vertx.core.Future.class.getCanonicalName())) {
+            messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return io.vertx.core.Future to be annotated with @VxRifaPure", interfaceElement, method), method);
+            return null;
+        }
+
+        FieldSpec memoizedResultsField = FieldSpec.builder(VxRifaResultCache.class, "memoizedResults" + methodId, Modifier.PRIVATE, Modifier.FINAL)
+                .initializer("new $T($LL, $L)", VxRifaResultCache.class, pureAnnotation.ttl(), Math.max(1, pureAnnotation.maxEntries()))
+                .build();
+        tsb.addField(memoizedResultsField);
+        memoizedResultsFields.put(method.toString(), memoizedResultsField);
+
+        return memoizedResultsField;
+
+    }
+
+    private CodeBlock makeMethodHandler(ExecutableElement method, ClassName messageClassName, FieldSpec memoizedResultsField) {
 
         CodeBlock.Builder result = CodeBlock.builder();
 
-        // Generates list of params with class casting for example "(String)message.get(0),(Integer)message.get(1)"
-        StringBuilder parametersWithCasting = new StringBuilder();
-        int parameterNumber = 0;
+        // Generates list of params read from typed message fields for example "message.name,message.count"
+        StringBuilder parametersFromMessage = new StringBuilder();
         for (VariableElement parameter : method.getParameters()) {
-            parametersWithCasting.append("(")
-                    .append(ParameterSpec.get(parameter).type)
-                    .append(")")
-                    .append("message.getParameter(")
-                    .append(parameterNumber++)
-                    .append("),");
+            if (parametersFromMessage.length() > 0) {
+                parametersFromMessage.append(",");
+            }
+            parametersFromMessage.append("message.")
+                    .append(parameter.getSimpleName());
         }
-        if (parameterNumber > 0) {
-            result.addStatement("$T message = handler.body()", RIFAMessage.class);
+        if (parametersFromMessage.length() > 0) {
+            result.addStatement("$T message = ($T) handler.body()", messageClassName, messageClassName);
         }
-        // Remove trailing comma
-        if (parametersWithCasting.length() > 0) {
-            parametersWithCasting.deleteCharAt(parametersWithCasting.length() - 1);
+
+        CodeBlock invocation = CodeBlock.of("receiver.$L($L)", method.getSimpleName(), parametersFromMessage.toString());
+        VxRifaBlocking blocking = method.getAnnotation(VxRifaBlocking.class);
+        if (blocking != null) {
+            CodeBlock workerExecutor = blocking.workerPool().isEmpty() ? CodeBlock.of("null") : CodeBlock.of("this.$N", workerExecutorFields.get(blocking.workerPool()));
+            if (method.getReturnType().getKind() == TypeKind.VOID) {
+                invocation = CodeBlock.of("$T.run($N, $L, $L, () -> $L)", VxRifaWorkers.class, vertxField, workerExecutor, blocking.ordered(), invocation);
+            } else {
+                invocation = CodeBlock.of("$T.call($N, $L, $L, () -> $L)", VxRifaWorkers.class, vertxField, workerExecutor, blocking.ordered(), invocation);
+            }
+        } else if (virtualThreadExecutorFields.containsKey(method)) {
+            invocation = CodeBlock.of("this.$N.$L(() -> $L)", virtualThreadExecutorFields.get(method), method.getReturnType().getKind() == TypeKind.VOID ? "run" : "call", invocation);
         }
 
         if (method.getReturnType().getKind() == TypeKind.VOID) {
-            result.addStatement("receiver.$L($L)", method.getSimpleName(), parametersWithCasting.toString());
+            result.addStatement("$L", invocation);
         } else if (method.getReturnType().toString().startsWith(io.vertx.core.streams.ReadStream.class.getCanonicalName())) {
             result
                     .beginControlFlow("try")
-                    .addStatement("$T readStream = receiver.$L($L)", TypeName.get(method.getReturnType()), method.getSimpleName(), parametersWithCasting.toString())
+                    .addStatement("$T readStream = receiver.$L($L)", TypeName.get(method.getReturnType()), method.getSimpleName(), parametersFromMessage.toString())
                     .addStatement("assert readStream != null: \"Returned ReadStream should not be null! May be you forget to create appropriate result in $L.$L?\"", method.getEnclosingElement(), method.toString())
                     .addStatement("String controlAddress = $N + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong())", eventBusAddressField)
-                    .addStatement("handler.reply($T.of(controlAddress))", RIFAReply.class)
+                    .addStatement("$T.reply($N.eventBus(), handler, $T.of(controlAddress))", VxRifaReplyChannel.class, vertxField, RIFAReply.class)
                     .addStatement("$T vxRifaSendingReadStream = new $T<>($N, handler.headers().get(\"DataAddress\"), controlAddress, readStream)",
                             ParameterizedTypeName.get(ClassName.get(VxRifaSendingReadStream.class), WildcardTypeName.subtypeOf(Object.class)), VxRifaSendingReadStream.class, vertxField)
                     .nextControlFlow("catch (Throwable ex)")
-                    .addStatement("handler.reply($T.of(ex))", RIFAReply.class)
+                    .addStatement("$T.reply($N.eventBus(), handler, $T.of(ex, $L))", VxRifaReplyChannel.class, vertxField, RIFAReply.class, stackTraceDepth)
                     .endControlFlow();
         } else if (method.getReturnType().toString().startsWith(io.vertx.core.streams.WriteStream.class.getCanonicalName())) {
             result
                     .beginControlFlow("try")
-                    .addStatement("$T writeStream = receiver.$L($L)", TypeName.get(method.getReturnType()), method.getSimpleName(), parametersWithCasting.toString())
+                    .addStatement("$T writeStream = receiver.$L($L)", TypeName.get(method.getReturnType()), method.getSimpleName(), parametersFromMessage.toString())
                     .addStatement("assert writeStream != null: \"Returned WriteStream should not be null! May be you forget to create appropriate result in $L.$L?\"", method.getEnclosingElement(), method.toString())
                     .addStatement("String dataAddress = $N + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong())", eventBusAddressField)
                     .addStatement("$T vxRifaReceivingWriteStream = new $T<>($N, dataAddress, handler.headers().get(\"ControlAddress\"), handler, writeStream)",
                             ParameterizedTypeName.get(ClassName.get(VxRifaReceivingWriteStream.class), WildcardTypeName.subtypeOf(Object.class)), VxRifaReceivingWriteStream.class, vertxField)
                     .nextControlFlow("catch (Throwable ex)")
-                    .addStatement("handler.reply($T.of(ex))", RIFAReply.class)
+                    .addStatement("$T.reply($N.eventBus(), handler, $T.of(ex, $L))", VxRifaReplyChannel.class, vertxField, RIFAReply.class, stackTraceDepth)
                     .endControlFlow();
         } else {
+            boolean deadline = method.getAnnotation(VxRifaDeliveryOptions.class) != null;
+            boolean cancellable = method.getAnnotation(VxRifaCancellable.class) != null;
             CodeBlock.Builder lambdaBody = CodeBlock.builder()
-                    .indent()
+                    .indent();
+            if (cancellable) {
+                lambdaBody.addStatement("$T.unregister($N, callContext)", VxRifaCancellation.class, vertxField)
+                        .beginControlFlow("if (callContext.isCancelled())")
+                        .add("// Sender does not wait for reply of cancelled call\n")
+                        .addStatement("return")
+                        .endControlFlow();
+            }
+            lambdaBody
                     .beginControlFlow("if (result.succeeded())")
-                    .addStatement("handler.reply($T.of(result.result()))", RIFAReply.class)
+                    .addStatement("$T.reply($N.eventBus(), handler, $T.of(result.result()))", VxRifaReplyChannel.class, vertxField, RIFAReply.class)
                     .nextControlFlow("else")
-                    .addStatement("handler.reply($T.of(result.cause()))", RIFAReply.class)
+                    .addStatement("$T.reply($N.eventBus(), handler, $T.of(result.cause(), $L))", VxRifaReplyChannel.class, vertxField, RIFAReply.class, stackTraceDepth)
                     .endControlFlow();
+            boolean callContext = deadline || cancellable;
+            if (callContext) {
+                result.addStatement("$T callContext = $T.of(handler)", VxRifaCallContext.class, VxRifaCallContext.class)
+                        .beginControlFlow("if (callContext.isExpired())")
+                        .add("// Sender already gave up so work and reply would be wasted\n")
+                        .addStatement("return")
+                        .endControlFlow();
+                if (cancellable) {
+                    result.addStatement("$T.register($N, callContext)", VxRifaCancellation.class, vertxField);
+                }
+                result.addStatement("$T previousCallContext = callContext.enter()", VxRifaCallContext.class);
+            }
+            result.addStatement("long startTime = this.$N != null ? System.nanoTime() : 0L", callObserverField);
+            result.beginControlFlow("try");
+            if (memoizedResultsField != null) {
+                result.addStatement("$T returnedFuture = this.$N.call(handler.body(), () -> $L)", TypeName.get(method.getReturnType()), memoizedResultsField, invocation);
+            } else {
+                result.addStatement("$T returnedFuture = $L", TypeName.get(method.getReturnType()), invocation);
+            }
             result
-                    .beginControlFlow("try")
-                    .addStatement("$T returnedFuture = receiver.$L($L)", TypeName.get(method.getReturnType()), method.getSimpleName(), parametersWithCasting.toString())
                     .addStatement("assert returnedFuture != null: \"Returned future should not be null! May be you forget to create appropriate result in $L.$L?\"", method.getEnclosingElement(), method.toString())
+                    .beginControlFlow("if (this.$N != null)", callObserverField)
+                    .addStatement("this.$N.observe(startTime, returnedFuture)", callObserverField)
+                    .endControlFlow()
                     .addStatement("returnedFuture.onComplete(result -> {\n$W$L\n})", lambdaBody.build().toString())
-                    .nextControlFlow("catch (Throwable ex)")
-                    .addStatement("handler.reply($T.of(ex))", RIFAReply.class)
-                    .endControlFlow();
+                    .nextControlFlow("catch (Throwable ex)");
+            if (cancellable) {
+                result.addStatement("$T.unregister($N, callContext)", VxRifaCancellation.class, vertxField);
+            }
+            result.addStatement("$T.reply($N.eventBus(), handler, $T.of(ex, $L))", VxRifaReplyChannel.class, vertxField, RIFAReply.class, stackTraceDepth);
+            if (callContext) {
+                result.nextControlFlow("finally")
+                        .addStatement("$T.exit(previousCallContext)", VxRifaCallContext.class);
+            }
+            result.endControlFlow();
         }
 
         return result.build();
@@ -22,11 +22,16 @@ import com.squareup.javapoet.*;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.DeliveryOptions;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.MirroredTypeException;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
@@ -34,7 +39,7 @@ import javax.tools.Diagnostic;
 
 /**
  * Generates implementation for interface annotated with {@link VxRifa}.
- * Generated implementation wraps method's params to {@link RIFAMessage} and
+ * Generated implementation wraps method's params to generated {@link RIFAInvocation} subclass and
  * sends message by eventBus.
  *
  * @author Nikita Staroverov
@@ -49,6 +54,22 @@ class SenderGenerator {
 
     private FieldSpec vertxField;
     private FieldSpec eventBusAddressField;
+    private ClassName codecClassName;
+    private boolean directInvocation;
+    private boolean replyChannel;
+    private FieldSpec replyChannelField;
+    private boolean batching;
+    private long batchingWindow;
+    private FieldSpec batcherField;
+    private final Map<Integer, FieldSpec> methodBatcherFields = new HashMap<>();
+    private FieldSpec inFlightCallsField;
+    private final Map<Integer, FieldSpec> resultCacheFields = new HashMap<>();
+    private final Map<Integer, FieldSpec> hedgingFields = new HashMap<>();
+    private FieldSpec inFlightLimitField;
+    private final Map<Integer, FieldSpec> methodInFlightLimitFields = new HashMap<>();
+    private FieldSpec defaultDeliveryOptionsField;
+    private FieldSpec shardRingField;
+    private FieldSpec shardRingReadyField;
 
     private TypeSpec.Builder classBuilder;
 
@@ -60,36 +81,110 @@ class SenderGenerator {
 
     SenderGenerator generateInitializing() {
 
+        VxRifa vxRifaAnnotation = interfaceElement.getAnnotation(VxRifa.class);
+        directInvocation = vxRifaAnnotation != null && vxRifaAnnotation.directInvocation();
+        replyChannel = vxRifaAnnotation != null && vxRifaAnnotation.replyChannel();
+        batching = vxRifaAnnotation != null && vxRifaAnnotation.batching();
+        batchingWindow = vxRifaAnnotation != null ? vxRifaAnnotation.batchingWindow() : 0;
+
         classBuilder = GeneratorsHelper.generateClass(interfaceElement, VXRIFA_SENDER_SUFFIX);
 
         classBuilder.addSuperinterface(TypeName.get(interfaceElement.asType()));
 
+        codecClassName = CodecGenerator.getCodecClassName(interfaceElement);
+
         vertxField = FieldSpec.builder(io.vertx.core.Vertx.class, "vertx", Modifier.PRIVATE, Modifier.FINAL).build();
         classBuilder.addField(vertxField);
 
         eventBusAddressField = FieldSpec.builder(java.lang.String.class, "eventBusAddress", Modifier.PRIVATE, Modifier.FINAL).build();
         classBuilder.addField(eventBusAddressField);
 
-        classBuilder.addMethod(
-                MethodSpec.constructorBuilder()
-                        .addModifiers(Modifier.PUBLIC)
-                        .addParameter(io.vertx.core.Vertx.class, vertxField.name)
-                        .addStatement("assert $N != null: \"vertx should not be null! May be you try to create sender not in verticle start?\"", vertxField)
-                        .addStatement("this.$N = $N", vertxField, vertxField)
-                        .addStatement("this.$N = $S", eventBusAddressField, interfaceElement.getQualifiedName().toString())
-                        .build()
-        );
-
-        classBuilder.addMethod(
-                MethodSpec.constructorBuilder()
-                        .addModifiers(Modifier.PUBLIC)
-                        .addParameter(io.vertx.core.Vertx.class, vertxField.name)
-                        .addParameter(java.lang.String.class, eventBusAddressField.name)
-                        .addStatement("assert $N != null: \"vertx should not be null! May be you try to create sender not in verticle start?\"", vertxField)
-                        .addStatement("this.$N = $N", vertxField, vertxField)
-                        .addStatement("this.$N = $N", eventBusAddressField, eventBusAddressField)
-                        .build()
-        );
+        // Delivery options are never modified after creation so they are shared by all calls
+        defaultDeliveryOptionsField = FieldSpec.builder(DeliveryOptions.class, "DEFAULT_DELIVERY_OPTIONS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T().setCodecName($T.CODEC_NAME)", DeliveryOptions.class, codecClassName)
+                .build();
+        classBuilder.addField(defaultDeliveryOptionsField);
+
+        MethodSpec.Builder defaultConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(io.vertx.core.Vertx.class, vertxField.name)
+                .addStatement("assert $N != null: \"vertx should not be null! May be you try to create sender not in verticle start?\"", vertxField)
+                .addStatement("this.$N = $N", vertxField, vertxField)
+                .addStatement("this.$N = $S", eventBusAddressField, interfaceElement.getQualifiedName().toString())
+                .addStatement("$T.registerInterfaceCodec($N, new $T())", VxRifaUtil.class, vertxField, codecClassName);
+
+        MethodSpec.Builder addressConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(io.vertx.core.Vertx.class, vertxField.name)
+                .addParameter(java.lang.String.class, eventBusAddressField.name)
+                .addStatement("assert $N != null: \"vertx should not be null! May be you try to create sender not in verticle start?\"", vertxField)
+                .addStatement("this.$N = $N", vertxField, vertxField)
+                .addStatement("this.$N = $N", eventBusAddressField, eventBusAddressField)
+                .addStatement("$T.registerInterfaceCodec($N, new $T())", VxRifaUtil.class, vertxField, codecClassName);
+
+        if (replyChannel) {
+            replyChannelField = FieldSpec.builder(VxRifaReplyChannel.class, "replyChannel", Modifier.PRIVATE, Modifier.FINAL).build();
+            classBuilder.addField(replyChannelField);
+            defaultConstructor.addStatement("this.$N = new $T($N, this.$N)", replyChannelField, VxRifaReplyChannel.class, vertxField, eventBusAddressField);
+            addressConstructor.addStatement("this.$N = new $T($N, this.$N)", replyChannelField, VxRifaReplyChannel.class, vertxField, eventBusAddressField);
+        }
+
+        if (batching) {
+            batcherField = FieldSpec.builder(VxRifaRequestBatcher.class, "batcher", Modifier.PRIVATE, Modifier.FINAL).build();
+            classBuilder.addField(batcherField);
+            CodeBlock batcherInitializer = CodeBlock.of("this.$N = new $T($N, this.$N, $N, $LL, $L)", batcherField, VxRifaRequestBatcher.class, vertxField, eventBusAddressField,
+                    defaultDeliveryOptionsField, batchingWindow, replyChannel ? "this." + replyChannelField.name : "null");
+            defaultConstructor.addStatement(batcherInitializer);
+            addressConstructor.addStatement(batcherInitializer);
+        }
+
+        VxRifaBulkhead bulkheadAnnotation = interfaceElement.getAnnotation(VxRifaBulkhead.class);
+        if (bulkheadAnnotation != null) {
+            inFlightLimitField = FieldSpec.builder(VxRifaInFlightLimit.class, "inFlightLimit", Modifier.PRIVATE, Modifier.FINAL).build();
+            classBuilder.addField(inFlightLimitField);
+            CodeBlock inFlightLimitInitializer = CodeBlock.of("this.$N = new $T($N, $S, $L, $L)", inFlightLimitField, VxRifaInFlightLimit.class, vertxField,
+                    interfaceElement.getQualifiedName().toString(), bulkheadAnnotation.maxInFlight(), bulkheadAnnotation.queueSize());
+            defaultConstructor.addStatement(inFlightLimitInitializer);
+            addressConstructor.addStatement(inFlightLimitInitializer);
+            generateFlowControl();
+        }
+
+        List<ExecutableElement> methods = GeneratorsHelper.getSuitableMethods(elements, interfaceElement);
+        if (methods.stream().anyMatch(method -> getShardKey(method) != null)) {
+            shardRingField = FieldSpec.builder(VxRifaShardRing.class, "shardRing", Modifier.PRIVATE, Modifier.FINAL).build();
+            classBuilder.addField(shardRingField);
+            CodeBlock shardRingInitializer = CodeBlock.of("this.$N = $T.get($N, this.$N)", shardRingField, VxRifaShardRing.class, vertxField, eventBusAddressField);
+            defaultConstructor.addStatement(shardRingInitializer);
+            addressConstructor.addStatement(shardRingInitializer);
+            // Held calls wait for one future so they are repeated in order before any call made after it is completed
+            shardRingReadyField = FieldSpec.builder(ParameterizedTypeName.get(io.vertx.core.Future.class, Void.class), "shardRingReady", Modifier.PRIVATE, Modifier.FINAL).build();
+            classBuilder.addField(shardRingReadyField);
+            CodeBlock shardRingReadyInitializer = CodeBlock.of("this.$N = this.$N.whenReady()", shardRingReadyField, shardRingField);
+            defaultConstructor.addStatement(shardRingReadyInitializer);
+            addressConstructor.addStatement(shardRingReadyInitializer);
+        }
+        for (int methodId = 0; methodId < methods.size(); methodId++) {
+            ExecutableElement method = methods.get(methodId);
+            generateResultCache(methodId, method, defaultConstructor, addressConstructor);
+            generateHedging(methodId, method, defaultConstructor, addressConstructor);
+            generateInFlightLimit(methodId, method, defaultConstructor, addressConstructor);
+            // Every method annotated with VxRifaBatch buffers its calls separately
+            VxRifaBatch batchAnnotation = method.getAnnotation(VxRifaBatch.class);
+            if (batchAnnotation == null || method.getReturnType().getKind() != TypeKind.VOID || getShardKey(method) != null) {
+                continue;
+            }
+            FieldSpec methodBatcherField = FieldSpec.builder(VxRifaRequestBatcher.class, "batcher" + methodId, Modifier.PRIVATE, Modifier.FINAL).build();
+            classBuilder.addField(methodBatcherField);
+            CodeBlock methodBatcherInitializer = CodeBlock.of("this.$N = new $T($N, this.$N, $N, $LL, $L, null)", methodBatcherField, VxRifaRequestBatcher.class, vertxField, eventBusAddressField,
+                    defaultDeliveryOptionsField, Math.max(0, batchAnnotation.timeout()), Math.max(1, batchAnnotation.size()));
+            defaultConstructor.addStatement(methodBatcherInitializer);
+            addressConstructor.addStatement(methodBatcherInitializer);
+            methodBatcherFields.put(methodId, methodBatcherField);
+        }
+
+        classBuilder.addMethod(defaultConstructor.build());
+
+        classBuilder.addMethod(addressConstructor.build());
 
         return this;
 
@@ -97,73 +192,344 @@ class SenderGenerator {
 
     SenderGenerator generateMethods() {
 
-        for (Element enclosedElement : elements.getAllMembers(interfaceElement)) {
+        List<ExecutableElement> methods = GeneratorsHelper.getSuitableMethods(elements, interfaceElement);
 
-            if (GeneratorsHelper.isElementSuitableMethod(enclosedElement)) {
+        for (int methodId = 0; methodId < methods.size(); methodId++) {
 
-                ExecutableElement method = (ExecutableElement) enclosedElement;
+            ExecutableElement method = methods.get(methodId);
 
-                TypeMirror returnType = method.getReturnType();
+            TypeMirror returnType = method.getReturnType();
 
-                if (!(returnType.toString().startsWith(io.vertx.core.Future.class.getCanonicalName())
-                        || returnType.toString().startsWith(io.vertx.core.streams.ReadStream.class.getCanonicalName())
-                        || returnType.toString().startsWith(io.vertx.core.streams.WriteStream.class.getCanonicalName())
-                        || returnType.getKind() == TypeKind.VOID)) {
+            if (!(returnType.toString().startsWith(io.vertx.core.Future.class.getCanonicalName())
+                    || returnType.toString().startsWith(io.vertx.core.streams.ReadStream.class.getCanonicalName())
+                    || returnType.toString().startsWith(io.vertx.core.streams.WriteStream.class.getCanonicalName())
+                    || returnType.getKind() == TypeKind.VOID)) {
 
-                    messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return one of io.vertx.core.Future,io.vertx.core.streams.ReadStream,io.vertx.core.streams.WriteStream,void", interfaceElement, enclosedElement), enclosedElement);
-                    continue;
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return one of io.vertx.core.Future,io.vertx.core.streams.ReadStream,io.vertx.core.streams.WriteStream,void", interfaceElement, method), method);
+                continue;
 
-                }
+            }
+
+            MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(method.getSimpleName().toString())
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.get(returnType));
 
-                MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(method.getSimpleName().toString())
-                        .addModifiers(Modifier.PUBLIC)
-                        .returns(TypeName.get(returnType));
+            MethodsHelper methodsHelper = new MethodsHelper(method);
 
-                MethodsHelper methodsHelper = new MethodsHelper(method);
+            methodsHelper.getParameters().forEach(param -> methodBuilder.addParameter(param));
 
-                methodsHelper.getParameters().forEach(param -> methodBuilder.addParameter(param));
+            ClassName messageClassName = MessagesGenerator.getMessageClassName(interfaceElement, methods, methodId);
+            CodeBlock newMessage = MessagesGenerator.getMessage(messageClassName, method, CodeBlock.of("$L", methodsHelper.getParamsNamesCommaSeparated()));
 
-                VxRifaDeliveryOptions deliveryOptionsAnnotation = method.getAnnotation(VxRifaDeliveryOptions.class);
+            VxRifaDeliveryOptions deliveryOptionsAnnotation = method.getAnnotation(VxRifaDeliveryOptions.class);
 
+            FieldSpec deliveryOptionsField = defaultDeliveryOptionsField;
+            if (deliveryOptionsAnnotation != null) {
+                deliveryOptionsField = FieldSpec.builder(DeliveryOptions.class, "DELIVERY_OPTIONS_" + methodId, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T().setCodecName($T.CODEC_NAME).setSendTimeout($L)", DeliveryOptions.class, codecClassName, deliveryOptionsAnnotation.timeout())
+                        .build();
+                classBuilder.addField(deliveryOptionsField);
+            }
+
+            VariableElement shardKey = getShardKey(method);
+            CodeBlock targetAddress = CodeBlock.of("$N", eventBusAddressField);
+            if (shardKey != null) {
+                // Calls are repeated when ring of new node knows shards of other nodes
                 if (returnType.getKind() == TypeKind.VOID) {
-                    if (deliveryOptionsAnnotation != null) {
-                        methodBuilder.addStatement("$T deliveryOptions = new $T().setSendTimeout($L)", DeliveryOptions.class, DeliveryOptions.class, deliveryOptionsAnnotation.timeout());
-                    } else {
-                        methodBuilder.addStatement("$T deliveryOptions = new $T()", DeliveryOptions.class, DeliveryOptions.class);
-                    }
-                    methodBuilder.addStatement("this.$N.eventBus().send($N, $T.of($S, $N), deliveryOptions)", vertxField, eventBusAddressField, RIFAMessage.class, methodsHelper.generateEventBusSuffix(), methodsHelper.getParamsNamesCommaSeparatedOrCastedNull());
-                } else if (returnType.toString().startsWith(io.vertx.core.streams.ReadStream.class.getCanonicalName())) {
-                    methodBuilder.addStatement("String dataAddress = $N + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong())", eventBusAddressField);
-                    methodBuilder.addStatement("String remoteAddress = $N", eventBusAddressField);
-                    methodBuilder.addStatement("return new $T<>($N, dataAddress, remoteAddress, $T.of($S, $N))", VxRifaReceivingReadStream.class, vertxField, RIFAMessage.class, methodsHelper.generateEventBusSuffix(), methodsHelper.getParamsNamesCommaSeparatedOrCastedNull());
-                } else if (returnType.toString().startsWith(io.vertx.core.streams.WriteStream.class.getCanonicalName())) {
-                    methodBuilder.addStatement("String controlAddress = $N + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong())", eventBusAddressField);
-                    methodBuilder.addStatement("String remoteAddress = $N", eventBusAddressField);
-                    methodBuilder.addStatement("return new $T<>($N, controlAddress, remoteAddress, $T.of($S, $N))", VxRifaSendingWriteStream.class, vertxField, RIFAMessage.class, methodsHelper.generateEventBusSuffix(), methodsHelper.getParamsNamesCommaSeparatedOrCastedNull());
+                    methodBuilder.beginControlFlow("if (!this.$N.isComplete())", shardRingReadyField);
+                    // Void call has nobody to fail, so failure of ring is reported like exception of eventBus consumer
+                    methodBuilder.addStatement("this.$N.onComplete(ringReady -> {\n$>if (ringReady.succeeded()) {\n$>$L($L);\n$<} else {\n$>$T.reportException(ringReady.cause());\n$<}\n$<})",
+                            shardRingReadyField, method.getSimpleName(), methodsHelper.getParamsNamesCommaSeparated(), VxRifaUtil.class);
+                    methodBuilder.addStatement("return");
+                    methodBuilder.endControlFlow();
+                } else if (returnType.toString().startsWith(io.vertx.core.Future.class.getCanonicalName())) {
+                    methodBuilder.beginControlFlow("if (!this.$N.isComplete())", shardRingReadyField);
+                    methodBuilder.addStatement("return this.$N.compose(ringReady -> $L($L))", shardRingReadyField, method.getSimpleName(), methodsHelper.getParamsNamesCommaSeparated());
+                    methodBuilder.endControlFlow();
+                }
+                methodBuilder.addStatement("String shardAddress = this.$N.route($N)", shardRingField, shardKey.getSimpleName().toString());
+                targetAddress = CodeBlock.of("shardAddress");
+            }
+
+            // Sharded calls are always sent through eventBus because shards are not registered as local receivers
+            boolean direct = directInvocation && shardKey == null;
+
+            // Methods with own delivery options are not batched because batch is sent with default ones
+            boolean cancellable = method.getAnnotation(VxRifaCancellable.class) != null;
+            boolean batched = batching && deliveryOptionsField == defaultDeliveryOptionsField && shardKey == null && !cancellable;
+
+            if (cancellable && !returnType.toString().startsWith(io.vertx.core.Future.class.getCanonicalName())) {
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return io.vertx.core.Future to be annotated with @VxRifaCancellable", interfaceElement, method), method);
+                cancellable = false;
+            }
+
+            if (method.getAnnotation(VxRifaBatch.class) != null && returnType.getKind() != TypeKind.VOID) {
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return void to be annotated with @VxRifaBatch", interfaceElement, method), method);
+            }
+
+            if (method.getParameters().stream().filter(parameter -> parameter.getAnnotation(VxRifaShardKey.class) != null).count() > 1) {
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should have only one @VxRifaShardKey parameter", interfaceElement, method), method);
+            }
+
+            if (method.getAnnotation(VxRifaBatch.class) != null && shardKey != null) {
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should not have @VxRifaShardKey parameter to be annotated with @VxRifaBatch", interfaceElement, method), method);
+            }
+
+            if (method.getAnnotation(VxRifaSingleFlight.class) != null && !returnType.toString().startsWith(io.vertx.core.Future.class.getCanonicalName())) {
+                messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return io.vertx.core.Future to be annotated with @VxRifaSingleFlight", interfaceElement, method), method);
+            }
+
+            if (returnType.getKind() == TypeKind.VOID) {
+                CodeBlock message = newMessage;
+                if (direct) {
+                    // Receiver from the same context gets message right here instead of eventBus or batch
+                    methodBuilder.addStatement("$T message = $L", messageClassName, message);
+                    message = CodeBlock.of("message");
+                    methodBuilder.beginControlFlow("if (!$T.requestLocally(this.$N, $L, $L, $N, null))", VxRifaUtil.class, vertxField, targetAddress, message, deliveryOptionsField);
+                }
+                if (methodBatcherFields.containsKey(methodId)) {
+                    methodBuilder.addStatement("this.$N.send($L)", methodBatcherFields.get(methodId), message);
+                } else if (batched) {
+                    methodBuilder.addStatement("this.$N.send($L)", batcherField, message);
                 } else {
-                    ParameterizedTypeName parameterizedTypeName = (ParameterizedTypeName) ParameterizedTypeName.get(returnType);
-                    TypeName[] typeNames = parameterizedTypeName.typeArguments.toArray(new TypeName[0]);
-                    methodBuilder.addStatement("$T promise = $T.promise()", ParameterizedTypeName.get(ClassName.get(io.vertx.core.Promise.class), typeNames), Promise.class);
-                    if (deliveryOptionsAnnotation != null) {
-                        methodBuilder.addStatement("$T deliveryOptions = new $T().setSendTimeout($L)", DeliveryOptions.class, DeliveryOptions.class, deliveryOptionsAnnotation.timeout());
-                    } else {
-                        methodBuilder.addStatement("$T deliveryOptions = new $T()", DeliveryOptions.class, DeliveryOptions.class);
-                    }
-                    methodBuilder.addStatement("this.$N.eventBus().request($N, $T.of($S, $N), deliveryOptions, result -> handle(promise,result))",
-                            vertxField, eventBusAddressField, RIFAMessage.class, methodsHelper.generateEventBusSuffix(), methodsHelper.getParamsNamesCommaSeparatedOrCastedNull()
-                    );
+                    methodBuilder.addStatement("this.$N.eventBus().send($L, $L, $N)", vertxField, targetAddress, message, deliveryOptionsField);
+                }
+                if (direct) {
+                    methodBuilder.endControlFlow();
+                }
+            } else if (returnType.toString().startsWith(io.vertx.core.streams.ReadStream.class.getCanonicalName())) {
+                methodBuilder.addStatement("String dataAddress = $N + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong())", eventBusAddressField);
+                methodBuilder.addStatement("String remoteAddress = $L", targetAddress);
+                methodBuilder.addStatement("return new $T<>($N, dataAddress, remoteAddress, $L, $N)", VxRifaReceivingReadStream.class, vertxField, newMessage, deliveryOptionsField);
+            } else if (returnType.toString().startsWith(io.vertx.core.streams.WriteStream.class.getCanonicalName())) {
+                methodBuilder.addStatement("String controlAddress = $N + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong())", eventBusAddressField);
+                methodBuilder.addStatement("String remoteAddress = $L", targetAddress);
+                methodBuilder.addStatement("return new $T<>($N, controlAddress, remoteAddress, $L, $N)", VxRifaSendingWriteStream.class, vertxField, newMessage, deliveryOptionsField);
+            } else {
+                ParameterizedTypeName parameterizedTypeName = (ParameterizedTypeName) ParameterizedTypeName.get(returnType);
+                TypeName[] typeNames = parameterizedTypeName.typeArguments.toArray(new TypeName[0]);
+                CodeBlock message = newMessage;
+                FieldSpec resultCacheField = resultCacheFields.get(methodId);
+                boolean singleFlight = method.getAnnotation(VxRifaSingleFlight.class) != null;
+                int wrappingCalls = 0;
+                if (resultCacheField != null || singleFlight || direct) {
+                    // Message is the key of cached result or in-flight call because messages with equal parameters are equal
+                    methodBuilder.addStatement("$T message = $L", messageClassName, message);
+                    message = CodeBlock.of("message");
+                }
+                if (cancellable) {
+                    // Caller gets tracked future so cancelling it cancels the whole call
+                    methodBuilder.addStatement("String callId = $T.newCallId()", VxRifaCancellation.class);
+                    methodBuilder.addCode("return $T.track(this.$N, $L, callId, call -> {\n$>", VxRifaCancellation.class, vertxField, targetAddress);
+                    wrappingCalls++;
+                }
+                if (resultCacheField != null) {
+                    methodBuilder.addCode("return this.$N.call(message, () -> {\n$>", resultCacheField);
+                    wrappingCalls++;
+                }
+                if (singleFlight) {
+                    methodBuilder.addCode("return this.$N.call(message, () -> {\n$>", getInFlightCallsField());
+                    wrappingCalls++;
+                }
+                FieldSpec limitField = methodInFlightLimitFields.getOrDefault(methodId, inFlightLimitField);
+                if (limitField != null) {
+                    // Cached and coalesced calls do not take slots, queued call waits for slot not longer than for reply
+                    // and is sent with the rest of timeout
+                    methodBuilder.addCode("return this.$N.call($N.getSendTimeout(), remainingTimeout -> {\n$>", limitField, deliveryOptionsField);
+                    methodBuilder.addStatement("$T limitedOptions = $T.withRemainingTimeout($N, remainingTimeout)", DeliveryOptions.class, VxRifaInFlightLimit.class, deliveryOptionsField);
+                    wrappingCalls++;
+                }
+                CodeBlock callOptions = limitField != null ? CodeBlock.of("limitedOptions") : CodeBlock.of("$N", deliveryOptionsField);
+                if (hedgingFields.containsKey(methodId)) {
+                    // Every attempt sends the same message again
+                    methodBuilder.addCode("return this.$N.call(() -> {\n$>", hedgingFields.get(methodId));
+                    wrappingCalls++;
+                }
+                methodBuilder.addStatement("$T promise = $T.promise()", ParameterizedTypeName.get(ClassName.get(io.vertx.core.Promise.class), typeNames), Promise.class);
+                // Receiver drops calls which sender stopped to wait for
+                CodeBlock requestOptions = deliveryOptionsAnnotation != null
+                        ? CodeBlock.of("$T.withDeadline($L)", VxRifaCallContext.class, callOptions)
+                        : callOptions;
+                if (cancellable) {
+                    requestOptions = CodeBlock.of("$T.withCallId($L, callId)", VxRifaCancellation.class, requestOptions);
+                }
+                if (cancellable) {
+                    // Cancelled call fails its requests, so bulkhead slots are freed and coalesced calls fail too
+                    methodBuilder.beginControlFlow("if (!call.bind(promise))");
                     methodBuilder.addStatement("return promise.future()");
+                    methodBuilder.endControlFlow();
+                }
+                // Handler captures only promise because handle is static. It stays per call because promise could be the handler
+                // only by extending package-private FutureImpl of Vert.X, and object holding promise would cost the same
+                CodeBlock replyHandler = CodeBlock.of("result -> handle(promise, result)");
+                if (cancellable && !replyChannel) {
+                    // Receiver is told to stop the work only when reply is timed out
+                    replyHandler = CodeBlock.of("result -> {\n$>if (result.failed()) {\n$>call.failed(result.cause());\n$<}\nhandle(promise, result);\n$<}");
+                }
+                if (direct) {
+                    // Receiver from the same context gets message right where it would be sent, after all wrappers above
+                    methodBuilder.addStatement("$T replyHandler = $L", ParameterizedTypeName.get(ClassName.get(io.vertx.core.Handler.class),
+                            ParameterizedTypeName.get(ClassName.get(io.vertx.core.AsyncResult.class), ParameterizedTypeName.get(io.vertx.core.eventbus.Message.class, Object.class))), replyHandler);
+                    replyHandler = CodeBlock.of("replyHandler");
+                    methodBuilder.beginControlFlow("if (!$T.requestLocally(this.$N, $L, $L, $L, replyHandler))", VxRifaUtil.class, vertxField, targetAddress, message, requestOptions);
+                }
+                if (batched) {
+                    methodBuilder.addStatement("this.$N.request($L, promise)", batcherField, message);
+                } else if (replyChannel) {
+                    methodBuilder.addStatement("this.$N.request($L, $L, $L, promise)",
+                            replyChannelField, targetAddress, message, requestOptions
+                    );
+                } else {
+                    methodBuilder.addStatement("this.$N.eventBus().request($L, $L, $L, $L)", vertxField, targetAddress, message, requestOptions, replyHandler);
                 }
+                if (direct) {
+                    methodBuilder.endControlFlow();
+                }
+                if (cancellable && replyChannel) {
+                    methodBuilder.addStatement("promise.future().onFailure(call::failed)");
+                }
+                methodBuilder.addStatement("return promise.future()");
+                for (int i = 0; i < wrappingCalls; i++) {
+                    methodBuilder.addCode("$<});\n");
+                }
+            }
+
+            methodBuilder.addAnnotation(Override.class);
+
+            classBuilder.addMethod(methodBuilder.build());
+
+        }
+
+        return this;
+
+    }
+
+    private void generateResultCache(int methodId, ExecutableElement method, MethodSpec.Builder defaultConstructor, MethodSpec.Builder addressConstructor) {
+
+        VxRifaCacheable cacheableAnnotation = method.getAnnotation(VxRifaCacheable.class);
+        if (cacheableAnnotation == null) {
+            return;
+        }
+        if (!method.getReturnType().toString().startsWith(io.vertx.core.Future.class.getCanonicalName())) {
+            messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return io.vertx.core.Future to be annotated with @VxRifaCacheable", interfaceElement, method), method);
+            return;
+        }
+
+        FieldSpec resultCacheField = FieldSpec.builder(VxRifaResultCache.class, "resultCache" + methodId, Modifier.PRIVATE, Modifier.FINAL).build();
+        classBuilder.addField(resultCacheField);
+        resultCacheFields.put(methodId, resultCacheField);
+
+        CodeBlock.Builder initializer = CodeBlock.builder()
+                .addStatement("this.$N = $T.get($N, this.$N, $L, $LL, $L)", resultCacheField, VxRifaResultCache.class, vertxField, eventBusAddressField, methodId,
+                        cacheableAnnotation.ttl(), Math.max(1, cacheableAnnotation.maxEntries()));
+
+        // Class values of annotations are available only as type mirrors during compilation
+        TypeMirror invalidatedBy = null;
+        try {
+            cacheableAnnotation.invalidatedBy();
+        } catch (MirroredTypeException ex) {
+            invalidatedBy = ex.getTypeMirror();
+        }
+        if (invalidatedBy != null && !TypeName.get(invalidatedBy).equals(ClassName.get(Void.class))) {
+            initializer.addStatement("this.$N.invalidateOn($T.class)", resultCacheField, TypeName.get(invalidatedBy));
+        }
+
+        defaultConstructor.addCode(initializer.build());
+        addressConstructor.addCode(initializer.build());
+
+    }
 
-                methodBuilder.addAnnotation(Override.class);
+    private void generateHedging(int methodId, ExecutableElement method, MethodSpec.Builder defaultConstructor, MethodSpec.Builder addressConstructor) {
 
-                classBuilder.addMethod(methodBuilder.build());
+        VxRifaHedged hedgedAnnotation = method.getAnnotation(VxRifaHedged.class);
+        if (hedgedAnnotation == null) {
+            return;
+        }
+        if (!method.getReturnType().toString().startsWith(io.vertx.core.Future.class.getCanonicalName())) {
+            messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return io.vertx.core.Future to be annotated with @VxRifaHedged", interfaceElement, method), method);
+            return;
+        }
+
+        FieldSpec hedgingField = FieldSpec.builder(VxRifaHedging.class, "hedging" + methodId, Modifier.PRIVATE, Modifier.FINAL).build();
+        classBuilder.addField(hedgingField);
+        hedgingFields.put(methodId, hedgingField);
+
+        CodeBlock initializer = CodeBlock.of("this.$N = new $T($N, $L, $LL)", hedgingField, VxRifaHedging.class, vertxField, hedgedAnnotation.percentile(), hedgedAnnotation.delay());
+        defaultConstructor.addStatement(initializer);
+        addressConstructor.addStatement(initializer);
+
+    }
+
+    private void generateInFlightLimit(int methodId, ExecutableElement method, MethodSpec.Builder defaultConstructor, MethodSpec.Builder addressConstructor) {
+
+        VxRifaBulkhead bulkheadAnnotation = method.getAnnotation(VxRifaBulkhead.class);
+        if (bulkheadAnnotation == null) {
+            return;
+        }
+        if (!method.getReturnType().toString().startsWith(io.vertx.core.Future.class.getCanonicalName())) {
+            messager.printMessage(Diagnostic.Kind.ERROR, String.format("%s.%s should return io.vertx.core.Future to be annotated with @VxRifaBulkhead", interfaceElement, method), method);
+            return;
+        }
+
+        FieldSpec limitField = FieldSpec.builder(VxRifaInFlightLimit.class, "inFlightLimit" + methodId, Modifier.PRIVATE, Modifier.FINAL).build();
+        classBuilder.addField(limitField);
+        methodInFlightLimitFields.put(methodId, limitField);
+
+        CodeBlock initializer = CodeBlock.of("this.$N = new $T($N, $S, $L, $L)", limitField, VxRifaInFlightLimit.class, vertxField,
+                interfaceElement.getQualifiedName() + "." + method.getSimpleName(), bulkheadAnnotation.maxInFlight(), bulkheadAnnotation.queueSize());
+        defaultConstructor.addStatement(initializer);
+        addressConstructor.addStatement(initializer);
 
+    }
+
+    private void generateFlowControl() {
+
+        classBuilder.addSuperinterface(VxRifaFlowControl.class);
+        classBuilder.addMethod(MethodSpec.methodBuilder("writeQueueFull")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.BOOLEAN)
+                .addStatement("return this.$N.writeQueueFull()", inFlightLimitField)
+                .build());
+        classBuilder.addMethod(MethodSpec.methodBuilder("drainHandler")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(ParameterizedTypeName.get(io.vertx.core.Handler.class, Void.class), "handler")
+                .returns(VxRifaFlowControl.class)
+                .addStatement("this.$N.drainHandler(handler)", inFlightLimitField)
+                .addStatement("return this")
+                .build());
+        classBuilder.addMethod(MethodSpec.methodBuilder("getInFlight")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addStatement("return this.$N.getInFlight()", inFlightLimitField)
+                .build());
+
+    }
+
+    private VariableElement getShardKey(ExecutableElement method) {
+
+        for (VariableElement parameter : method.getParameters()) {
+            if (parameter.getAnnotation(VxRifaShardKey.class) != null) {
+                return parameter;
             }
+        }
+
+        return null;
+
+    }
+
+    private FieldSpec getInFlightCallsField() {
 
+        if (inFlightCallsField == null) {
+            inFlightCallsField = FieldSpec.builder(VxRifaInFlightCalls.class, "inFlightCalls", Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T()", VxRifaInFlightCalls.class)
+                    .build();
+            classBuilder.addField(inFlightCallsField);
         }
 
-        return this;
+        return inFlightCallsField;
 
     }
 
@@ -173,7 +539,7 @@ class SenderGenerator {
 
         TypeVariableName Tvariable = TypeVariableName.get("T");
 
-        handlerBuilder.addModifiers(Modifier.PRIVATE)
+        handlerBuilder.addModifiers(Modifier.PRIVATE, Modifier.STATIC)
                 .addTypeVariable(Tvariable)
                 .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
 
@@ -188,12 +554,12 @@ class SenderGenerator {
                 .beginControlFlow("if ($N.succeeded())", asyncResultParameter)
                 .addStatement("$T reply = ($T) $N.result().body()", RIFAReply.class, RIFAReply.class, asyncResultParameter)
                 .beginControlFlow("if (reply.isExceptional())")
-                .addStatement("$N.fail(reply.getException())", promiseParameter)
+                .addStatement("$N.tryFail(reply.getException())", promiseParameter)
                 .nextControlFlow("else")
-                .addStatement("$N.complete(($T) reply.getResult())", promiseParameter, Tvariable)
+                .addStatement("$N.tryComplete(($T) reply.getResult())", promiseParameter, Tvariable)
                 .endControlFlow()
                 .nextControlFlow("else")
-                .addStatement("$N.fail($N.cause().getMessage())", promiseParameter, asyncResultParameter)
+                .addStatement("$N.tryFail($N.cause())", promiseParameter, asyncResultParameter)
                 .endControlFlow()
                 .returns(TypeName.VOID);
 
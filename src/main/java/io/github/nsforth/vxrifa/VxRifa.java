@@ -89,12 +89,62 @@ import java.lang.annotation.Target;
  * There is one small thing that should be done before using VxRifa. You must call {@link VxRifaUtil#registerRIFACodec(io.vertx.core.Vertx) } once for any instance of Vert.x.<br>
  * VxRifa uses wrapper as container for methods parameters so that wrapper should be registered before any sending by eventBus.<br>
  * You should also remember that any parameters and returned objects should be immutable(effectively immutable) or at least thread-safe.<br>
- * Currently messaging by VxRifa only possible for local non-clustered Vert.X instances because RIFAMessageCodec not supported network encoding/decoding of objects.
- * I hope to solve that in near future.
+ * Clustered eventBus is supported for methods with parameters of primitive types, their wrappers, String, byte[], Buffer, enums and
+ * ClusterSerializable classes like JsonObject. Results could be of the same types except enums and user ClusterSerializable classes.
+ * Exceptions are transferred by wire as {@link VxRifaRemoteException} with original class name, message and stack trace limited by {@link #stackTraceDepth()}.
+ * Streams are still supported only for local non-clustered Vert.X instances.
  * @author Nikita Staroverov
  */
 @Retention(RetentionPolicy.CLASS)
 @Target(ElementType.TYPE)
 public @interface VxRifa {
     
+    /**
+     * Maximum count of stack trace elements of exceptions that transferred to remote invoker by clustered eventBus.
+     * Collecting and encoding of full stack traces is expensive so by default only exception class name and message are transferred.
+     * @return Stack trace depth
+     */
+    int stackTraceDepth() default 0;
+    
+    /**
+     * Enables direct invocation of receiver when sender is used in the same Vert.X context where receiver was registered.
+     * In that case message is passed to receiver without eventBus after result cache, single-flight, bulkhead and other wrappers of sender,
+     * receiver handles it at once and reply completes invoker's future later on invoker's context.
+     * Streams and sharded calls are always sent by eventBus. Receivers with {@link VxRifaIgnore} methods are never called directly.
+     * @return true if direct invocation is allowed
+     */
+    boolean directInvocation() default false;
+    
+    /**
+     * Makes sender to receive replies on its own long-lived eventBus address with correlation id in headers
+     * instead of registering temporary reply consumer for every request.
+     * Useful under high request rates especially with clustered eventBus where registrations are propagated.
+     * Timeouts of requests are tracked by {@link VxRifaTimeoutWheel} instead of Vert.X timer per request.
+     * @return true if sender should use {@link VxRifaReplyChannel}
+     */
+    boolean replyChannel() default false;
+    
+    /**
+     * Makes sender to pack calls of void and Future methods issued in the same Vert.X context during batching window
+     * into one eventBus message. Receiver unpacks such message, dispatches every call and replies once with results of all calls.
+     * It amortizes per message overhead of chatty interfaces especially with clustered eventBus.
+     * Methods with {@link VxRifaDeliveryOptions} and streams are never batched, so their calls could overtake batched calls issued before them.
+     * @return true if calls should be batched by {@link VxRifaRequestBatcher}
+     */
+    boolean batching() default false;
+    
+    /**
+     * How long in milliseconds batching sender waits for other calls after the first one.
+     * Zero means that calls issued in the same event loop tick are batched.
+     * @return Batching window in milliseconds
+     */
+    long batchingWindow() default 0;
+    
+    /**
+     * Generates router that passes calls to actors of {@link VxRifaActors} by value of {@link VxRifaShardKey} parameter.
+     * Every method should return void or {@link io.vertx.core.Future} and have shard key, otherwise compilation fails.
+     * @return true if interface is implemented by virtual actors
+     */
+    boolean actors() default false;
+    
 }
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runtime of virtual actors. Receiver returned by {@link #getReceiver()} activates one instance of interface per entity key on demand
+ * using factory and passes every call to instance of key taken from parameter annotated with {@link VxRifaShardKey}.
+ * Interface should be annotated with {@code @VxRifa(actors = true)}, so calls are dispatched by generated router without reflection.<p>
+ * Actors are partitioned by hash of key between all event loops of Vertx. Every partition keeps its actors on its own event loop,
+ * so neither partitions nor instances of actors need locks and calls of one actor are executed in order.<p>
+ * Instances that were not called for {@link #setPassivationTimeout passivation timeout} and least recently used instances of partition above
+ * {@link #setMaxActiveActors limit of active actors} are passivated, passivation handler could save their state before they are forgotten.
+ * Actor is not passivated while future returned by any of its methods is not completed, so the limit could be exceeded by such actors.
+ * Receiver could be registered as usual or as shard by {@link VxRifaUtil#registerShardReceiver} to spread actors over nodes.
+ * @author Nikita Staroverov
+ * @param <I> Interface annotated with {@link VxRifa}
+ */
+public final class VxRifaActors<I> {
+    
+    public static final long DEFAULT_PASSIVATION_TIMEOUT = 60_000;
+    public static final int DEFAULT_MAX_ACTIVE_ACTORS = 100_000;
+    
+    private final Vertx vertx;
+    private final Class<I> interfaceType;
+    private final Function<Object, ? extends I> factory;
+    private final List<Partition> partitions = new ArrayList<>();
+    private final I receiver;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong passivationCount = new AtomicLong();
+    private volatile long passivationTimeout = DEFAULT_PASSIVATION_TIMEOUT;
+    private volatile int maxActiveActors = DEFAULT_MAX_ACTIVE_ACTORS;
+    private volatile BiConsumer<Object, ? super I> passivationHandler;
+    private long passivationTimer = -1;
+    private boolean closed;
+
+    /**
+     * @param vertx Vertx instance
+     * @param interfaceType Interface of actors annotated with {@code @VxRifa(actors = true)}
+     * @param factory Creates actor by entity key, it is called on event loop of actor
+     * @throws IllegalArgumentException when there is no generated router for interface
+     */
+    public VxRifaActors(Vertx vertx, Class<I> interfaceType, Function<Object, ? extends I> factory) throws IllegalArgumentException {
+        this.vertx = vertx;
+        this.interfaceType = interfaceType;
+        this.factory = factory;
+        for (ContextInternal context : VxRifaUtil.createDetachedContexts(vertx)) {
+            partitions.add(new Partition(context));
+        }
+        this.receiver = VxRifaUtil.instantiateActorRouter(interfaceType, this);
+        restartPassivationTimer();
+    }
+    
+    /**
+     * @param passivationTimeout Milliseconds after last call when actor is passivated, zero disables passivation of idle actors
+     * @return this
+     */
+    public VxRifaActors<I> setPassivationTimeout(long passivationTimeout) {
+        this.passivationTimeout = passivationTimeout;
+        restartPassivationTimer();
+        return this;
+    }
+    
+    /**
+     * @param maxActiveActors Maximum count of active actors, least recently used actors are passivated to keep memory bounded
+     * @return this
+     */
+    public VxRifaActors<I> setMaxActiveActors(int maxActiveActors) {
+        this.maxActiveActors = Math.max(1, maxActiveActors);
+        return this;
+    }
+    
+    /**
+     * @param passivationHandler Called on event loop of actor with its key and instance before actor is forgotten
+     * @return this
+     */
+    public VxRifaActors<I> setPassivationHandler(BiConsumer<Object, ? super I> passivationHandler) {
+        this.passivationHandler = passivationHandler;
+        return this;
+    }
+    
+    /**
+     * @return Implementation of interface that should be registered by {@link VxRifaUtil#registerReceiver} or {@link VxRifaUtil#registerShardReceiver}
+     */
+    public I getReceiver() {
+        return receiver;
+    }
+    
+    /**
+     * @return Count of active actors
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+    
+    /**
+     * @return Count of actors passivated since creation
+     */
+    public long getPassivationCount() {
+        return passivationCount.get();
+    }
+    
+    /**
+     * Calls method returning future on actor of key. Used by generated router.
+     * @param <T> Type of result
+     * @param key Entity key
+     * @param invocation Calls method of actor
+     * @return Future completed by future returned by actor
+     */
+    public <T> Future<T> call(Object key, Function<? super I, Future<T>> invocation) {
+        Promise<T> promise = Promise.promise();
+        Partition partition = getPartition(key);
+        partition.context.runOnContext(v -> {
+            Activation activation;
+            Future<T> result;
+            try {
+                activation = partition.activate(key);
+                result = invocation.apply(activation.instance);
+            } catch (RuntimeException ex) {
+                promise.fail(ex);
+                return;
+            }
+            if (result == null) {
+                promise.fail(new NullPointerException("Returned future should not be null! May be you forget to create appropriate result in actor of " + interfaceType.getName() + "?"));
+                return;
+            }
+            activation.pendingCalls++;
+            result.onComplete(completed -> {
+                partition.completed(activation);
+                promise.handle(completed);
+            });
+        });
+        return promise.future();
+    }
+    
+    /**
+     * Calls void method on actor of key. Used by generated router.
+     * @param key Entity key
+     * @param invocation Calls method of actor
+     */
+    public void send(Object key, Consumer<? super I> invocation) {
+        Partition partition = getPartition(key);
+        partition.context.runOnContext(v -> invocation.accept(partition.activate(key).instance));
+    }
+    
+    /**
+     * Passivates all actors and stops passivation timer. Receiver should be unregistered before.
+     * @return Future completed when all actors are passivated
+     */
+    public Future<Void> close() {
+        synchronized (this) {
+            closed = true;
+            cancelPassivationTimer();
+        }
+        List<Future> passivated = new ArrayList<>();
+        for (Partition partition : partitions) {
+            Promise<Void> promise = Promise.promise();
+            partition.context.runOnContext(v -> {
+                partition.passivateAll();
+                promise.complete();
+            });
+            passivated.add(promise.future());
+        }
+        return CompositeFuture.all(passivated).mapEmpty();
+    }
+    
+    private Partition getPartition(Object key) {
+        return partitions.get(Math.floorMod(key == null ? 0 : key.hashCode(), partitions.size()));
+    }
+    
+    private synchronized void restartPassivationTimer() {
+        cancelPassivationTimer();
+        if (passivationTimeout > 0 && !closed) {
+            // Timer should not depend on lifecycle of verticle that created actors
+            partitions.get(0).context.runOnContext(v -> startPassivationTimer());
+        }
+    }
+    
+    private synchronized void startPassivationTimer() {
+        long timeout = passivationTimeout;
+        if (passivationTimer == -1 && timeout > 0 && !closed) {
+            passivationTimer = vertx.setPeriodic(Math.max(1, timeout / 2), id -> {
+                for (Partition partition : partitions) {
+                    partition.context.runOnContext(v -> partition.passivateIdle());
+                }
+            });
+        }
+    }
+    
+    private void cancelPassivationTimer() {
+        if (passivationTimer != -1) {
+            vertx.cancelTimer(passivationTimer);
+            passivationTimer = -1;
+        }
+    }
+    
+    /**
+     * Actors of keys hashed to one event loop. All methods are called only on its context.
+     */
+    private class Partition {
+        
+        private final ContextInternal context;
+        // Access ordered map iterates from least recently used actor
+        private final LinkedHashMap<Object, Activation> activations = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Partition(ContextInternal context) {
+            this.context = context;
+        }
+        
+        private Activation activate(Object key) {
+            Activation activation = activations.get(key);
+            if (activation == null) {
+                activation = new Activation(key, interfaceType.cast(factory.apply(key)));
+                activations.put(key, activation);
+                if (activeCount.incrementAndGet() > maxActiveActors) {
+                    passivateLeastRecentlyUsed(activation);
+                }
+            }
+            activation.lastCalled = System.nanoTime();
+            return activation;
+        }
+        
+        private void completed(Activation activation) {
+            // Future returned by actor could be completed on other thread
+            if (Vertx.currentContext() == context) {
+                activation.pendingCalls--;
+            } else {
+                context.runOnContext(v -> activation.pendingCalls--);
+            }
+        }
+        
+        private void passivateLeastRecentlyUsed(Activation activated) {
+            for (Iterator<Activation> it = activations.values().iterator(); it.hasNext();) {
+                Activation activation = it.next();
+                if (activation != activated && activation.pendingCalls == 0) {
+                    it.remove();
+                    passivate(activation);
+                    return;
+                }
+            }
+        }
+        
+        private void passivateIdle() {
+            long idleSince = System.nanoTime() - passivationTimeout * 1_000_000;
+            for (Iterator<Activation> it = activations.values().iterator(); it.hasNext();) {
+                Activation activation = it.next();
+                if (activation.lastCalled - idleSince > 0) {
+                    // Actors after this one were called later
+                    break;
+                }
+                if (activation.pendingCalls == 0) {
+                    it.remove();
+                    passivate(activation);
+                }
+            }
+        }
+        
+        private void passivateAll() {
+            for (Iterator<Activation> it = activations.values().iterator(); it.hasNext();) {
+                Activation activation = it.next();
+                it.remove();
+                passivate(activation);
+            }
+        }
+        
+        private void passivate(Activation activation) {
+            activeCount.decrementAndGet();
+            passivationCount.incrementAndGet();
+            BiConsumer<Object, ? super I> handler = passivationHandler;
+            if (handler != null) {
+                try {
+                    handler.accept(activation.key, activation.instance);
+                } catch (RuntimeException ex) {
+                    VxRifaUtil.reportException(ex);
+                }
+            }
+        }
+        
+    }
+    
+    private class Activation {
+        
+        private final Object key;
+        private final I instance;
+        private int pendingCalls;
+        private long lastCalled;
+
+        private Activation(Object key, I instance) {
+            this.key = key;
+            this.instance = instance;
+        }
+        
+    }
+    
+}
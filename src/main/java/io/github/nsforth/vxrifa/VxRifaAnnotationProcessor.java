@@ -19,10 +19,16 @@
 package io.github.nsforth.vxrifa;
 
 import com.squareup.javapoet.JavaFile;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.processing.AbstractProcessor;
@@ -36,7 +42,10 @@ import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
 
 /**
  * 
@@ -44,9 +53,14 @@ import javax.tools.Diagnostic;
  */
 public class VxRifaAnnotationProcessor extends AbstractProcessor {
 
+    private static final String FACTORIES_SERVICE_FILE = "META-INF/services/" + VxRifaFactory.class.getName();
+    
+    private final Set<String> generatedFactories = new TreeSet<>();
+    
     private Messager messager;
     private Filer filer;
     private Elements elements;
+    private Types types;
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
@@ -56,6 +70,7 @@ public class VxRifaAnnotationProcessor extends AbstractProcessor {
         messager = processingEnv.getMessager();
         filer = processingEnv.getFiler();
         elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
 
     }
 
@@ -65,6 +80,14 @@ public class VxRifaAnnotationProcessor extends AbstractProcessor {
         Set<? extends Element> senders_elements = roundEnv.getElementsAnnotatedWith(VxRifa.class);
         Set<? extends Element> publishers_elements = roundEnv.getElementsAnnotatedWith(VxRifaPublish.class);
 
+        if (roundEnv.processingOver()) {
+            
+            generateFactoriesServiceFile();
+            
+            return false;
+            
+        }
+        
         if (senders_elements.isEmpty() && publishers_elements.isEmpty()) {
 
             return false;
@@ -82,8 +105,15 @@ public class VxRifaAnnotationProcessor extends AbstractProcessor {
             
             try {
 
+                generateMessages(interfaceElement, packageElement);
+                generateCodec(interfaceElement, packageElement);
                 generateSender(interfaceElement, packageElement);                
                 generateReceiver(interfaceElement, packageElement);            
+                boolean actors = interfaceElement.getAnnotation(VxRifa.class).actors();
+                if (actors) {
+                    generateActorRouter(interfaceElement, packageElement);
+                }
+                generateFactory(interfaceElement, packageElement, false, actors);
 
             } catch (IOException ex) {
                 Logger.getLogger(VxRifaAnnotationProcessor.class.getName()).log(Level.SEVERE, null, ex); //TODO Заменить на консольный вывод ошибки компиляции
@@ -102,8 +132,11 @@ public class VxRifaAnnotationProcessor extends AbstractProcessor {
             
             try {
 
+                generateMessages(interfaceElement, packageElement);
+                generateCodec(interfaceElement, packageElement);
                 generatePublisher(interfaceElement, packageElement);                
                 generateReceiver(interfaceElement, packageElement);            
+                generateFactory(interfaceElement, packageElement, true, false);
 
             } catch (IOException ex) {
                 Logger.getLogger(VxRifaAnnotationProcessor.class.getName()).log(Level.SEVERE, null, ex); //TODO Заменить на консольный вывод ошибки компиляции
@@ -135,6 +168,31 @@ public class VxRifaAnnotationProcessor extends AbstractProcessor {
         return true;
     }
 
+    private void generateMessages(TypeElement interfaceElement, PackageElement packageElement) throws IOException {
+        
+        MessagesGenerator messagesGenerator = new MessagesGenerator(messager, interfaceElement, elements)
+                .generateInitializing()
+                .generateMessages();
+        
+        JavaFile messagesFile = JavaFile.builder(packageElement.getQualifiedName().toString(), messagesGenerator.buildClass()).build();
+        
+        messagesFile.writeTo(filer);
+    
+    }
+
+    private void generateCodec(TypeElement interfaceElement, PackageElement packageElement) throws IOException {
+        
+        CodecGenerator codecGenerator = new CodecGenerator(messager, interfaceElement, elements, types)
+                .generateInitializing()
+                .generateWireMethods()
+                .generateLocalMethods();
+        
+        JavaFile codecFile = JavaFile.builder(packageElement.getQualifiedName().toString(), codecGenerator.buildClass()).build();
+        
+        codecFile.writeTo(filer);
+    
+    }
+
     private void generateSender(TypeElement interfaceElement, PackageElement packageElement) throws IOException {
         
         SenderGenerator senderGenerator = new SenderGenerator(messager, interfaceElement, elements)
@@ -173,6 +231,67 @@ public class VxRifaAnnotationProcessor extends AbstractProcessor {
     
     }
 
+    private void generateActorRouter(TypeElement interfaceElement, PackageElement packageElement) throws IOException {
+        
+        ActorRouterGenerator actorRouterGenerator = new ActorRouterGenerator(messager, interfaceElement, elements)
+                .generateInitializing()
+                .generateMethods();
+        
+        JavaFile actorRouterFile = JavaFile.builder(packageElement.getQualifiedName().toString(), actorRouterGenerator.buildClass()).build();
+        
+        actorRouterFile.writeTo(filer);
+    
+    }
+
+    private void generateFactory(TypeElement interfaceElement, PackageElement packageElement, boolean publisher, boolean actors) throws IOException {
+        
+        FactoryGenerator factoryGenerator = new FactoryGenerator(messager, interfaceElement, publisher, actors)
+                .generateInitializing()
+                .generateFactoryMethods();
+        
+        JavaFile factoryFile = JavaFile.builder(packageElement.getQualifiedName().toString(), factoryGenerator.buildClass()).build();
+        
+        factoryFile.writeTo(filer);
+        
+        generatedFactories.add(FactoryGenerator.getFactoryClassName(interfaceElement).reflectionName());
+    
+    }
+
+    /**
+     * Writes all generated factories to the services file at the last round. 
+     * Factories listed by previous incremental compilation are kept.
+     */
+    private void generateFactoriesServiceFile() {
+        
+        if (generatedFactories.isEmpty()) {
+            return;
+        }
+        
+        Set<String> factories = new TreeSet<>(generatedFactories);
+        
+        try {
+            FileObject existingFile = filer.getResource(StandardLocation.CLASS_OUTPUT, "", FACTORIES_SERVICE_FILE);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(existingFile.openInputStream(), StandardCharsets.UTF_8))) {
+                reader.lines().map(String::trim).filter(line -> !line.isEmpty() && !line.startsWith("#")).forEach(factories::add);
+            }
+        } catch (IOException ex) {
+            // There is no services file yet
+        }
+        
+        try {
+            FileObject serviceFile = filer.createResource(StandardLocation.CLASS_OUTPUT, "", FACTORIES_SERVICE_FILE);
+            try (Writer writer = new OutputStreamWriter(serviceFile.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String factory : factories) {
+                    writer.write(factory);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException ex) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Unable to write " + FACTORIES_SERVICE_FILE + ": " + ex.getMessage());
+        }
+        
+    }
+
     @Override
     public Set<String> getSupportedAnnotationTypes() {
 
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Pool of receiver instances like {@link VxRifaUtil#registerReceiverPool} that registers or unregisters instances within bounds following the load.
+ * Every {@link #setInterval interval} autoscaler looks at calls pending in instances, average latency of calls and delay of event loops of instances
+ * that shows how long messages wait in queue. When pending calls per instance exceed {@link #setMaxPending limit} or latency or delay exceed
+ * {@link #setTargetLatency target} number of instances is doubled at once to catch up with burst. When all of them stay below half of limits
+ * for several intervals instances are unregistered one by one.<p>
+ * Instances are registered by generated receivers directly, calls returning {@link Future} are measured by {@link VxRifaCallObserver}.
+ * Void methods are not measured because their completion is not known when they run on worker or virtual threads,
+ * so load of interfaces with void methods only is seen by delay of event loops.
+ * Scaling decisions are made on context that created autoscaler, the only one that changes the pool.
+ * @author Nikita Staroverov
+ * @param <I> Interface annotated with {@link VxRifa}
+ */
+public final class VxRifaAutoscaler<I> {
+    
+    public static final long DEFAULT_INTERVAL = 1000;
+    public static final long DEFAULT_TARGET_LATENCY = 100;
+    public static final int DEFAULT_MAX_PENDING = 100;
+    private static final int IDLE_INTERVALS_BEFORE_SCALE_DOWN = 3;
+    
+    private final Vertx vertx;
+    private final Supplier<? extends I> factory;
+    private final VxRifaReceiverPool<I> pool;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder latency = new LongAdder();
+    private final AtomicLong queueDelay = new AtomicLong();
+    private volatile int minInstances = 1;
+    private volatile int maxInstances;
+    private volatile long interval = DEFAULT_INTERVAL;
+    private volatile long targetLatency = DEFAULT_TARGET_LATENCY;
+    private volatile int maxPending = DEFAULT_MAX_PENDING;
+    private volatile long lastLatency;
+    private volatile long lastQueueDelay;
+    // Used only on context of pool
+    private long timer = -1;
+    private int idleIntervals;
+    
+    /**
+     * @param vertx Vertx instance
+     * @param interfaceType Interface of receivers
+     * @param factory Creates interface implementation, it is called on event loop of instance
+     */
+    public VxRifaAutoscaler(Vertx vertx, Class<I> interfaceType, Supplier<? extends I> factory) {
+        this(vertx, interfaceType, factory, interfaceType.getCanonicalName());
+    }
+    
+    /**
+     * @param vertx Vertx instance
+     * @param interfaceType Interface of receivers
+     * @param factory Creates interface implementation, it is called on event loop of instance
+     * @param eventBusAddress Alternate eventBus address, by default address came from interface FQN
+     */
+    public VxRifaAutoscaler(Vertx vertx, Class<I> interfaceType, Supplier<? extends I> factory, String eventBusAddress) {
+        this.vertx = vertx;
+        this.factory = factory;
+        this.pool = new VxRifaReceiverPool<>(vertx, interfaceType, eventBusAddress);
+        this.pool.setCallObserver(this::observe);
+        this.maxInstances = VxRifaReceiverPool.getEventLoopsCount(vertx);
+    }
+    
+    /**
+     * @param minInstances Number of instances registered at start and kept when there is no load
+     * @return this
+     */
+    public synchronized VxRifaAutoscaler<I> setMinInstances(int minInstances) {
+        if (minInstances < 1) {
+            throw new IllegalArgumentException("Autoscaler should keep at least one instance");
+        }
+        this.minInstances = minInstances;
+        this.maxInstances = Math.max(maxInstances, minInstances);
+        return this;
+    }
+    
+    /**
+     * @param maxInstances Maximum number of instances, by default it is number of event loops
+     * @return this
+     */
+    public synchronized VxRifaAutoscaler<I> setMaxInstances(int maxInstances) {
+        if (maxInstances < minInstances) {
+            throw new IllegalArgumentException("Maximum number of instances should not be less than minimum");
+        }
+        this.maxInstances = maxInstances;
+        return this;
+    }
+    
+    /**
+     * @param interval Milliseconds between scaling decisions, it takes effect on next registration
+     * @return this
+     */
+    public synchronized VxRifaAutoscaler<I> setInterval(long interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval should be positive");
+        }
+        this.interval = interval;
+        return this;
+    }
+    
+    /**
+     * @param targetLatency Milliseconds that average latency of calls and delay of messages in queue should not exceed
+     * @return this
+     */
+    public synchronized VxRifaAutoscaler<I> setTargetLatency(long targetLatency) {
+        this.targetLatency = targetLatency;
+        return this;
+    }
+    
+    /**
+     * @param maxPending Number of calls per instance that are started but not completed yet that should not be exceeded
+     * @return this
+     */
+    public synchronized VxRifaAutoscaler<I> setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+        return this;
+    }
+    
+    /**
+     * Registers minimum number of instances and starts scaling them. Scaling stops when pool is unregistered or verticle that registered it is undeployed.
+     * @return Future that on completion returns successfully registered pool and fails otherwise
+     */
+    public Future<VxRifaReceiver<I>> register() {
+        // Pool completes registration on its context so timer fires there too
+        return pool.register(factory, minInstances).map(registered -> {
+            timer = vertx.setPeriodic(interval, id -> scale());
+            return pool;
+        });
+    }
+    
+    /**
+     * @return Number of registered instances
+     */
+    public int getInstancesCount() {
+        return pool.getInstancesCount();
+    }
+    
+    /**
+     * @return Number of calls that are started but not completed yet by all instances
+     */
+    public int getPending() {
+        return pending.get();
+    }
+    
+    /**
+     * @return Average latency of calls in milliseconds measured during last interval
+     */
+    public long getLatency() {
+        return lastLatency;
+    }
+    
+    /**
+     * @return Maximum delay of event loops of instances in milliseconds measured during last interval
+     */
+    public long getQueueDelay() {
+        return lastQueueDelay;
+    }
+    
+    private void scale() {
+        int instances = pool.getInstancesCount();
+        if (instances == 0) {
+            // Pool was unregistered
+            vertx.cancelTimer(timer);
+            timer = -1;
+            return;
+        }
+        long callsCount = calls.sumThenReset();
+        long latencySum = latency.sumThenReset();
+        lastLatency = callsCount > 0 ? TimeUnit.NANOSECONDS.toMillis(latencySum / callsCount) : 0;
+        lastQueueDelay = TimeUnit.NANOSECONDS.toMillis(queueDelay.getAndSet(0));
+        long pendingPerInstance = pending.get() / instances;
+        long worstLatency = Math.max(lastLatency, lastQueueDelay);
+        if ((pendingPerInstance > maxPending || worstLatency > targetLatency) && instances < maxInstances) {
+            idleIntervals = 0;
+            for (int i = Math.min(instances, maxInstances - instances); i > 0; i--) {
+                pool.addInstance();
+            }
+        } else if (pendingPerInstance <= maxPending / 2 && worstLatency <= targetLatency / 2 && instances > minInstances) {
+            if (++idleIntervals >= IDLE_INTERVALS_BEFORE_SCALE_DOWN) {
+                idleIntervals = 0;
+                pool.removeInstance();
+            }
+        } else {
+            idleIntervals = 0;
+        }
+        // Probes wait in queues of event loops behind messages so their delay is measured on next interval
+        for (Context context : pool.getContexts()) {
+            long probeTime = System.nanoTime();
+            context.runOnContext(v -> queueDelay.accumulateAndGet(System.nanoTime() - probeTime, Math::max));
+        }
+    }
+    
+    private void observe(long startTime, Future<?> result) {
+        pending.incrementAndGet();
+        result.onComplete(completed -> completeCall(startTime));
+    }
+    
+    private void completeCall(long start) {
+        pending.decrementAndGet();
+        calls.increment();
+        latency.add(System.nanoTime() - start);
+    }
+    
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks void method which calls should be buffered by sender and shipped as one {@link RIFABatch} message
+ * when buffer reaches {@link #size()} or {@link #timeout()} expires. It is useful for high-volume notifications like metrics or audit events.
+ * Calls are buffered per Vert.X context, calls made outside of Vert.X context are sent immediately.
+ * Calls of other methods are not buffered and could overtake buffered calls issued before them.<p>
+ * Receiver replays buffered calls in order. If interface also has overload of the same name with one {@link java.util.List} parameter
+ * of batched method parameter type, for example <tt>void record(List&lt;String&gt; texts)</tt> for <tt>void record(String text)</tt>,
+ * receiver calls it once with all parameters of the batch instead.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface VxRifaBatch {
+    
+    /**
+     * @return Maximum count of calls in one message
+     */
+    int size() default 100;
+    
+    /**
+     * @return Milliseconds to wait for other calls after the first one, zero means current event loop tick
+     */
+    long timeout() default 10;
+    
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.VertxOptions;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks receiver method that blocks, for example by JDBC or file calls. Generated receiver invokes it on worker thread instead of event loop
+ * of receiver so other messages are not stalled, and replies from event loop when returned {@link io.vertx.core.Future} completes.
+ * Receiver itself stays on event loop, there is no need to deploy it as worker verticle.
+ * Senders do not call such methods directly even if interface allows {@link VxRifa#directInvocation()}.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface VxRifaBlocking {
+    
+    /**
+     * @return Name of shared worker pool, default worker pool of Vert.X is used when it is empty
+     */
+    String workerPool() default "";
+    
+    /**
+     * @return Size of named worker pool, it is used by the first receiver that creates pool
+     */
+    int poolSize() default VertxOptions.DEFAULT_WORKER_POOL_SIZE;
+    
+    /**
+     * Ordering is kept by context of receiver like {@link io.vertx.core.Vertx#executeBlocking} does, so ordered calls of all receivers
+     * registered on the same context and of all blocking code ordered there wait for each other too.
+     * Next call starts when method returned, not when returned {@link io.vertx.core.Future} completed.
+     * @return Whether calls received on the same context are executed one by one in order of arrival or in parallel
+     */
+    boolean ordered() default true;
+    
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits count of calls of methods returning {@link io.vertx.core.Future} that wait for reply, so slow receiver could not make sender
+ * accumulate pending calls until memory is exhausted. On interface limit is shared by all its methods and sender implements {@link VxRifaFlowControl},
+ * on method it applies to that method only.<p>
+ * When limit is reached calls wait in queue of {@link #queueSize()} and fail with {@link VxRifaOverloadException} when queue is full
+ * or when they did not get free slot during their send timeout. Queued call is sent with the rest of its send timeout,
+ * so caller waits not longer than send timeout in total.<p>
+ * Void methods of annotated interface are not limited: they are sent at once, do not take slots and are not counted by {@link VxRifaFlowControl},
+ * because they do not wait for reply and slot could not be freed.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface VxRifaBulkhead {
+    
+    /**
+     * @return Maximum count of calls waiting for reply
+     */
+    int maxInFlight() default 100;
+    
+    /**
+     * @return Maximum count of calls waiting for free slot, zero means that calls fail immediately
+     */
+    int queueSize() default 0;
+    
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks method returning {@link io.vertx.core.Future} which successful results should be cached by sender
+ * so repeated calls with equal parameters are completed without sending message until {@link #ttl()} expires.
+ * Cache keeps no more than {@link #maxEntries()} results evicting least recently used ones,
+ * it is shared by all senders of the same eventBus address in Vert.X instance.<p>
+ * Cached results could be invalidated by {@link VxRifaUtil#invalidateCachedResults} or by {@link VxRifaResultCache} methods.
+ * Interface annotated with {@link VxRifaPublish} could be set as {@link #invalidatedBy()}, then publishing any of its methods
+ * invalidates all cached results of method, for example from verticle that changed configuration.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface VxRifaCacheable {
+    
+    /**
+     * @return Time to live of cached result in milliseconds
+     */
+    long ttl();
+    
+    /**
+     * @return Maximum count of cached results, values less than one mean one
+     */
+    int maxEntries() default 1000;
+    
+    /**
+     * @return Interface which published calls invalidate cached results, {@link Void} means none
+     */
+    Class<?> invalidatedBy() default Void.class;
+    
+}
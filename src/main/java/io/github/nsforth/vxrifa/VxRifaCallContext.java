@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+
+/**
+ * Context of call that is executed by receiver. Senders of methods annotated with {@link VxRifaDeliveryOptions} attach absolute deadline
+ * of call to message, receiver drops messages that are already expired because nobody waits for their replies.
+ * Implementation could ask {@link #current()} for remaining time during synchronous part of method and should remember it for asynchronous one.
+ * Calls of methods annotated with {@link VxRifaDeliveryOptions} sent during synchronous part of receiver method are limited by its deadline too,
+ * calls of other methods keep default timeout because their messages carry no deadline.
+ * Calls of methods annotated with {@link VxRifaCancellable} could be cancelled by sender, implementation should stop the work then.<p>
+ * Deadline is wall clock time so clocks of nodes should be synchronized.
+ * @author Nikita Staroverov
+ */
+public final class VxRifaCallContext {
+    
+    public static final String DEADLINE_HEADER = "VxRifaDeadline";
+    
+    private static final ThreadLocal<VxRifaCallContext> CURRENT = new ThreadLocal<>();
+    
+    private final long deadline;
+    private final String callId;
+    private final Context context;
+    private volatile boolean cancelled;
+    private Handler<Void> cancellationHandler;
+
+    private VxRifaCallContext(long deadline, String callId) {
+        this.deadline = deadline;
+        this.callId = callId;
+        this.context = Vertx.currentContext();
+    }
+    
+    /**
+     * @return Context of receiver method that is executed by current thread or null
+     */
+    public static VxRifaCallContext current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * @param message Received message
+     * @return Context of call described by message headers
+     */
+    public static VxRifaCallContext of(Message<?> message) {
+        String deadlineHeader = message.headers().get(DEADLINE_HEADER);
+        return new VxRifaCallContext(deadlineHeader != null ? Long.parseLong(deadlineHeader) : 0, message.headers().get(VxRifaCancellation.CALL_ID_HEADER));
+    }
+    
+    /**
+     * Copies delivery options of sender and adds deadline header to them. If it is called during execution of receiver method
+     * with earlier deadline then that deadline is used and send timeout is reduced to it.
+     * @param deliveryOptions Shared delivery options of method
+     * @return Options of one call
+     */
+    public static DeliveryOptions withDeadline(DeliveryOptions deliveryOptions) {
+        long now = System.currentTimeMillis();
+        long deadline = now + deliveryOptions.getSendTimeout();
+        DeliveryOptions callOptions = VxRifaUtil.copyDeliveryOptions(deliveryOptions);
+        VxRifaCallContext current = CURRENT.get();
+        if (current != null && current.deadline != 0 && current.deadline < deadline) {
+            deadline = current.deadline;
+            callOptions.setSendTimeout(Math.max(1, deadline - now));
+        }
+        return callOptions.addHeader(DEADLINE_HEADER, Long.toString(deadline));
+    }
+    
+    /**
+     * @return Absolute deadline in milliseconds since epoch or zero if caller did not set it
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+    
+    /**
+     * @return Milliseconds until deadline, {@link Long#MAX_VALUE} if there is no deadline
+     */
+    public long getRemainingTime() {
+        return deadline != 0 ? deadline - System.currentTimeMillis() : Long.MAX_VALUE;
+    }
+    
+    /**
+     * @return True if caller already gave up waiting for reply
+     */
+    public boolean isExpired() {
+        return getRemainingTime() <= 0;
+    }
+    
+    /**
+     * @return Id of call that could be cancelled or null
+     */
+    public String getCallId() {
+        return callId;
+    }
+    
+    /**
+     * @return True if sender cancelled call
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * @param handler Called on context of receiver when sender cancels call
+     * @return this
+     */
+    public synchronized VxRifaCallContext cancellationHandler(Handler<Void> handler) {
+        this.cancellationHandler = handler;
+        return this;
+    }
+    
+    void cancel() {
+        Handler<Void> handler;
+        synchronized (this) {
+            cancelled = true;
+            handler = cancellationHandler;
+        }
+        if (handler == null) {
+            return;
+        }
+        if (context == null) {
+            handler.handle(null);
+        } else {
+            context.runOnContext(handler);
+        }
+    }
+    
+    /**
+     * Makes this context current for thread. Used by generated receivers.
+     * @return Context that was current before
+     */
+    public VxRifaCallContext enter() {
+        VxRifaCallContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+    
+    /**
+     * Restores context that was current before {@link #enter()}. Used by generated receivers.
+     * @param previous Context returned by enter
+     */
+    public static void exit(VxRifaCallContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+    
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Future;
+
+/**
+ * Observes calls of methods returning {@link Future} that generated receiver dispatches to its implementation, void methods are not observed.
+ * Observer is given to receivers created by {@link VxRifaFactory}.
+ * {@link VxRifaAutoscaler} measures load of instances by it without wrapping them.
+ * @author Nikita Staroverov
+ */
+public interface VxRifaCallObserver {
+    
+    /**
+     * Called on context of receiver right after method returned its future.
+     * @param startTime {@link System#nanoTime()} before method was called
+     * @param result Future returned by method
+     */
+    void observe(long startTime, Future<?> result);
+    
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks method returning {@link io.vertx.core.Future} which long running work could be cancelled by sender.
+ * Sender tells receiver to cancel call when reply timed out or when caller cancelled it by {@link VxRifaCancellation#cancel}.
+ * Implementation observes cancellation by {@link VxRifaCallContext#isCancelled()} or {@link VxRifaCallContext#cancellationHandler}
+ * of {@link VxRifaCallContext#current()} that it got during synchronous part of method. Reply of cancelled call is not sent.<p>
+ * Cancelling call that is sent by {@link VxRifaSingleFlight} for several callers fails it for all of them,
+ * caller that only joined such call stops waiting without cancelling it. Cancelled call frees its {@link VxRifaBulkhead} slot at once.
+ * Receiver is not told anything when call failed by other reasons than timeout because it has already finished the call.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface VxRifaCancellable {
+    
+}
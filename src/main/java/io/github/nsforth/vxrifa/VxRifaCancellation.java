@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cancellation of calls of methods annotated with {@link VxRifaCancellable}. Sender adds unique call id to message
+ * and publishes it on <tt>address#cancel</tt> when call is cancelled or timed out, receivers of all nodes cancel {@link VxRifaCallContext} with that id.
+ * Every registered receiver with cancellable methods listens on that address until it is unregistered.
+ * Streams returned by senders are cancelled too, remote side stops reading its source then.
+ * @author Nikita Staroverov
+ */
+public final class VxRifaCancellation {
+    
+    public static final String CALL_ID_HEADER = "VxRifaCallId";
+    
+    private static final String CANCELLATIONS_MAP = VxRifaCancellation.class.getName() + ".calls";
+    private static final String CANCEL_SUFFIX = "#cancel";
+    
+    // Call ids should be unique in cluster so counter of node is prefixed by random node id
+    private static final String NODE_ID = Long.toHexString(ThreadLocalRandom.current().nextLong()) + ':';
+    private static final AtomicLong LAST_CALL_ID = new AtomicLong();
+    
+    // Futures returned to callers are plain futures of Vert.X, so their calls are looked up by identity until they are completed
+    private static final Map<Object, TrackedCall<?>> PENDING_CALLS = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private VxRifaCancellation() {
+    }
+    
+    /**
+     * Cancels call. Future of call fails with {@link CancellationException} and receiver is told to stop the work.
+     * Calls coalesced with the cancelled one by {@link VxRifaSingleFlight} fail too.
+     * Caller that only joined call of other caller stops waiting without cancelling it.
+     * @param callResult Future or stream returned by sender
+     * @return True if call was still pending
+     */
+    public static boolean cancel(Object callResult) {
+        if (callResult instanceof VxRifaReceivingReadStream) {
+            return ((VxRifaReceivingReadStream<?>) callResult).cancel();
+        }
+        TrackedCall<?> trackedCall = PENDING_CALLS.get(callResult);
+        return trackedCall != null && trackedCall.cancel();
+    }
+    
+    /**
+     * @return New call id
+     */
+    public static String newCallId() {
+        return NODE_ID + LAST_CALL_ID.incrementAndGet();
+    }
+    
+    /**
+     * @param deliveryOptions Options of call that could be shared
+     * @param callId Call id
+     * @return Copy of options with call id header
+     */
+    public static DeliveryOptions withCallId(DeliveryOptions deliveryOptions, String callId) {
+        return VxRifaUtil.copyDeliveryOptions(deliveryOptions).addHeader(CALL_ID_HEADER, callId);
+    }
+    
+    /**
+     * Makes call which could be cancelled by {@link #cancel}. Used by generated senders.
+     * @param <T> Type of result
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address of receiver
+     * @param callId Call id that is sent with message
+     * @param call Sends invocation and returns future of its result, every promise of request should be bound to tracked call
+     * @return Future of call result
+     */
+    public static <T> Future<T> track(Vertx vertx, String eventBusAddress, String callId, Function<TrackedCall<T>, Future<T>> call) {
+        TrackedCall<T> trackedCall = new TrackedCall<>(vertx, eventBusAddress, callId);
+        Future<T> future = trackedCall.promise.future();
+        PENDING_CALLS.put(future, trackedCall);
+        future.onComplete(completion -> PENDING_CALLS.remove(future));
+        Future<T> result;
+        try {
+            result = call.apply(trackedCall);
+        } catch (Throwable ex) {
+            result = Future.failedFuture(ex);
+        }
+        result.onComplete(completion -> {
+            if (completion.succeeded()) {
+                trackedCall.promise.tryComplete(completion.result());
+            } else {
+                trackedCall.promise.tryFail(completion.cause());
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Listens for cancellations of calls sent to receiver. Used by generated receivers when they are registered.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address of receiver
+     * @return Consumer that should be unregistered with receiver
+     */
+    public static MessageConsumer<String> subscribe(Vertx vertx, String eventBusAddress) {
+        return vertx.eventBus().consumer(eventBusAddress + CANCEL_SUFFIX, Registry.get(vertx)::cancel);
+    }
+    
+    /**
+     * Makes call context cancellable by senders until {@link #unregister}. Used by generated receivers.
+     * @param vertx Vertx instance
+     * @param callContext Context of received call
+     */
+    public static void register(Vertx vertx, VxRifaCallContext callContext) {
+        if (callContext.getCallId() != null) {
+            Registry.get(vertx).calls.put(callContext.getCallId(), callContext);
+        }
+    }
+    
+    /**
+     * Forgets call context when call is completed. Used by generated receivers.
+     * @param vertx Vertx instance
+     * @param callContext Context of received call
+     */
+    public static void unregister(Vertx vertx, VxRifaCallContext callContext) {
+        if (callContext.getCallId() != null) {
+            Registry.get(vertx).calls.remove(callContext.getCallId(), callContext);
+        }
+    }
+    
+    /**
+     * Call made by sender which knows how to cancel it. Caller gets only future of its promise, so call could not be completed from outside.
+     * @param <T> Type of result
+     */
+    public static final class TrackedCall<T> {
+        
+        private final Vertx vertx;
+        private final String eventBusAddress;
+        private final String callId;
+        private final Promise<T> promise = Promise.promise();
+        private final List<Promise<?>> requests = new ArrayList<>(1);
+        private boolean cancelled;
+
+        private TrackedCall(Vertx vertx, String eventBusAddress, String callId) {
+            this.vertx = vertx;
+            this.eventBusAddress = eventBusAddress;
+            this.callId = callId;
+        }
+        
+        /**
+         * Binds promise of request sent with call id, it is failed when call is cancelled.
+         * Calls that joined request of other call do not send own requests.
+         * @param request Promise of request
+         * @return False if call is already cancelled and request should not be sent, promise is failed then
+         */
+        public boolean bind(Promise<?> request) {
+            synchronized (this) {
+                if (!cancelled) {
+                    requests.add(request);
+                    return true;
+                }
+            }
+            request.tryFail(new CancellationException("Call " + callId + " to " + eventBusAddress + " is cancelled"));
+            return false;
+        }
+        
+        /**
+         * Tells receiver to stop the work if request failed by timeout because it could still work on it.
+         * Calls failed by receiver or cancelled by caller are already finished there.
+         * @param failure Failure of request
+         */
+        public void failed(Throwable failure) {
+            if (failure instanceof ReplyException && ((ReplyException) failure).failureType() == ReplyFailure.TIMEOUT) {
+                vertx.eventBus().publish(eventBusAddress + CANCEL_SUFFIX, callId);
+            }
+        }
+        
+        private boolean cancel() {
+            List<Promise<?>> cancelledRequests;
+            synchronized (this) {
+                if (cancelled || promise.future().isComplete()) {
+                    return false;
+                }
+                cancelled = true;
+                cancelledRequests = new ArrayList<>(requests);
+            }
+            if (!cancelledRequests.isEmpty()) {
+                vertx.eventBus().publish(eventBusAddress + CANCEL_SUFFIX, callId);
+            }
+            CancellationException cancellation = new CancellationException("Call " + callId + " to " + eventBusAddress + " is cancelled");
+            promise.tryFail(cancellation);
+            // Failed requests free their bulkhead slots and fail calls coalesced with this one
+            for (Promise<?> request : cancelledRequests) {
+                request.tryFail(cancellation);
+            }
+            return true;
+        }
+        
+    }
+    
+    private static class Registry implements Shareable {
+        
+        private final ConcurrentMap<String, VxRifaCallContext> calls = new ConcurrentHashMap<>();
+        
+        private static synchronized Registry get(Vertx vertx) {
+            LocalMap<String, Registry> registries = vertx.sharedData().getLocalMap(CANCELLATIONS_MAP);
+            Registry registry = registries.get(CANCELLATIONS_MAP);
+            if (registry == null) {
+                registry = new Registry();
+                registries.put(CANCELLATIONS_MAP, registry);
+            }
+            return registry;
+        }
+        
+        private void cancel(Message<String> message) {
+            VxRifaCallContext callContext = calls.remove(message.body());
+            if (callContext != null) {
+                callContext.cancel();
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Creates generated implementations for some interface annotated with {@link VxRifa} or {@link VxRifaPublish}.
+ * Annotation processor generates factory for every such interface and registers it in
+ * <tt>META-INF/services/io.github.nsforth.vxrifa.VxRifaFactory</tt> so {@link VxRifaUtil} finds it by {@link java.util.ServiceLoader}
+ * with classloader of interface instead of reflective instantiation.
+ * When you repackage application into fat jar services files should be merged.
+ * @author Nikita Staroverov
+ * @param <I> Interface type
+ */
+public interface VxRifaFactory<I> {
+    
+    Class<I> getInterfaceType();
+    
+    /**
+     * @param vertx Vertx instance
+     * @param eventBusAddress Alternate eventBus address or null for default one
+     * @return New sender implementation
+     * @throws IllegalArgumentException when interface is not annotated with {@link VxRifa}
+     */
+    I createSender(Vertx vertx, String eventBusAddress) throws IllegalArgumentException;
+    
+    /**
+     * @param vertx Vertx instance
+     * @param eventBusAddress Alternate eventBus address or null for default one
+     * @return New publisher implementation
+     * @throws IllegalArgumentException when interface is not annotated with {@link VxRifaPublish}
+     */
+    I createPublisher(Vertx vertx, String eventBusAddress) throws IllegalArgumentException;
+    
+    /**
+     * @param vertx Vertx instance
+     * @param eventBusAddress Alternate eventBus address or null for default one
+     * @return New receiver registrator
+     */
+    VxRifaReceiver<I> createReceiver(Vertx vertx, String eventBusAddress);
+    
+    /**
+     * Used by {@link VxRifaAutoscaler} to measure load of receivers it registers.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Alternate eventBus address or null for default one
+     * @param callObserver Observer of calls dispatched by receiver
+     * @return New receiver registrator
+     */
+    VxRifaReceiver<I> createReceiver(Vertx vertx, String eventBusAddress, VxRifaCallObserver callObserver);
+    
+    /**
+     * @param actors Actors that receive routed calls
+     * @return New router that passes calls to actors by their keys
+     * @throws IllegalArgumentException when interface is not annotated with {@link VxRifa} with actors enabled
+     */
+    I createActorRouter(VxRifaActors<I> actors) throws IllegalArgumentException;
+    
+}
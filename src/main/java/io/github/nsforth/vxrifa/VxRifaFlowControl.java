@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Handler;
+
+/**
+ * Overload signals of sender of interface annotated with {@link VxRifaBulkhead}, similar to {@link io.vertx.core.streams.WriteStream}.
+ * Producer should stop calling when {@link #writeQueueFull()} returns true and continue in {@link #drainHandler}.
+ * @author Nikita Staroverov
+ */
+public interface VxRifaFlowControl {
+    
+    /**
+     * @return True when all slots are taken and new calls would be queued or rejected
+     */
+    boolean writeQueueFull();
+    
+    /**
+     * @param handler Called when calls are completed and writeQueueFull becomes false
+     * @return this
+     */
+    VxRifaFlowControl drainHandler(Handler<Void> handler);
+    
+    /**
+     * @return Count of calls waiting for reply
+     */
+    int getInFlight();
+    
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks idempotent method returning {@link io.vertx.core.Future} which calls should be hedged by sender.
+ * When reply does not arrive in time of {@link #percentile()} of recent reply latencies the same message is sent again
+ * and call is completed by the first successful reply, the other one is ignored. Duplicate is sent to the same address, event bus
+ * chooses receivers of address in turn so it usually reaches other replica than slow one caused by GC pause or overload.
+ * It is not guaranteed because calls of other senders could be delivered in between, and with the only receiver hedging just adds load.<p>
+ * Until enough replies are measured {@link #delay()} is used. Delays are rounded up to tick duration of {@link VxRifaTimeoutWheel}.
+ * Method should be safe to execute twice.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface VxRifaHedged {
+    
+    /**
+     * @return Percentile of reply latency after which duplicate is sent
+     */
+    double percentile() default 95;
+    
+    /**
+     * @return Milliseconds to wait before duplicate is sent until latencies are measured, also the lowest delay
+     */
+    long delay() default 10;
+    
+}
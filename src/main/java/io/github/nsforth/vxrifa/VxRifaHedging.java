@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Hedging of calls of one sender method. Latencies of recent replies are remembered and their percentile is the delay
+ * after which duplicate request is sent. Call is completed by the first successful reply and fails only when all attempts failed.
+ * Delays of duplicates are tracked by {@link VxRifaTimeoutWheel} instead of Vert.X timer per call.
+ * Used by senders for methods annotated with {@link VxRifaHedged}.
+ * @author Nikita Staroverov
+ */
+public class VxRifaHedging {
+    
+    public static final int LATENCY_SAMPLES = 128;
+    
+    // Delay is recalculated after that count of replies, sorting samples on every reply is too expensive
+    private static final int RECALCULATION_PERIOD = 16;
+    
+    private final VxRifaTimeoutWheel timeoutWheel;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long[] samples = new long[LATENCY_SAMPLES];
+    private int samplesCount;
+    private int nextSample;
+    private volatile long delayNanos;
+    private long hedgedCount;
+
+    /**
+     * @param vertx Vertx instance
+     * @param percentile Percentile of reply latency after which duplicate is sent
+     * @param delay Milliseconds to wait before duplicate is sent until latencies are measured, also the lowest delay.
+     * Delays are rounded up to tick duration of {@link VxRifaTimeoutWheel}
+     */
+    public VxRifaHedging(Vertx vertx, double percentile, long delay) {
+        this.timeoutWheel = VxRifaTimeoutWheel.get(vertx);
+        this.percentile = Math.min(100, Math.max(0, percentile));
+        this.minDelayNanos = Math.max(1, delay) * 1_000_000;
+        this.delayNanos = minDelayNanos;
+    }
+    
+    /**
+     * Makes call and makes it again if reply does not arrive in time.
+     * @param <T> Type of result
+     * @param call Sends invocation and returns future of its result
+     * @return Future of the first successful result
+     */
+    public <T> Future<T> call(Supplier<Future<T>> call) {
+        Promise<T> promise = Promise.promise();
+        Attempts<T> attempts = new Attempts<>(promise, call);
+        attempts.send();
+        timeoutWheel.schedule(attempts, Math.max(1, delayNanos / 1_000_000));
+        promise.future().onComplete(result -> timeoutWheel.cancel(attempts));
+        return promise.future();
+    }
+    
+    /**
+     * @return Milliseconds after which duplicate request is sent
+     */
+    public long getDelay() {
+        return delayNanos / 1_000_000;
+    }
+    
+    /**
+     * @return Count of calls that were sent twice
+     */
+    public synchronized long getHedgedCount() {
+        return hedgedCount;
+    }
+    
+    private synchronized void record(long latency) {
+        samples[nextSample] = latency;
+        nextSample = (nextSample + 1) % samples.length;
+        if (samplesCount < samples.length) {
+            samplesCount++;
+        }
+        if (samplesCount >= RECALCULATION_PERIOD && nextSample % RECALCULATION_PERIOD == 0) {
+            long[] sorted = Arrays.copyOf(samples, samplesCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+        }
+    }
+    
+    private class Attempts<T> extends VxRifaTimeoutWheel.Timeout {
+        
+        private final Promise<T> promise;
+        private final Supplier<Future<T>> call;
+        private int pending;
+
+        private Attempts(Promise<T> promise, Supplier<Future<T>> call) {
+            this.promise = promise;
+            this.call = call;
+        }
+        
+        @Override
+        protected void expired() {
+            if (!promise.future().isComplete()) {
+                synchronized (VxRifaHedging.this) {
+                    hedgedCount++;
+                }
+                send();
+            }
+        }
+        
+        private void send() {
+            long sentAt = System.nanoTime();
+            synchronized (this) {
+                pending++;
+            }
+            Future<T> result;
+            try {
+                result = call.get();
+            } catch (Throwable ex) {
+                result = Future.failedFuture(ex);
+            }
+            result.onComplete(completion -> complete(completion, sentAt));
+        }
+        
+        private void complete(AsyncResult<T> completion, long sentAt) {
+            boolean last;
+            synchronized (this) {
+                last = --pending == 0;
+            }
+            if (completion.succeeded()) {
+                record(System.nanoTime() - sentAt);
+                promise.tryComplete(completion.result());
+            } else if (last) {
+                promise.tryFail(completion.cause());
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Table of calls that were sent and still wait for result. Calls are keyed by generated messages that are equal
+ * when method and parameters are equal. Duplicate callers are completed on their own Vert.X contexts.
+ * Used by senders for methods annotated with {@link VxRifaSingleFlight}.
+ * @author Nikita Staroverov
+ */
+public class VxRifaInFlightCalls {
+    
+    private final ConcurrentMap<RIFAInvocation, Future<Object>> inFlight = new ConcurrentHashMap<>();
+    
+    /**
+     * Returns result of call with equal invocation if it is still in flight or makes new call otherwise.
+     * @param <T> Type of result
+     * @param invocation Invocation that identifies call
+     * @param call Sends invocation and returns future of its result
+     * @return Future of call result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> call(RIFAInvocation invocation, Supplier<Future<T>> call) {
+        Promise<Object> promise = Promise.promise();
+        Future<Object> future = promise.future();
+        Future<Object> existing = inFlight.putIfAbsent(invocation, future);
+        if (existing != null) {
+            return (Future<T>) attach(existing);
+        }
+        Future<T> result;
+        try {
+            result = call.get();
+        } catch (Throwable ex) {
+            result = Future.failedFuture(ex);
+        }
+        result.onComplete(completion -> {
+            inFlight.remove(invocation, future);
+            promise.handle((AsyncResult<Object>) completion);
+        });
+        return (Future<T>) future;
+    }
+    
+    /**
+     * @return Count of calls waiting for result
+     */
+    public int size() {
+        return inFlight.size();
+    }
+    
+    private static Future<Object> attach(Future<Object> existing) {
+        Context context = Vertx.currentContext();
+        if (context == null) {
+            return existing;
+        }
+        Promise<Object> promise = Promise.promise();
+        existing.onComplete(result -> {
+            if (Vertx.currentContext() == context) {
+                promise.handle(result);
+            } else {
+                context.runOnContext(v -> promise.handle(result));
+            }
+        });
+        return promise.future();
+    }
+    
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Bounded window of calls waiting for reply with bounded queue of calls waiting for free slot.
+ * Queued call waits for slot not longer than its send timeout and is started on context where it was made
+ * with the rest of timeout, so caller waits for reply not longer than send timeout in total.
+ * Drain handler is called on context where it was set when the last taken slot is freed after window was full.
+ * Used by senders for interfaces and methods annotated with {@link VxRifaBulkhead}.
+ * @author Nikita Staroverov
+ */
+public class VxRifaInFlightLimit implements VxRifaFlowControl {
+    
+    private final VxRifaTimeoutWheel timeoutWheel;
+    private final String name;
+    private final int maxInFlight;
+    private final int queueSize;
+    private final ArrayDeque<QueuedCall<?>> queue = new ArrayDeque<>();
+    private int inFlight;
+    private Handler<Void> drainHandler;
+    private Context drainContext;
+
+    /**
+     * @param vertx Vertx instance
+     * @param name Name of limited sender or method for overload messages
+     * @param maxInFlight Maximum count of calls waiting for reply
+     * @param queueSize Maximum count of calls waiting for free slot
+     */
+    public VxRifaInFlightLimit(Vertx vertx, String name, int maxInFlight, int queueSize) {
+        this.timeoutWheel = VxRifaTimeoutWheel.get(vertx);
+        this.name = name;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.queueSize = Math.max(0, queueSize);
+    }
+    
+    /**
+     * Makes call if there is free slot, queues it if there is place in queue or fails it with {@link VxRifaOverloadException} otherwise.
+     * Queued call is failed with {@link VxRifaOverloadException} too when it does not get slot in time.
+     * @param <T> Type of result
+     * @param timeout Milliseconds that call could wait in queue, usually send timeout of call
+     * @param call Sends invocation and returns future of its result
+     * @return Future of call result
+     */
+    public <T> Future<T> call(long timeout, Supplier<Future<T>> call) {
+        return call(timeout, remainingTimeout -> call.get());
+    }
+    
+    /**
+     * Same as {@link #call(long, java.util.function.Supplier)} but call gets milliseconds left of timeout after waiting in queue,
+     * it is the whole timeout if call was not queued.
+     * @param <T> Type of result
+     * @param timeout Milliseconds that call could wait in queue and for reply, usually send timeout of call
+     * @param call Sends invocation with given timeout and returns future of its result
+     * @return Future of call result
+     */
+    public <T> Future<T> call(long timeout, LongFunction<Future<T>> call) {
+        Promise<T> promise = Promise.promise();
+        synchronized (this) {
+            if (inFlight >= maxInFlight) {
+                if (queue.size() >= queueSize) {
+                    return Future.failedFuture(new VxRifaOverloadException(name + " has " + inFlight + " calls in flight and " + queue.size() + " queued"));
+                }
+                QueuedCall<T> queuedCall = new QueuedCall<>(call, promise, timeout);
+                queue.add(queuedCall);
+                timeoutWheel.schedule(queuedCall, timeout);
+                return promise.future();
+            }
+            inFlight++;
+        }
+        execute(call, timeout, promise);
+        return promise.future();
+    }
+    
+    /**
+     * Called by generated senders to send call that waited in queue with the rest of its timeout.
+     * @param deliveryOptions Options of call
+     * @param remainingTimeout Milliseconds left of send timeout
+     * @return Same options if whole timeout is left or their copy with reduced send timeout
+     */
+    public static DeliveryOptions withRemainingTimeout(DeliveryOptions deliveryOptions, long remainingTimeout) {
+        if (remainingTimeout >= deliveryOptions.getSendTimeout()) {
+            return deliveryOptions;
+        }
+        return VxRifaUtil.copyDeliveryOptions(deliveryOptions).setSendTimeout(remainingTimeout);
+    }
+
+    @Override
+    public synchronized boolean writeQueueFull() {
+        return inFlight >= maxInFlight;
+    }
+
+    @Override
+    public synchronized VxRifaFlowControl drainHandler(Handler<Void> handler) {
+        this.drainHandler = handler;
+        this.drainContext = Vertx.currentContext();
+        return this;
+    }
+
+    @Override
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+    
+    /**
+     * @return Count of calls waiting for free slot
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+    
+    private <T> void execute(LongFunction<Future<T>> call, long timeout, Promise<T> promise) {
+        Future<T> result;
+        try {
+            result = call.apply(timeout);
+        } catch (Throwable ex) {
+            result = Future.failedFuture(ex);
+        }
+        result.onComplete(completion -> {
+            release();
+            promise.handle(completion);
+        });
+    }
+    
+    private void release() {
+        QueuedCall<?> next;
+        Handler<Void> drained = null;
+        Context drainedContext = null;
+        synchronized (this) {
+            next = queue.poll();
+            if (next == null) {
+                // Slot of completed call goes to the next queued call if there is one
+                boolean wasFull = inFlight >= maxInFlight;
+                inFlight--;
+                if (wasFull) {
+                    drained = drainHandler;
+                    drainedContext = drainContext;
+                }
+            }
+        }
+        if (next != null) {
+            next.start();
+        } else if (drained != null) {
+            runOn(drainedContext, drained);
+        }
+    }
+    
+    private static void runOn(Context context, Handler<Void> action) {
+        if (context == null || context == Vertx.currentContext()) {
+            action.handle(null);
+        } else {
+            context.runOnContext(action);
+        }
+    }
+    
+    /**
+     * Call waiting for free slot. Its timeout context is context of caller.
+     */
+    private class QueuedCall<T> extends VxRifaTimeoutWheel.Timeout {
+        
+        private final LongFunction<Future<T>> call;
+        private final Promise<T> promise;
+        private final long timeout;
+        private final long queuedAt = System.nanoTime();
+
+        private QueuedCall(LongFunction<Future<T>> call, Promise<T> promise, long timeout) {
+            this.call = call;
+            this.promise = promise;
+            this.timeout = timeout;
+        }
+        
+        private void start() {
+            timeoutWheel.cancel(this);
+            long remainingTimeout = Math.max(1, timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedAt));
+            runOn(context, v -> execute(call, remainingTimeout, promise));
+        }
+
+        @Override
+        protected void expired() {
+            boolean removed;
+            synchronized (VxRifaInFlightLimit.this) {
+                removed = queue.remove(this);
+            }
+            if (removed) {
+                promise.fail(new VxRifaOverloadException(name + " has no free slot for " + timeout + "ms"));
+            }
+        }
+        
+    }
+    
+}
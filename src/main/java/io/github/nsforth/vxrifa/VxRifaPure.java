@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks method returning {@link io.vertx.core.Future} as pure, which result depends only on its parameters.
+ * Receiver memoizes successful results so calls with equal parameters from any sender on any node are completed
+ * without calling implementation again. Cache keeps no more than {@link #maxEntries()} results evicting least recently used ones.<p>
+ * Hit, miss and eviction counts of every memoized method are available by {@link VxRifaReceiver#getMemoizedResults()}.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface VxRifaPure {
+    
+    /**
+     * @return Maximum count of memoized results, values less than one mean one
+     */
+    int maxEntries() default 1000;
+    
+    /**
+     * @return Time to live of memoized result in milliseconds, zero means that results never expire
+     */
+    long ttl() default 0;
+    
+}
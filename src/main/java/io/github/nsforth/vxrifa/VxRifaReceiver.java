@@ -19,6 +19,8 @@
 package io.github.nsforth.vxrifa;
 
 import io.vertx.core.Future;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * Implementor of that class can register some interface annotated with {@link VxRifa} or {@link VxRifaPublish}.
@@ -33,4 +35,12 @@ public interface VxRifaReceiver<R> {
     
     Future<?> unregisterReceiver();
     
+    /**
+     * Memoized results of methods annotated with {@link VxRifaPure} could be used to look at hit rates and evictions or to invalidate them.
+     * @return Caches keyed by method signature like <tt>price(java.lang.String,int)</tt>
+     */
+    default Map<String, VxRifaResultCache> getMemoizedResults() {
+        return Collections.emptyMap();
+    }
+    
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Closeable;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Pool of receiver instances registered on the same address, every instance is pinned to its own event loop.
+ * Instances share event loops only when there are more of them than event loops.
+ * EventBus delivers calls to consumers of address in round-robin order so load of interface is spread over all cores.
+ * Every instance is created by factory on its event loop and calls of it are executed there in order as usual.
+ * Set of instances is changed only on context that created pool, so it needs no locks.
+ * Pool is unregistered at once by {@link #unregisterReceiver} or when verticle that registered it is undeployed.
+ * @author Nikita Staroverov
+ * @param <I> Interface annotated with {@link VxRifa}
+ */
+final class VxRifaReceiverPool<I> implements VxRifaReceiver<I>, Closeable {
+    
+    private final Vertx vertx;
+    private final Class<I> interfaceType;
+    private final String eventBusAddress;
+    private final Context context;
+    // One context per event loop, instance takes the least used one so instances never share loop while there are free ones
+    private final ContextInternal[] eventLoopContexts;
+    private final int[] eventLoopInstances;
+    private final List<Instance> instances = new ArrayList<>();
+    private volatile int instancesCount;
+    private Supplier<? extends I> factory;
+    private VxRifaCallObserver callObserver;
+
+    VxRifaReceiverPool(Vertx vertx, Class<I> interfaceType, String eventBusAddress) {
+        this.vertx = vertx;
+        this.interfaceType = interfaceType;
+        this.eventBusAddress = eventBusAddress;
+        this.context = vertx.getOrCreateContext();
+        this.eventLoopContexts = VxRifaUtil.createDetachedContexts(vertx);
+        this.eventLoopInstances = new int[eventLoopContexts.length];
+    }
+    
+    /**
+     * @param vertx Vertx instance
+     * @return Number of event loops of Vertx instance
+     */
+    static int getEventLoopsCount(Vertx vertx) {
+        int count = 0;
+        for (EventExecutor eventLoop : ((VertxInternal) vertx).getEventLoopGroup()) {
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * @return Context that created pool, pool is changed only on it
+     */
+    Context getContext() {
+        return context;
+    }
+    
+    /**
+     * Registers instances created by factory.
+     * @param factory Creates instance of interface, it is called on event loop of instance
+     * @param count Number of instances
+     * @return Future that completes on context of pool when all instances are registered, already registered instances are unregistered on failure
+     */
+    Future<?> register(Supplier<? extends I> factory, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Pool should have at least one instance");
+        }
+        Promise<Void> promise = Promise.promise();
+        runOnContext(v -> {
+            this.factory = factory;
+            context.addCloseHook(this);
+            List<Future> registrations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                registrations.add(addInstance());
+            }
+            CompositeFuture.join(registrations).onComplete(result -> {
+                if (result.succeeded()) {
+                    context.runOnContext(completed -> promise.complete());
+                } else {
+                    unregisterReceiver().onComplete(unregistered -> context.runOnContext(failed -> promise.fail(result.cause())));
+                }
+            });
+        });
+        return promise.future();
+    }
+    
+    /**
+     * Creates one more instance on event loop with the fewest instances and registers it. Should be called on context of pool.
+     * @return Future that completes on context of instance when it is registered
+     */
+    Future<Void> addInstance() {
+        int eventLoop = 0;
+        for (int i = 1; i < eventLoopInstances.length; i++) {
+            if (eventLoopInstances[i] < eventLoopInstances[eventLoop]) {
+                eventLoop = i;
+            }
+        }
+        Instance instance = new Instance(eventLoop);
+        instances.add(instance);
+        eventLoopInstances[eventLoop]++;
+        instancesCount = instances.size();
+        return instance.register(factory).onFailure(ex -> runOnContext(v -> removeFailed(instance)));
+    }
+    
+    private void removeFailed(Instance instance) {
+        if (instances.remove(instance)) {
+            eventLoopInstances[instance.eventLoop]--;
+            instancesCount = instances.size();
+        }
+    }
+    
+    /**
+     * Unregisters most recently added instance, the last one is never removed. Should be called on context of pool.
+     * @return Future that completes on context of instance when it is unregistered
+     */
+    Future<Void> removeInstance() {
+        if (instances.size() <= 1) {
+            return Future.succeededFuture();
+        }
+        Instance instance = instances.remove(instances.size() - 1);
+        eventLoopInstances[instance.eventLoop]--;
+        instancesCount = instances.size();
+        return instance.unregister();
+    }
+    
+    /**
+     * @return Number of registered instances
+     */
+    int getInstancesCount() {
+        return instancesCount;
+    }
+
+    /**
+     * Should be called on context of pool.
+     * @return Contexts of registered instances
+     */
+    List<Context> getContexts() {
+        List<Context> contexts = new ArrayList<>(instances.size());
+        instances.forEach(instance -> contexts.add(instance.instanceContext));
+        return contexts;
+    }
+
+    /**
+     * Registers the same receiver on every event loop of pool instead of creating instance per event loop, so it should be thread safe.
+     * @param receiver Interface implementation that should be registered
+     * @return Future that completes when receiver is registered on all event loops
+     */
+    @Override
+    public Future<?> registerReceiver(I receiver) {
+        return register(() -> receiver, getEventLoopsCount(vertx));
+    }
+
+    @Override
+    public Future<?> unregisterReceiver() {
+        Promise<Void> promise = Promise.promise();
+        runOnContext(v -> {
+            context.removeCloseHook(this);
+            List<Future> unregistrations = new ArrayList<>(instances.size());
+            instances.forEach(instance -> unregistrations.add(instance.unregister()));
+            instances.clear();
+            Arrays.fill(eventLoopInstances, 0);
+            instancesCount = 0;
+            CompositeFuture.join(unregistrations).<Void>mapEmpty().onComplete(promise);
+        });
+        return promise.future();
+    }
+
+    /**
+     * Observer is set to instances registered after this call.
+     * @param callObserver Observer of calls of all instances
+     */
+    void setCallObserver(VxRifaCallObserver callObserver) {
+        this.callObserver = callObserver;
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> completionHandler) {
+        // Instances live on their own contexts so Vert.X does not unregister them with verticle
+        unregisterReceiver().onComplete(result -> completionHandler.handle(Future.succeededFuture()));
+    }
+    
+    private void runOnContext(Handler<Void> action) {
+        if (Vertx.currentContext() == context) {
+            action.handle(null);
+        } else {
+            context.runOnContext(action);
+        }
+    }
+    
+    private class Instance {
+        
+        private final int eventLoop;
+        private final ContextInternal instanceContext;
+        private final VxRifaReceiver<I> registrator;
+        private final Promise<Void> registered = Promise.promise();
+
+        private Instance(int eventLoop) {
+            this.eventLoop = eventLoop;
+            this.instanceContext = eventLoopContexts[eventLoop];
+            this.registrator = callObserver != null
+                    ? VxRifaUtil.getObservedReceiverRegistrator(vertx, interfaceType, eventBusAddress, callObserver)
+                    : VxRifaUtil.getReceiverRegistrator(vertx, interfaceType, eventBusAddress);
+        }
+        
+        private Future<Void> register(Supplier<? extends I> factory) {
+            instanceContext.runOnContext(v -> {
+                try {
+                    registrator.registerReceiver(factory.get()).onComplete(result -> {
+                        if (result.succeeded()) {
+                            registered.complete();
+                        } else {
+                            registered.fail(result.cause());
+                        }
+                    });
+                } catch (Throwable ex) {
+                    registered.fail(ex);
+                }
+            });
+            return registered.future();
+        }
+        
+        private Future<Void> unregister() {
+            Promise<Void> promise = Promise.promise();
+            // Unregistration waits for registration to not leave consumer behind
+            registered.future().onComplete(registration -> instanceContext.runOnContext(v -> {
+                if (registration.succeeded()) {
+                    registrator.unregisterReceiver().onComplete(result -> promise.complete());
+                } else {
+                    promise.complete();
+                }
+            }));
+            return promise.future();
+        }
+        
+    }
+    
+}
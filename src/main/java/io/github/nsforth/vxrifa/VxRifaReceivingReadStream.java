@@ -36,13 +36,19 @@ public class VxRifaReceivingReadStream<T> implements ReadStream<T> {
     private final MessageConsumer<RIFAMessage> dataConsumer;
     private final ReadStream<RIFAMessage> dataStream;
     private String controlAddress;
+    private boolean cancelled;
+    private boolean finished;
     private long receivedCounter;
     private long ackCounter;
     private Handler<T> handler;
     private Handler<Throwable> exceptionHandler;
     private Handler<Void> endHandler;
 
-    public VxRifaReceivingReadStream(Vertx vertx, String dataAddress, String remoteAddress, RIFAMessage params) {
+    public VxRifaReceivingReadStream(Vertx vertx, String dataAddress, String remoteAddress, RIFAInvocation params) {
+        this(vertx, dataAddress, remoteAddress, params, new DeliveryOptions());
+    }
+
+    public VxRifaReceivingReadStream(Vertx vertx, String dataAddress, String remoteAddress, RIFAInvocation params, DeliveryOptions deliveryOptions) {
         this.vertx = vertx;
         dataConsumer = vertx.eventBus().consumer(dataAddress);
         dataStream = dataConsumer.bodyStream();
@@ -51,13 +57,20 @@ public class VxRifaReceivingReadStream<T> implements ReadStream<T> {
             if (result.failed()) {
                 closeExceptionally(result.cause());
             } else {
-                vertx.eventBus().request(remoteAddress, params, new DeliveryOptions().addHeader("DataAddress", dataAddress), reply -> {
+                vertx.eventBus().request(remoteAddress, params, VxRifaUtil.copyDeliveryOptions(deliveryOptions).addHeader("DataAddress", dataAddress), reply -> {
                     if (reply.succeeded()) {
                         RIFAReply rifaReply = (RIFAReply) reply.result().body();
                         if (rifaReply.isExceptional()) {
                             closeExceptionally(result.cause());
                         } else {
                             controlAddress = (String) rifaReply.getResult();
+                            if (cancelled) {
+                                vertx.eventBus().send(controlAddress, RIFAMessage.of("Cancel"));
+                            } else if (finished || receivedCounter - ackCounter > ACK_WINDOW / 2) {
+                                // Acks postponed while control address was unknown
+                                ackCounter = receivedCounter;
+                                vertx.eventBus().send(controlAddress, RIFAMessage.of("Ack", receivedCounter));
+                            }
                         }
                     } else {
                         closeExceptionally(result.cause());
@@ -104,7 +117,8 @@ public class VxRifaReceivingReadStream<T> implements ReadStream<T> {
         switch (messageType) {
             case "Data":
                 long acks = receivedCounter - ackCounter;
-                if (acks > ACK_WINDOW / 2) {
+                // Data could outrun reply with control address, acks are postponed then
+                if (acks > ACK_WINDOW / 2 && controlAddress != null) {
                     ackCounter = ackCounter + ACK_WINDOW / 2;
                     vertx.eventBus().send(controlAddress, RIFAMessage.of("Ack", ackCounter));
                 }
@@ -113,11 +127,11 @@ public class VxRifaReceivingReadStream<T> implements ReadStream<T> {
                 }
                 break;
             case "Exception":
-                vertx.eventBus().send(controlAddress, RIFAMessage.of("Ack", receivedCounter));
+                sendFinalAck();
                 closeExceptionally((Throwable) rifaMessage.getParameter(0));
                 break;
             case "End":
-                vertx.eventBus().send(controlAddress, RIFAMessage.of("Ack", receivedCounter));
+                sendFinalAck();
                 dataConsumer.unregister();
                 if (this.endHandler != null) {
                     this.endHandler.handle(null);
@@ -126,6 +140,33 @@ public class VxRifaReceivingReadStream<T> implements ReadStream<T> {
         }
     }
 
+    /**
+     * Stops receiving and tells remote side to stop reading its source. Handlers are not called after that.
+     * @return True if stream was not cancelled before
+     */
+    boolean cancel() {
+        if (cancelled) {
+            return false;
+        }
+        cancelled = true;
+        handler = null;
+        endHandler = null;
+        exceptionHandler = null;
+        dataConsumer.unregister();
+        // Control address could still be unknown, then remote side is cancelled when it comes
+        if (controlAddress != null) {
+            vertx.eventBus().send(controlAddress, RIFAMessage.of("Cancel"));
+        }
+        return true;
+    }
+
+    private void sendFinalAck() {
+        finished = true;
+        if (controlAddress != null) {
+            vertx.eventBus().send(controlAddress, RIFAMessage.of("Ack", receivedCounter));
+        }
+    }
+
     private void closeExceptionally(Throwable ex) {
         dataConsumer.unregister();
         if (this.exceptionHandler != null) {
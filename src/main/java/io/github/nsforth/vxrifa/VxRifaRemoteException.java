@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+/**
+ * Exception that was thrown by receiver on other node of clustered Vert.X.
+ * Only class name, message and limited count of stack trace elements of original exception are transferred by wire.
+ * @author Nikita Staroverov
+ */
+public class VxRifaRemoteException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+    
+    private final String remoteClassName;
+
+    public VxRifaRemoteException(String remoteClassName, String message, StackTraceElement[] stackTrace) {
+        super(message);
+        this.remoteClassName = remoteClassName;
+        setStackTrace(stackTrace);
+    }
+
+    /**
+     * @return Class name of original exception
+     */
+    public String getRemoteClassName() {
+        return remoteClassName;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // Local stack trace says nothing about remote failure
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        String message = getLocalizedMessage();
+        return (message != null) ? (remoteClassName + ": " + message) : remoteClassName;
+    }
+    
+}
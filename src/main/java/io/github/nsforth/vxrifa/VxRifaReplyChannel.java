@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Closeable;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+
+/**
+ * Long-lived reply address of sender. Requests are sent with {@link #REPLY_ADDRESS_HEADER} and {@link #CORRELATION_ID_HEADER}
+ * headers and receiver sends {@link RIFAReply} back to that address so no temporary reply consumer is registered per request.
+ * Request timeouts are tracked by shared {@link VxRifaTimeoutWheel} instead of timer per request.
+ * Request to address without handlers fails at once with {@link ReplyFailure#NO_HANDLERS} like ordinary eventBus request.
+ * Channel is closed with Vert.X context where it was created, for example on undeploy of verticle that created sender.
+ * Used by senders of interfaces annotated with {@link VxRifa#replyChannel()}.
+ * @author Nikita Staroverov
+ */
+public class VxRifaReplyChannel {
+    
+    public static final String REPLY_ADDRESS_HEADER = "ReplyAddress";
+    public static final String CORRELATION_ID_HEADER = "CorrelationId";
+    
+    private final Vertx vertx;
+    private final VxRifaTimeoutWheel timeoutWheel;
+    private final String replyAddress;
+    private final MessageConsumer<RIFAReply> replyConsumer;
+    private final Context context;
+    private final Closeable closeHook = this::close;
+    private final LongObjectMap<PendingReply> pendingReplies = new LongObjectHashMap<>();
+    private long lastCorrelationId;
+
+    public VxRifaReplyChannel(Vertx vertx, String eventBusAddress) {
+        this.vertx = vertx;
+        this.timeoutWheel = VxRifaTimeoutWheel.get(vertx);
+        this.replyAddress = eventBusAddress + ".reply." + Long.toHexString(java.util.concurrent.ThreadLocalRandom.current().nextLong());
+        this.replyConsumer = vertx.eventBus().consumer(replyAddress, this::receiveReply);
+        // Nobody would get replies after caller's context is closed
+        this.context = Vertx.currentContext();
+        if (context != null) {
+            context.addCloseHook(closeHook);
+        }
+    }
+
+    public String getReplyAddress() {
+        return replyAddress;
+    }
+    
+    /**
+     * Sends message and completes promise with result of {@link RIFAReply}.
+     * Promise fails with {@link ReplyException} if there is no reply during {@link DeliveryOptions#getSendTimeout()}
+     * or there are no handlers registered at address.
+     * @param <T> Type of result
+     * @param address Receiver address
+     * @param message Message
+     * @param deliveryOptions Options of sending, correlation headers are added to their copy
+     * @param promise Promise that should be completed with reply
+     */
+    public <T> void request(String address, Object message, DeliveryOptions deliveryOptions, Promise<T> promise) {
+        PendingReply pendingReply;
+        synchronized (this) {
+            pendingReply = new PendingReply(++lastCorrelationId, address, deliveryOptions.getSendTimeout(), promise);
+            pendingReplies.put(pendingReply.correlationId, pendingReply);
+        }
+        timeoutWheel.schedule(pendingReply, pendingReply.timeout);
+        DeliveryOptions requestOptions = VxRifaUtil.copyDeliveryOptions(deliveryOptions)
+                .addHeader(REPLY_ADDRESS_HEADER, replyAddress)
+                .addHeader(CORRELATION_ID_HEADER, Long.toString(pendingReply.correlationId));
+        // Message is sent without reply handler, so eventBus reports missing handlers without temporary reply consumer
+        VxRifaUtil.send(vertx.eventBus(), address, message, requestOptions, cause -> fail(pendingReply, cause));
+    }
+    
+    /**
+     * Fails all pending requests and unregisters reply consumer. It is called by Vert.X when context of creator is closed.
+     */
+    public void close() {
+        if (context != null) {
+            context.removeCloseHook(closeHook);
+        }
+        close(null);
+    }
+    
+    private void close(Handler<AsyncResult<Void>> completionHandler) {
+        LongObjectMap<PendingReply> closedReplies;
+        synchronized (this) {
+            closedReplies = new LongObjectHashMap<>(pendingReplies.size());
+            closedReplies.putAll(pendingReplies);
+            pendingReplies.clear();
+        }
+        for (PendingReply pendingReply : closedReplies.values()) {
+            timeoutWheel.cancel(pendingReply);
+            pendingReply.fail(new ReplyException(ReplyFailure.NO_HANDLERS, "Reply channel " + replyAddress + " is closed"));
+        }
+        replyConsumer.unregister();
+        if (completionHandler != null) {
+            completionHandler.handle(Future.succeededFuture());
+        }
+    }
+    
+    /**
+     * Sends reply to the request. If request came with {@link #REPLY_ADDRESS_HEADER} reply is sent to that address
+     * with same {@link #CORRELATION_ID_HEADER}, otherwise it is ordinary eventBus reply.
+     * @param eventBus EventBus
+     * @param request Message for which reply is sent
+     * @param reply Reply
+     */
+    public static void reply(EventBus eventBus, Message<?> request, RIFAReply reply) {
+        String replyAddress = request.headers().get(REPLY_ADDRESS_HEADER);
+        if (replyAddress == null) {
+            request.reply(reply);
+        } else {
+            eventBus.send(replyAddress, reply, new DeliveryOptions().addHeader(CORRELATION_ID_HEADER, request.headers().get(CORRELATION_ID_HEADER)));
+        }
+    }
+    
+    private void receiveReply(Message<RIFAReply> message) {
+        String correlationHeader = message.headers().get(CORRELATION_ID_HEADER);
+        if (correlationHeader == null) {
+            return;
+        }
+        PendingReply pendingReply;
+        synchronized (this) {
+            pendingReply = pendingReplies.remove(Long.parseLong(correlationHeader));
+        }
+        if (pendingReply != null) {
+            timeoutWheel.cancel(pendingReply);
+            pendingReply.complete(message.body());
+        }
+    }
+    
+    private void fail(PendingReply pendingReply, Throwable cause) {
+        synchronized (this) {
+            if (pendingReplies.remove(pendingReply.correlationId) == null) {
+                return;
+            }
+        }
+        timeoutWheel.cancel(pendingReply);
+        pendingReply.fail(cause);
+    }
+    
+    private void expire(PendingReply pendingReply) {
+        synchronized (this) {
+            if (pendingReplies.remove(pendingReply.correlationId) == null) {
+                return;
+            }
+        }
+        pendingReply.promise.tryFail(new ReplyException(ReplyFailure.TIMEOUT, "Timed out after waiting " + pendingReply.timeout + "(ms) for a reply. address: " + pendingReply.address));
+    }
+    
+    private class PendingReply extends VxRifaTimeoutWheel.Timeout {
+        
+        private final long correlationId;
+        private final String address;
+        private final long timeout;
+        private final Promise<Object> promise;
+
+        @SuppressWarnings("unchecked")
+        private PendingReply(long correlationId, String address, long timeout, Promise<?> promise) {
+            this.correlationId = correlationId;
+            this.address = address;
+            this.timeout = timeout;
+            this.promise = (Promise<Object>) promise;
+        }
+
+        @Override
+        protected void expired() {
+            expire(this);
+        }
+        
+        private void complete(RIFAReply reply) {
+            if (context == null || context == Vertx.currentContext()) {
+                completeNow(reply);
+            } else {
+                context.runOnContext(v -> completeNow(reply));
+            }
+        }
+        
+        private void completeNow(RIFAReply reply) {
+            if (reply.isExceptional()) {
+                promise.tryFail(reply.getException());
+            } else {
+                promise.tryComplete(reply.getResult());
+            }
+        }
+        
+        private void fail(Throwable cause) {
+            if (context == null || context == Vertx.currentContext()) {
+                promise.tryFail(cause);
+            } else {
+                context.runOnContext(v -> promise.tryFail(cause));
+            }
+        }
+        
+    }
+    
+}
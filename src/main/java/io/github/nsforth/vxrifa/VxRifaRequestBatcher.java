@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.impl.ContextInternal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Packs calls issued in the same Vert.X context during batching window into one {@link RIFABatch} message.
+ * Every context has its own pending batch so callers are completed on their contexts without any synchronization.
+ * Calls made outside of Vert.X context are sent immediately as ordinary messages. Batch of single call is sent as is.
+ * Batch is sent when window expires, so calls that are not batched could overtake batched calls issued before them.
+ * Used by senders of interfaces annotated with {@link VxRifa#batching()} and for methods annotated with {@link VxRifaBatch}.
+ * @author Nikita Staroverov
+ */
+public class VxRifaRequestBatcher {
+    
+    /**
+     * By default batch is sent without waiting for batching window when it reaches that size.
+     */
+    public static final int MAX_BATCH_SIZE = 1024;
+    
+    private final Vertx vertx;
+    private final String eventBusAddress;
+    private final DeliveryOptions deliveryOptions;
+    private final long batchingWindow;
+    private final int maxBatchSize;
+    private final VxRifaReplyChannel replyChannel;
+
+    /**
+     * @param vertx Vertx instance
+     * @param eventBusAddress Receiver address
+     * @param deliveryOptions Options of sending batches
+     * @param batchingWindow Milliseconds to wait for other calls, zero means current event loop tick
+     * @param replyChannel Reply channel for batch replies or null if ordinary eventBus requests should be used
+     */
+    public VxRifaRequestBatcher(Vertx vertx, String eventBusAddress, DeliveryOptions deliveryOptions, long batchingWindow, VxRifaReplyChannel replyChannel) {
+        this(vertx, eventBusAddress, deliveryOptions, batchingWindow, MAX_BATCH_SIZE, replyChannel);
+    }
+    
+    /**
+     * @param vertx Vertx instance
+     * @param eventBusAddress Receiver address
+     * @param deliveryOptions Options of sending batches
+     * @param batchingWindow Milliseconds to wait for other calls, zero means current event loop tick
+     * @param maxBatchSize Batch is sent immediately when it reaches that size
+     * @param replyChannel Reply channel for batch replies or null if ordinary eventBus requests should be used
+     */
+    public VxRifaRequestBatcher(Vertx vertx, String eventBusAddress, DeliveryOptions deliveryOptions, long batchingWindow, int maxBatchSize, VxRifaReplyChannel replyChannel) {
+        this.vertx = vertx;
+        this.eventBusAddress = eventBusAddress;
+        this.deliveryOptions = deliveryOptions;
+        this.batchingWindow = batchingWindow;
+        this.maxBatchSize = maxBatchSize;
+        this.replyChannel = replyChannel;
+    }
+    
+    /**
+     * Adds invocation of void method to the batch.
+     * @param invocation Invocation
+     */
+    public void send(RIFAInvocation invocation) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            vertx.eventBus().send(eventBusAddress, invocation, deliveryOptions);
+        } else {
+            batch.add(invocation, null);
+        }
+    }
+    
+    /**
+     * Adds invocation of method that returns Future to the batch.
+     * @param <T> Type of result
+     * @param invocation Invocation
+     * @param promise Promise that is completed with result of invocation
+     */
+    public <T> void request(RIFAInvocation invocation, Promise<T> promise) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            Promise<Object> replyPromise = Promise.promise();
+            replyPromise.future().onComplete(result -> complete(promise, result));
+            sendRequest(invocation, replyPromise);
+        } else {
+            batch.add(invocation, promise);
+        }
+    }
+    
+    private Batch currentBatch() {
+        Context context = Vertx.currentContext();
+        if (!(context instanceof ContextInternal)) {
+            return null;
+        }
+        ConcurrentMap<Object, Object> contextData = ((ContextInternal) context).contextData();
+        Batch batch = (Batch) contextData.get(this);
+        if (batch == null) {
+            batch = new Batch(contextData);
+            contextData.put(this, batch);
+            if (batchingWindow > 0) {
+                batch.timerId = vertx.setTimer(batchingWindow, batch::flush);
+            } else {
+                context.runOnContext(batch::flush);
+            }
+        }
+        return batch;
+    }
+    
+    private void sendRequest(RIFAInvocation invocation, Promise<Object> replyPromise) {
+        if (replyChannel != null) {
+            replyChannel.request(eventBusAddress, invocation, deliveryOptions, replyPromise);
+        } else {
+            vertx.eventBus().<RIFAReply>request(eventBusAddress, invocation, deliveryOptions, result -> {
+                if (result.failed()) {
+                    replyPromise.fail(result.cause());
+                } else {
+                    RIFAReply reply = result.result().body();
+                    if (reply.isExceptional()) {
+                        replyPromise.fail(reply.getException());
+                    } else {
+                        replyPromise.complete(reply.getResult());
+                    }
+                }
+            });
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> void complete(Promise<T> promise, AsyncResult<Object> result) {
+        if (result.succeeded()) {
+            promise.tryComplete((T) result.result());
+        } else {
+            promise.tryFail(result.cause());
+        }
+    }
+    
+    private static void complete(Promise<Object> promise, RIFAReply reply) {
+        if (reply == null) {
+            promise.tryFail(new IllegalStateException("There is no reply for batched invocation"));
+        } else if (reply.isExceptional()) {
+            promise.tryFail(reply.getException());
+        } else {
+            promise.tryComplete(reply.getResult());
+        }
+    }
+    
+    private class Batch {
+        
+        private final ConcurrentMap<Object, Object> contextData;
+        private final List<RIFAInvocation> invocations = new ArrayList<>();
+        private final List<Promise<Object>> promises = new ArrayList<>();
+        private long timerId = -1;
+        private boolean flushed;
+
+        private Batch(ConcurrentMap<Object, Object> contextData) {
+            this.contextData = contextData;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void add(RIFAInvocation invocation, Promise<?> promise) {
+            invocations.add(invocation);
+            promises.add((Promise<Object>) promise);
+            if (invocations.size() >= maxBatchSize) {
+                flush(null);
+            }
+        }
+        
+        private void flush(Object ignored) {
+            if (flushed) {
+                return;
+            }
+            flushed = true;
+            if (timerId != -1) {
+                // Batch could be flushed by size before window expires
+                vertx.cancelTimer(timerId);
+            }
+            contextData.remove(VxRifaRequestBatcher.this, this);
+            int size = invocations.size();
+            if (size == 1) {
+                sendSingle(invocations.get(0), promises.get(0));
+                return;
+            }
+            boolean[] replyExpected = new boolean[size];
+            boolean anyReplyExpected = false;
+            for (int i = 0; i < size; i++) {
+                replyExpected[i] = promises.get(i) != null;
+                anyReplyExpected |= replyExpected[i];
+            }
+            RIFABatch batch = new RIFABatch(invocations, replyExpected);
+            if (!anyReplyExpected) {
+                vertx.eventBus().send(eventBusAddress, batch, deliveryOptions);
+                return;
+            }
+            Promise<Object> replyPromise = Promise.promise();
+            replyPromise.future().onComplete(this::complete);
+            sendRequest(batch, replyPromise);
+        }
+        
+        private void sendSingle(RIFAInvocation invocation, Promise<Object> promise) {
+            if (promise == null) {
+                vertx.eventBus().send(eventBusAddress, invocation, deliveryOptions);
+            } else {
+                Promise<Object> replyPromise = Promise.promise();
+                replyPromise.future().onComplete(result -> VxRifaRequestBatcher.complete(promise, result));
+                sendRequest(invocation, replyPromise);
+            }
+        }
+        
+        private void complete(AsyncResult<Object> result) {
+            if (result.failed()) {
+                for (Promise<Object> promise : promises) {
+                    if (promise != null) {
+                        promise.tryFail(result.cause());
+                    }
+                }
+                return;
+            }
+            RIFAReply[] replies = (RIFAReply[]) result.result();
+            for (int i = 0; i < promises.size(); i++) {
+                Promise<Object> promise = promises.get(i);
+                if (promise != null) {
+                    VxRifaRequestBatcher.complete(promise, i < replies.length ? replies[i] : null);
+                }
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of successful results of one method with time to live.
+ * Results are keyed by generated messages that are equal when parameters are equal.
+ * Senders of the same eventBus address share one cache per method by {@link #get}, so all caches of some address could be invalidated at once
+ * and count of caches does not grow with count of senders.
+ * Result of call that was in flight during invalidation is not cached. Hits, misses and evictions are counted for tuning.
+ * Used by senders for methods annotated with {@link VxRifaCacheable} and by receivers for methods annotated with {@link VxRifaPure}.
+ * @author Nikita Staroverov
+ */
+public class VxRifaResultCache {
+    
+    private static final String RESULT_CACHES_MAP = VxRifaResultCache.class.getName();
+    
+    private final Vertx vertx;
+    private final long ttlNanos;
+    private final LinkedHashMap<RIFAInvocation, CachedResult> results;
+    private long generation;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Returns cache shared by senders of address for method, it is created on first request.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address of senders
+     * @param methodId Id of method which results are cached
+     * @param ttl Time to live of result in milliseconds, used only when cache is created
+     * @param maxEntries Maximum count of cached results, used only when cache is created
+     * @return Cache of method
+     */
+    public static VxRifaResultCache get(Vertx vertx, String eventBusAddress, int methodId, long ttl, int maxEntries) {
+        return Registry.get(vertx).get(eventBusAddress, methodId, () -> new VxRifaResultCache(vertx, ttl, maxEntries));
+    }
+    
+    /**
+     * Creates standalone cache.
+     * @param ttl Time to live of result in milliseconds, zero or negative means that results never expire
+     * @param maxEntries Maximum count of cached results
+     */
+    public VxRifaResultCache(long ttl, int maxEntries) {
+        this(null, ttl, maxEntries);
+    }
+    
+    private VxRifaResultCache(Vertx vertx, long ttl, int maxEntries) {
+        this.vertx = vertx;
+        this.ttlNanos = ttl > 0 ? ttl * 1_000_000 : Long.MAX_VALUE;
+        this.results = new LinkedHashMap<RIFAInvocation, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RIFAInvocation, CachedResult> eldest) {
+                if (size() > maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Returns cached result of equal invocation if it is not expired or makes new call and caches its successful result.
+     * @param <T> Type of result
+     * @param invocation Invocation that identifies call
+     * @param call Sends invocation and returns future of its result
+     * @return Future of call result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> call(RIFAInvocation invocation, Supplier<Future<T>> call) {
+        long callGeneration;
+        synchronized (this) {
+            CachedResult cachedResult = results.get(invocation);
+            if (cachedResult != null) {
+                if (System.nanoTime() - cachedResult.cachedAt < ttlNanos) {
+                    hitCount++;
+                    return (Future<T>) cachedResult.future;
+                }
+                results.remove(invocation);
+            }
+            missCount++;
+            callGeneration = generation;
+        }
+        Future<T> result = call.get();
+        result.onSuccess(value -> cache(invocation, value, callGeneration));
+        return result;
+    }
+    
+    /**
+     * Forgets cached result of invocation.
+     * @param invocation Invocation
+     */
+    public synchronized void invalidate(RIFAInvocation invocation) {
+        generation++;
+        results.remove(invocation);
+    }
+    
+    /**
+     * Forgets all cached results.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        results.clear();
+    }
+    
+    /**
+     * @return Count of cached results including expired ones that were not requested since expiration
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+    
+    /**
+     * @return Count of calls that were answered from cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    
+    /**
+     * @return Count of calls that were not found in cache or found expired
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+    
+    /**
+     * @return Count of results evicted because cache was full
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    /**
+     * Subscribes to interface annotated with {@link VxRifaPublish} so that any published call of it invalidates all cached results.
+     * Cache is subscribed to interface only once however many senders ask for it, and all caches of Vertx instance
+     * subscribed to the same interface share one consumer. Subscription does not depend on lifecycle of verticle that created sender.
+     * @param publishInterface Interface of invalidation notifications
+     */
+    public void invalidateOn(Class<?> publishInterface) {
+        if (vertx == null) {
+            throw new IllegalStateException("Standalone cache could not subscribe to invalidations");
+        }
+        Registry.get(vertx).subscribe(publishInterface, this);
+    }
+    
+    /**
+     * Forgets all cached results of senders registered on address.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address of senders
+     */
+    public static void invalidate(Vertx vertx, String eventBusAddress) {
+        for (VxRifaResultCache cache : Registry.get(vertx).caches(eventBusAddress)) {
+            cache.invalidateAll();
+        }
+    }
+    
+    /**
+     * Forgets cached results of invocation in all senders registered on address.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address of senders
+     * @param invocation Generated message of invocation
+     */
+    public static void invalidate(Vertx vertx, String eventBusAddress, RIFAInvocation invocation) {
+        for (VxRifaResultCache cache : Registry.get(vertx).caches(eventBusAddress)) {
+            cache.invalidate(invocation);
+        }
+    }
+    
+    private synchronized void cache(RIFAInvocation invocation, Object value, long callGeneration) {
+        if (callGeneration == generation) {
+            results.put(invocation, new CachedResult(Future.succeededFuture(value), System.nanoTime()));
+        }
+    }
+    
+    private static class CachedResult {
+        
+        private final Future<?> future;
+        private final long cachedAt;
+
+        private CachedResult(Future<?> future, long cachedAt) {
+            this.future = future;
+            this.cachedAt = cachedAt;
+        }
+        
+    }
+    
+    private static class Registry implements Shareable {
+        
+        private final Vertx vertx;
+        private final ConcurrentMap<String, ConcurrentMap<Integer, VxRifaResultCache>> caches = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Class<?>, Set<VxRifaResultCache>> subscribers = new ConcurrentHashMap<>();
+        private ContextInternal subscriptionsContext;
+
+        private Registry(Vertx vertx) {
+            this.vertx = vertx;
+        }
+        
+        private static synchronized Registry get(Vertx vertx) {
+            LocalMap<String, Registry> registries = vertx.sharedData().getLocalMap(RESULT_CACHES_MAP);
+            Registry registry = registries.get(RESULT_CACHES_MAP);
+            if (registry == null) {
+                registry = new Registry(vertx);
+                registries.put(RESULT_CACHES_MAP, registry);
+            }
+            return registry;
+        }
+        
+        private VxRifaResultCache get(String eventBusAddress, int methodId, Supplier<VxRifaResultCache> factory) {
+            return caches.computeIfAbsent(eventBusAddress, address -> new ConcurrentHashMap<>()).computeIfAbsent(methodId, id -> factory.get());
+        }
+        
+        private Collection<VxRifaResultCache> caches(String eventBusAddress) {
+            Map<Integer, VxRifaResultCache> addressCaches = caches.get(eventBusAddress);
+            return addressCaches != null ? addressCaches.values() : Collections.emptyList();
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void subscribe(Class<?> publishInterface, VxRifaResultCache cache) {
+            Set<VxRifaResultCache> caches = subscribers.get(publishInterface);
+            if (caches != null) {
+                caches.add(cache);
+                return;
+            }
+            Set<VxRifaResultCache> newCaches = ConcurrentHashMap.newKeySet();
+            newCaches.add(cache);
+            caches = subscribers.putIfAbsent(publishInterface, newCaches);
+            if (caches != null) {
+                caches.add(cache);
+                return;
+            }
+            // The first cache subscribed to interface registers the only consumer of it
+            Object invalidator = VxRifaUtil.createProxy(publishInterface, "Invalidator of " + publishInterface.getName(), (proxy, method, args) -> {
+                for (VxRifaResultCache subscriber : newCaches) {
+                    subscriber.invalidateAll();
+                }
+                return null;
+            });
+            subscriptionsContext().runOnContext(v -> {
+                VxRifaUtil.registerReceiver(vertx, (Class<Object>) publishInterface, invalidator).onFailure(VxRifaUtil::reportException);
+            });
+        }
+        
+        private synchronized ContextInternal subscriptionsContext() {
+            if (subscriptionsContext == null) {
+                subscriptionsContext = VxRifaUtil.createDetachedContext(vertx);
+            }
+            return subscriptionsContext;
+        }
+        
+    }
+    
+}
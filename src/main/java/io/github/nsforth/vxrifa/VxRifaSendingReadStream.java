@@ -89,6 +89,14 @@ public class VxRifaSendingReadStream<T> {
                     input.resume();
                 }
                 break;
+            case "Cancel":
+                // Reader is gone so source should not be read anymore
+                controlConsumer.unregister();
+                input.pause();
+                input.handler(null);
+                input.endHandler(null);
+                input.exceptionHandler(null);
+                break;
         }
     }
 
@@ -42,14 +42,18 @@ public class VxRifaSendingWriteStream<T> implements WriteStream<T> {
     private Handler<Void> drainHandler;
     private Handler<Throwable> excHandler;
 
-    public VxRifaSendingWriteStream(Vertx vertx, final String controlAddress, String remoteAddress, RIFAMessage params) {
+    public VxRifaSendingWriteStream(Vertx vertx, final String controlAddress, String remoteAddress, RIFAInvocation params) {
+        this(vertx, controlAddress, remoteAddress, params, new DeliveryOptions());
+    }
+
+    public VxRifaSendingWriteStream(Vertx vertx, final String controlAddress, String remoteAddress, RIFAInvocation params, DeliveryOptions deliveryOptions) {
         this.vertx = vertx;
         controlConsumer = vertx.eventBus().consumer(controlAddress, msg -> receiveControlMessage(msg.body()));
         controlConsumer.completionHandler(result -> {
             if (result.failed()) {
                 closeExceptionally(result.cause());
             } else {
-                vertx.eventBus().request(remoteAddress, params, new DeliveryOptions().addHeader("ControlAddress", controlAddress), reply -> {
+                vertx.eventBus().request(remoteAddress, params, VxRifaUtil.copyDeliveryOptions(deliveryOptions).addHeader("ControlAddress", controlAddress), reply -> {
                     if (reply.succeeded()) {
                         RIFAReply rifaReply = (RIFAReply) reply.result().body();
                         if (rifaReply.isExceptional()) {
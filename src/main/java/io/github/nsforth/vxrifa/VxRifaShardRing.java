@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Closeable;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consistent hash ring of receivers registered on shard addresses like <tt>address#shard0</tt>.
+ * Every shard is placed on ring {@link #VIRTUAL_NODES} times so keys are spread evenly and only keys of joined or left shard are moved.
+ * Shards announce themselves on <tt>address#ring</tt> so rings of all nodes of cluster know the same shards and route keys equally.
+ * Announcements are repeated every {@link #HEARTBEAT_INTERVAL} and shards of other nodes that were not announced
+ * for {@link #EXPIRATION_INTERVALS} intervals leave ring, so shards of crashed nodes don't keep their keys forever.
+ * Ring of new node asks other nodes for their shards and is not ready until they answered, see {@link #whenReady()}.
+ * Shard leaves ring when it is unregistered or when verticle that registered it is undeployed.
+ * Used by senders for methods with parameter annotated with {@link VxRifaShardKey}.
+ * @author Nikita Staroverov
+ */
+public final class VxRifaShardRing implements Shareable {
+    
+    public static final int VIRTUAL_NODES = 64;
+    
+    /**
+     * Milliseconds between announcements of shards registered on this node
+     */
+    public static final long HEARTBEAT_INTERVAL = 1000;
+    
+    /**
+     * Count of heartbeat intervals after which silent shard of other node leaves ring
+     */
+    public static final int EXPIRATION_INTERVALS = 3;
+    
+    private static final String SHARD_RINGS_MAP = VxRifaShardRing.class.getName() + ".rings";
+    private static final String JOIN = "join:";
+    private static final String LEAVE = "leave:";
+    private static final String SYNC = "sync";
+    
+    private final Vertx vertx;
+    private final String eventBusAddress;
+    private final String membershipAddress;
+    private final Set<String> localShards = ConcurrentHashMap.newKeySet();
+    private final Set<String> shards = new TreeSet<>();
+    private final Map<String, Long> remoteShardsSeen = new HashMap<>();
+    private final Promise<Void> readyPromise = Promise.promise();
+    private volatile NavigableMap<Integer, String> ring = Collections.emptyNavigableMap();
+    private volatile boolean ready;
+
+    private VxRifaShardRing(Vertx vertx, String eventBusAddress) {
+        this.vertx = vertx;
+        this.eventBusAddress = eventBusAddress;
+        this.membershipAddress = eventBusAddress + "#ring";
+        ContextInternal membershipContext = VxRifaUtil.createDetachedContext(vertx);
+        membershipContext.runOnContext(v -> {
+            vertx.eventBus().<String>consumer(membershipAddress, this::handleMembership).completionHandler(registered -> {
+                // Shards registered before this ring was created announce themselves again
+                vertx.eventBus().publish(membershipAddress, SYNC);
+                if (vertx.isClustered()) {
+                    // Every node answers during heartbeat interval
+                    vertx.setTimer(HEARTBEAT_INTERVAL, timerId -> setReady());
+                } else {
+                    // Local shards join shared ring directly
+                    setReady();
+                }
+            });
+            vertx.setPeriodic(HEARTBEAT_INTERVAL, this::heartbeat);
+        });
+    }
+    
+    /**
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address of receivers without shard suffix
+     * @return Ring shared by all senders and shard receivers of address
+     */
+    public static synchronized VxRifaShardRing get(Vertx vertx, String eventBusAddress) {
+        LocalMap<String, VxRifaShardRing> rings = vertx.sharedData().getLocalMap(SHARD_RINGS_MAP);
+        VxRifaShardRing ring = rings.get(eventBusAddress);
+        if (ring == null) {
+            ring = new VxRifaShardRing(vertx, eventBusAddress);
+            rings.put(eventBusAddress, ring);
+        }
+        return ring;
+    }
+    
+    /**
+     * @param eventBusAddress Address of receivers without shard suffix
+     * @param shard Number of shard
+     * @return Address on which receiver of shard is registered
+     */
+    public static String getShardAddress(String eventBusAddress, int shard) {
+        return eventBusAddress + "#shard" + shard;
+    }
+    
+    /**
+     * Finds shard that owns key. Hash code of key should be the same on all nodes, so keys are usually strings, numbers or enums.
+     * @param key Value of parameter annotated with {@link VxRifaShardKey}
+     * @return Address of shard or address of receivers without shard suffix if there are no shards
+     */
+    public String route(Object key) {
+        NavigableMap<Integer, String> currentRing = ring;
+        if (currentRing.isEmpty()) {
+            return eventBusAddress;
+        }
+        Map.Entry<Integer, String> node = currentRing.ceilingEntry(hash(key));
+        return node != null ? node.getValue() : currentRing.firstEntry().getValue();
+    }
+    
+    /**
+     * @return True if ring knows shards of other nodes and so routes keys like them
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * Calls routed before ring is ready could go to other shard than on other nodes, so senders wait for it.
+     * @return Future that is completed on the current context when ring is ready
+     */
+    public Future<Void> whenReady() {
+        if (ready) {
+            return Future.succeededFuture();
+        }
+        Context context = Vertx.currentContext();
+        if (context == null) {
+            return readyPromise.future();
+        }
+        Promise<Void> promise = Promise.promise();
+        readyPromise.future().onComplete(result -> context.runOnContext(runOnContext -> promise.handle(result)));
+        return promise.future();
+    }
+    
+    /**
+     * @return Addresses of all known shards
+     */
+    public synchronized Set<String> getShards() {
+        return Collections.unmodifiableSet(new TreeSet<>(shards));
+    }
+    
+    /**
+     * Adds shard to ring of this node only. Usually shards join rings automatically by {@link VxRifaUtil#registerShardReceiver}.
+     * @param shardAddress Address of shard
+     */
+    public synchronized void join(String shardAddress) {
+        if (shards.add(shardAddress)) {
+            rebuild();
+        }
+    }
+    
+    /**
+     * Removes shard from ring of this node only, keys of it are moved to neighbour shards.
+     * @param shardAddress Address of shard
+     */
+    public synchronized void leave(String shardAddress) {
+        remoteShardsSeen.remove(shardAddress);
+        if (shards.remove(shardAddress)) {
+            rebuild();
+        }
+    }
+    
+    <I> VxRifaReceiver<I> joinLocal(String shardAddress, VxRifaReceiver<I> registrator) {
+        joinLocal(shardAddress);
+        // Only contexts of verticles are closed, shards registered elsewhere leave ring when they are unregistered
+        Context context = Vertx.currentContext();
+        return new ShardReceiver<>(shardAddress, registrator, context != null && context.deploymentID() != null ? context : null);
+    }
+    
+    private void joinLocal(String shardAddress) {
+        localShards.add(shardAddress);
+        join(shardAddress);
+        vertx.eventBus().publish(membershipAddress, JOIN + shardAddress);
+    }
+    
+    private void leaveLocal(String shardAddress) {
+        if (localShards.remove(shardAddress)) {
+            leave(shardAddress);
+            vertx.eventBus().publish(membershipAddress, LEAVE + shardAddress);
+        }
+    }
+    
+    private void handleMembership(Message<String> message) {
+        String body = message.body();
+        if (body.startsWith(JOIN)) {
+            String shardAddress = body.substring(JOIN.length());
+            if (!localShards.contains(shardAddress)) {
+                synchronized (this) {
+                    remoteShardsSeen.put(shardAddress, System.nanoTime());
+                }
+            }
+            join(shardAddress);
+        } else if (body.startsWith(LEAVE)) {
+            leave(body.substring(LEAVE.length()));
+        } else if (SYNC.equals(body)) {
+            for (String shardAddress : localShards) {
+                vertx.eventBus().publish(membershipAddress, JOIN + shardAddress);
+            }
+        }
+    }
+    
+    private void setReady() {
+        ready = true;
+        readyPromise.complete();
+    }
+    
+    private void heartbeat(long timerId) {
+        if (vertx.isClustered()) {
+            for (String shardAddress : localShards) {
+                vertx.eventBus().publish(membershipAddress, JOIN + shardAddress);
+            }
+        }
+        long expirationTime = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_INTERVAL * EXPIRATION_INTERVALS);
+        List<String> expiredShards = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Long> seen : remoteShardsSeen.entrySet()) {
+                if (seen.getValue() - expirationTime < 0) {
+                    expiredShards.add(seen.getKey());
+                }
+            }
+        }
+        for (String shardAddress : expiredShards) {
+            leave(shardAddress);
+        }
+    }
+    
+    private void rebuild() {
+        // Shards are iterated in the same order on every node so collisions of virtual nodes are resolved equally
+        TreeMap<Integer, String> newRing = new TreeMap<>();
+        for (String shardAddress : shards) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                newRing.putIfAbsent(hash(shardAddress + '#' + i), shardAddress);
+            }
+        }
+        ring = newRing;
+    }
+    
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key instanceof Enum ? ((Enum<?>) key).name().hashCode() : key.hashCode();
+        // Spreads close hash codes like sequential numbers over the whole ring
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+    
+    private class ShardReceiver<I> implements VxRifaReceiver<I>, Closeable {
+        
+        private final String shardAddress;
+        private final VxRifaReceiver<I> registrator;
+        private final Context context;
+
+        private ShardReceiver(String shardAddress, VxRifaReceiver<I> registrator, Context context) {
+            this.shardAddress = shardAddress;
+            this.registrator = registrator;
+            this.context = context;
+            if (context != null) {
+                context.addCloseHook(this);
+            }
+        }
+
+        @Override
+        public Future<?> registerReceiver(I receiver) {
+            if (context != null) {
+                context.addCloseHook(this);
+            }
+            return registrator.registerReceiver(receiver).onSuccess(v -> joinLocal(shardAddress));
+        }
+
+        @Override
+        public Future<?> unregisterReceiver() {
+            if (context != null) {
+                context.removeCloseHook(this);
+            }
+            leaveLocal(shardAddress);
+            return registrator.unregisterReceiver();
+        }
+
+        @Override
+        public Map<String, VxRifaResultCache> getMemoizedResults() {
+            return registrator.getMemoizedResults();
+        }
+
+        @Override
+        public void close(Handler<AsyncResult<Void>> completionHandler) {
+            // Consumers of undeployed verticle are unregistered by Vert.X itself
+            leaveLocal(shardAddress);
+            completionHandler.handle(Future.succeededFuture());
+        }
+        
+    }
+    
+}
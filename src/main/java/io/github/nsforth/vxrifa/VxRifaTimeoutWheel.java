@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Coarse-grained hashed timing wheel shared by all senders of Vertx instance.
+ * One periodic Vert.X timer advances the wheel, so scheduling and cancelling of request timeouts
+ * costs only adding of {@link Timeout} to lock-free queue. Slots of wheel are touched only by its own context,
+ * which links scheduled timeouts and unlinks cancelled ones on every tick like Netty's HashedWheelTimer does.
+ * Expiration is computed from absolute time, so timeout never expires earlier than its delay and at most one tick later.
+ * Timeouts expired at the same tick are delivered to their contexts in bulk.
+ * @author Nikita Staroverov
+ */
+public class VxRifaTimeoutWheel implements Shareable {
+    
+    /**
+     * Default tick duration in milliseconds
+     */
+    public static final long DEFAULT_TICK_DURATION = 100;
+    
+    private static final String TIMEOUT_WHEELS_MAP = VxRifaTimeoutWheel.class.getName();
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    
+    private final Vertx vertx;
+    private final long tickDuration;
+    private final long tickNanos;
+    private final long startTime = System.nanoTime();
+    private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    // Used only on context of wheel
+    private final Timeout[] slots = new Timeout[WHEEL_SIZE];
+    private long currentTick;
+
+    private VxRifaTimeoutWheel(Vertx vertx, long tickDuration) {
+        this.vertx = vertx;
+        this.tickDuration = tickDuration;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+    }
+    
+    /**
+     * Returns timeout wheel of Vertx instance, wheel is created with {@link #DEFAULT_TICK_DURATION} if it does not exist yet.
+     * @param vertx Vertx instance
+     * @return Shared timeout wheel
+     */
+    public static synchronized VxRifaTimeoutWheel get(Vertx vertx) {
+        LocalMap<String, VxRifaTimeoutWheel> timeoutWheels = vertx.sharedData().getLocalMap(TIMEOUT_WHEELS_MAP);
+        VxRifaTimeoutWheel timeoutWheel = timeoutWheels.get(TIMEOUT_WHEELS_MAP);
+        if (timeoutWheel == null) {
+            timeoutWheel = new VxRifaTimeoutWheel(vertx, DEFAULT_TICK_DURATION);
+            timeoutWheels.put(TIMEOUT_WHEELS_MAP, timeoutWheel);
+        }
+        return timeoutWheel;
+    }
+    
+    /**
+     * Creates timeout wheel of Vertx instance with custom resolution. Should be called before any sender is created.
+     * @param vertx Vertx instance
+     * @param tickDuration Tick duration in milliseconds, timeouts are rounded up to it
+     * @return Shared timeout wheel
+     * @throws IllegalStateException if wheel was already created with other tick duration
+     */
+    public static synchronized VxRifaTimeoutWheel configure(Vertx vertx, long tickDuration) throws IllegalStateException {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration should be positive");
+        }
+        LocalMap<String, VxRifaTimeoutWheel> timeoutWheels = vertx.sharedData().getLocalMap(TIMEOUT_WHEELS_MAP);
+        VxRifaTimeoutWheel timeoutWheel = timeoutWheels.get(TIMEOUT_WHEELS_MAP);
+        if (timeoutWheel == null) {
+            timeoutWheel = new VxRifaTimeoutWheel(vertx, tickDuration);
+            timeoutWheels.put(TIMEOUT_WHEELS_MAP, timeoutWheel);
+        } else if (timeoutWheel.tickDuration != tickDuration) {
+            throw new IllegalStateException("Timeout wheel is already created with tick duration " + timeoutWheel.tickDuration);
+        }
+        return timeoutWheel;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+    
+    /**
+     * Schedules timeout expiration. Timeout is scheduled only once, it is not reused after expiration or cancel.
+     * @param timeout Timeout that is not scheduled yet
+     * @param delay Delay in milliseconds
+     */
+    public void schedule(Timeout timeout, long delay) {
+        if (!Timeout.STATE.compareAndSet(timeout, Timeout.NEW, Timeout.SCHEDULED)) {
+            throw new IllegalStateException("Timeout is already scheduled");
+        }
+        // Deadline is rounded up to the end of tick, so tick that is already running does not shorten it
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+        timeout.deadlineTick = (deadline + tickNanos - 1) / tickNanos;
+        scheduledTimeouts.add(timeout);
+        if (!started.get() && started.compareAndSet(false, true)) {
+            ContextInternal wheelContext = VxRifaUtil.createDetachedContext(vertx);
+            wheelContext.runOnContext(v -> vertx.setPeriodic(tickDuration, this::tick));
+        }
+    }
+    
+    /**
+     * Cancels scheduled timeout.
+     * @param timeout Timeout
+     * @return false if timeout is already expired or was not scheduled
+     */
+    public boolean cancel(Timeout timeout) {
+        if (!Timeout.STATE.compareAndSet(timeout, Timeout.SCHEDULED, Timeout.CANCELLED)) {
+            return false;
+        }
+        // Wheel unlinks it on next tick
+        cancelledTimeouts.add(timeout);
+        return true;
+    }
+    
+    private void link(Timeout timeout) {
+        timeout.slot = (int) (timeout.deadlineTick & WHEEL_MASK);
+        timeout.prev = null;
+        timeout.next = slots[timeout.slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[timeout.slot] = timeout;
+    }
+    
+    private void unlink(Timeout timeout) {
+        if (timeout.prev == null) {
+            slots[timeout.slot] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+    
+    private void tick(long timerId) {
+        // Ticks are counted by time rather than by timer events, so late timer catches up
+        long targetTick = (System.nanoTime() - startTime) / tickNanos;
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.slot >= 0) {
+                unlink(timeout);
+            }
+        }
+        Timeout expired = null;
+        while ((timeout = scheduledTimeouts.poll()) != null) {
+            if (timeout.state != Timeout.SCHEDULED) {
+                continue;
+            }
+            if (timeout.deadlineTick <= targetTick) {
+                if (Timeout.STATE.compareAndSet(timeout, Timeout.SCHEDULED, Timeout.EXPIRED)) {
+                    timeout.next = expired;
+                    expired = timeout;
+                }
+            } else {
+                link(timeout);
+            }
+        }
+        for (long tick = currentTick + 1, ticks = Math.min(targetTick - currentTick, WHEEL_SIZE); ticks > 0; tick++, ticks--) {
+            timeout = slots[(int) (tick & WHEEL_MASK)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadlineTick <= targetTick) {
+                    unlink(timeout);
+                    if (Timeout.STATE.compareAndSet(timeout, Timeout.SCHEDULED, Timeout.EXPIRED)) {
+                        timeout.next = expired;
+                        expired = timeout;
+                    }
+                }
+                timeout = next;
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+        // Timeouts are delivered by one task per context
+        while (expired != null) {
+            Context context = expired.context;
+            Timeout sameContext = null;
+            Timeout otherContexts = null;
+            while (expired != null) {
+                Timeout next = expired.next;
+                if (expired.context == context) {
+                    expired.next = sameContext;
+                    sameContext = expired;
+                } else {
+                    expired.next = otherContexts;
+                    otherContexts = expired;
+                }
+                expired = next;
+            }
+            if (context == null || context == Vertx.currentContext()) {
+                expireAll(sameContext);
+            } else {
+                Timeout batch = sameContext;
+                context.runOnContext(v -> expireAll(batch));
+            }
+            expired = otherContexts;
+        }
+    }
+    
+    private static void expireAll(Timeout timeout) {
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            timeout.expired();
+            timeout = next;
+        }
+    }
+    
+    /**
+     * Entry of timeout wheel. Expiration is executed on context where timeout was created.
+     */
+    public abstract static class Timeout {
+        
+        private static final int NEW = 0;
+        private static final int SCHEDULED = 1;
+        private static final int CANCELLED = 2;
+        private static final int EXPIRED = 3;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+        
+        protected final Context context;
+        private volatile int state;
+        private Timeout prev;
+        private Timeout next;
+        private long deadlineTick;
+        private int slot = -1;
+
+        protected Timeout() {
+            this.context = Vertx.currentContext();
+        }
+        
+        /**
+         * Called on timeout's context when timeout is expired.
+         */
+        protected abstract void expired();
+        
+    }
+    
+}
@@ -18,10 +18,36 @@
  */
 package io.github.nsforth.vxrifa;
 
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.EventExecutor;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
-import java.lang.reflect.InvocationTargetException;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.eventbus.impl.EventBusImpl;
+import io.vertx.core.eventbus.impl.MessageImpl;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.Supplier;
 
 /**
  *
@@ -29,6 +55,19 @@ import java.lang.reflect.InvocationTargetException;
  */
 public class VxRifaUtil {
     
+    private static final String REGISTERED_CODECS_MAP = VxRifaUtil.class.getName() + ".codecs";
+    private static final String LOCAL_RECEIVERS_MAP = VxRifaUtil.class.getName() + ".receivers";
+    private static final String SHARED_PUBLISHERS_MAP = VxRifaUtil.class.getName() + ".publishers";
+    private static final String SENDERS_KEY = VxRifaUtil.class.getName() + ".sender/";
+    private static final String TIMEOUT_WHEEL_KEY = VxRifaUtil.class.getName() + ".timeoutWheel";
+    
+    private static final ClassValue<VxRifaFactory<?>> FACTORIES = new ClassValue<VxRifaFactory<?>>() {
+        @Override
+        protected VxRifaFactory<?> computeValue(Class<?> interfaceType) {
+            return loadFactory(interfaceType);
+        }
+    };
+    
     /**
      * Should be called once per Vertx instance before use other methods from {@link VxRifaUtil}
      * @param vertx Vertx instance
@@ -38,9 +77,230 @@ public class VxRifaUtil {
         vertx.eventBus().registerDefaultCodec(RIFAReply.class, new RIFAReplyCodec());
     }
     
+    /**
+     * Registers codec that was generated for interface annotated with {@link VxRifa} or {@link VxRifaPublish}.
+     * Generated senders, publishers and receivers call it by themselves so usually you don't need it.
+     * Codec registered once per Vertx instance, subsequent calls with same codec name do nothing.
+     * @param vertx Vertx instance
+     * @param codec Generated codec
+     */
+    public static synchronized void registerInterfaceCodec(Vertx vertx, MessageCodec<RIFAInvocation, RIFAInvocation> codec) {
+        LocalMap<String, Boolean> registeredCodecs = vertx.sharedData().getLocalMap(REGISTERED_CODECS_MAP);
+        if (registeredCodecs.putIfAbsent(codec.name(), Boolean.TRUE) == null) {
+            vertx.eventBus().registerCodec(codec);
+        }
+    }
+    
+    /**
+     * Remembers receiver that was registered on eventBus address so senders running in the same Vert.X context
+     * could pass messages to it directly. Generated receivers of interfaces with {@link VxRifa#directInvocation()} call it by themselves.
+     * While more than one receiver registered on the same address direct invocation is disabled for that address
+     * because eventBus should choose receiver by itself, it is enabled again when only one of them is left.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address on which receiver was registered
+     * @param dispatcher Handler of messages of generated receiver
+     */
+    public static synchronized void registerLocalReceiver(Vertx vertx, String eventBusAddress, Handler<Message<RIFAInvocation>> dispatcher) {
+        Context context = Vertx.currentContext();
+        if (context == null) {
+            return;
+        }
+        LocalMap<String, LocalReceiver> localReceivers = vertx.sharedData().getLocalMap(LOCAL_RECEIVERS_MAP);
+        LocalReceiver localReceiver = localReceivers.get(eventBusAddress);
+        localReceivers.put(eventBusAddress, localReceiver == null ? new LocalReceiver(context, dispatcher) : localReceiver.add(context, dispatcher));
+    }
+    
+    /**
+     * Forgets receiver remembered by {@link #registerLocalReceiver}.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address on which receiver was registered
+     * @param dispatcher Handler of messages of generated receiver
+     */
+    public static synchronized void unregisterLocalReceiver(Vertx vertx, String eventBusAddress, Handler<Message<RIFAInvocation>> dispatcher) {
+        LocalMap<String, LocalReceiver> localReceivers = vertx.sharedData().getLocalMap(LOCAL_RECEIVERS_MAP);
+        LocalReceiver localReceiver = localReceivers.get(eventBusAddress);
+        if (localReceiver == null) {
+            return;
+        }
+        localReceiver = localReceiver.remove(dispatcher);
+        if (localReceiver == null) {
+            localReceivers.remove(eventBusAddress);
+        } else {
+            localReceivers.put(eventBusAddress, localReceiver);
+        }
+    }
+    
+    /**
+     * Passes message to receiver registered on eventBus address if it lives in the current Vert.X context.
+     * Receiver handles it at once like message that came by eventBus, so its memoization, call observer and deadlines work as usual,
+     * but reply is passed to reply handler later on the current context, so invoker's callbacks never run inside the call.
+     * Reply handler is failed with {@link ReplyFailure#TIMEOUT} if there is no reply during {@link DeliveryOptions#getSendTimeout()}.
+     * @param vertx Vertx instance
+     * @param eventBusAddress Address on which receiver was registered
+     * @param message Message
+     * @param deliveryOptions Options of sending, only headers and send timeout are used
+     * @param replyHandler Handler of reply or null if reply is not expected
+     * @return false if there is no such receiver and message should be sent by eventBus
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean requestLocally(Vertx vertx, String eventBusAddress, RIFAInvocation message, DeliveryOptions deliveryOptions,
+            Handler<AsyncResult<Message<Object>>> replyHandler) {
+        Context context = Vertx.currentContext();
+        if (context == null) {
+            return false;
+        }
+        // Vertx.sharedData().getLocalMap allocates on every call so map is remembered in data of calling context
+        LocalMap<String, LocalReceiver> localReceivers = context.get(LOCAL_RECEIVERS_MAP);
+        if (localReceivers == null) {
+            localReceivers = vertx.sharedData().getLocalMap(LOCAL_RECEIVERS_MAP);
+            context.put(LOCAL_RECEIVERS_MAP, localReceivers);
+        }
+        LocalReceiver localReceiver = localReceivers.get(eventBusAddress);
+        if (localReceiver == null || localReceiver.context != context) {
+            return false;
+        }
+        LocalMessage request = new LocalMessage(eventBusAddress, deliveryOptions.getHeaders(), message, replyHandler);
+        if (replyHandler != null) {
+            request.timeoutWheel = context.get(TIMEOUT_WHEEL_KEY);
+            if (request.timeoutWheel == null) {
+                request.timeoutWheel = VxRifaTimeoutWheel.get(vertx);
+                context.put(TIMEOUT_WHEEL_KEY, request.timeoutWheel);
+            }
+            request.timeoutWheel.schedule(request, deliveryOptions.getSendTimeout());
+        }
+        try {
+            ((Handler<Message<RIFAInvocation>>) localReceiver.receiver).handle((Message<RIFAInvocation>) (Message<?>) request);
+        } catch (Throwable ex) {
+            // Same as batched invocation that failed to be dispatched
+            if (replyHandler != null) {
+                request.reply(RIFAReply.of(ex));
+            } else {
+                reportException(ex);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Reports exception thrown by void method that was not called by eventBus to the current context exception handler
+     * the same way as it happens with exceptions thrown from eventBus consumers.
+     * @param ex Exception
+     */
+    public static void reportException(Throwable ex) {
+        Context context = Vertx.currentContext();
+        if (context instanceof ContextInternal) {
+            ((ContextInternal) context).reportException(ex);
+        }
+    }
+    
+    /**
+     * Forgets results cached by senders of interface registered on default address for methods annotated with {@link VxRifaCacheable}.
+     * Use {@link VxRifaResultCache#invalidate} for alternate addresses or results of particular invocations.
+     * @param vertx Vertx instance
+     * @param interfaceType Interface annotated with {@link VxRifa}
+     */
+    public static void invalidateCachedResults(Vertx vertx, Class<?> interfaceType) {
+        VxRifaResultCache.invalidate(vertx, interfaceType.getCanonicalName());
+    }
+    
+    /**
+     * Sends message without reply handler and passes failure of delivery, like {@link ReplyFailure#NO_HANDLERS}, to failure handler.
+     * Vert.X 3 reports such failures only to reply handler of {@link EventBus#request}, which registers temporary reply consumer
+     * that {@link VxRifaReplyChannel} avoids, so internal API of {@link EventBusImpl} is used here and nowhere else.
+     * With other eventBus implementations message is just sent and missing handlers are noticed by timeout of request.
+     */
+    static void send(EventBus eventBus, String address, Object message, DeliveryOptions deliveryOptions, Handler<Throwable> failureHandler) {
+        if (!(eventBus instanceof EventBusImpl)) {
+            eventBus.send(address, message, deliveryOptions);
+            return;
+        }
+        EventBusImpl eventBusImpl = (EventBusImpl) eventBus;
+        MessageImpl messageImpl = eventBusImpl.createMessage(true, address, deliveryOptions.getHeaders(), message, deliveryOptions.getCodecName(), written -> {
+            if (written.failed()) {
+                failureHandler.handle(written.cause());
+            }
+        });
+        eventBusImpl.sendOrPubInternal(messageImpl, deliveryOptions, null);
+    }
+    
+    /**
+     * Generated senders share immutable delivery options between calls so they should be copied before adding headers.
+     * Unlike {@link DeliveryOptions#DeliveryOptions(io.vertx.core.eventbus.DeliveryOptions)} headers are copied too.
+     */
+    static DeliveryOptions copyDeliveryOptions(DeliveryOptions deliveryOptions) {
+        DeliveryOptions copy = new DeliveryOptions(deliveryOptions);
+        if (deliveryOptions.getHeaders() != null) {
+            copy.setHeaders(MultiMap.caseInsensitiveMultiMap().addAll(deliveryOptions.getHeaders()));
+        }
+        return copy;
+    }
+    
+    /**
+     * Creates event loop context that does not belong to any verticle. Library state shared between verticles
+     * (timeout wheel, consumers of shard rings, cache invalidations, receiver pool instances)
+     * lives on such contexts so it is not closed by undeploy of verticle that happened to create it first.
+     * Every new context is bound to the next event loop of Vertx, so contexts created one after another
+     * could share event loop when somebody else creates contexts too. Use {@link #createDetachedContexts(Vertx)} to spread work.
+     * @param vertx Vertx instance
+     * @return New context
+     */
+    static ContextInternal createDetachedContext(Vertx vertx) {
+        return ((VertxInternal) vertx).createEventLoopContext(null, null, new JsonObject(), Thread.currentThread().getContextClassLoader());
+    }
+    
+    /**
+     * Creates event loop context like {@link #createDetachedContext(Vertx)} but bound to the given event loop.
+     * @param vertx Vertx instance
+     * @param eventLoop One of event loops from {@link VertxInternal#getEventLoopGroup()}
+     * @return New context
+     */
+    static ContextInternal createDetachedContext(Vertx vertx, EventLoop eventLoop) {
+        return ((VertxInternal) vertx).createEventLoopContext(eventLoop, null, Thread.currentThread().getContextClassLoader());
+    }
+    
+    /**
+     * Creates detached context for every event loop of Vertx, so work spread over them uses all event loops exactly once.
+     * @param vertx Vertx instance
+     * @return New contexts bound to distinct event loops
+     */
+    static ContextInternal[] createDetachedContexts(Vertx vertx) {
+        List<ContextInternal> contexts = new ArrayList<>();
+        for (EventExecutor eventLoop : ((VertxInternal) vertx).getEventLoopGroup()) {
+            contexts.add(createDetachedContext(vertx, (EventLoop) eventLoop));
+        }
+        return contexts.toArray(new ContextInternal[0]);
+    }
+    
+    /**
+     * Creates dynamic proxy of interface that compares by identity and doesn't pass methods of {@link Object} to the handler.
+     * @param <I> Interface
+     * @param interfaceType Interface that proxy implements
+     * @param description Returned by toString of proxy
+     * @param handler Handler of interface methods
+     * @return Proxy instance
+     */
+    static <I> I createProxy(Class<I> interfaceType, String description, InvocationHandler handler) {
+        return interfaceType.cast(Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class<?>[]{interfaceType}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return description;
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        }));
+    }
+    
     /**
      * Returns implementation that can send eventBus messages under the hood like VertX.EventBus.send.
      * Interface should be annotated with {@link VxRifa}.
+     * Sender is cached per interface and address in data of the current Vert.X context, so callers in one context share it
+     * with its reply channel, bulkhead, drain handler, single-flight calls and batches, and it goes away with the context.
+     * Outside of Vert.X context every call creates new sender.
      * @param <I> Some interface which methods should be wrapped to eventBus messages.
      * @param vertx VertX instance
      * @param interfaceType Class for which implementation should be generated
@@ -65,27 +325,21 @@ public class VxRifaUtil {
         return instantiateSenderImplementation(vertx, interfaceType, eventBusAddress);
     }
 
-    @SuppressWarnings("unchecked")
     private static <I> I instantiateSenderImplementation(Vertx vertx, Class<I> interfaceType, String eventBusAddress) {
-        assert interfaceType.isInterface();        
-        try {
-            Class<?> senderClass = ClassLoader.getSystemClassLoader().loadClass(interfaceType.getCanonicalName() + SenderGenerator.VXRIFA_SENDER_SUFFIX);
-            try {                                
-                I newInstance;
-                if (eventBusAddress == null) {
-                    newInstance = (I) senderClass.getDeclaredConstructor(Vertx.class).newInstance(vertx);
-                } else {
-                    newInstance = (I) senderClass.getDeclaredConstructor(Vertx.class, String.class).newInstance(vertx, eventBusAddress);
-                }
-                return newInstance;
-            } catch (InvocationTargetException ex) {
-                throw new IllegalArgumentException(ex.getCause());
-            } catch (InstantiationException | IllegalAccessException ex) {
-                throw new IllegalArgumentException(ex);
-            }
-        } catch (NoSuchMethodException | SecurityException | ClassNotFoundException ex) {
-                throw new IllegalArgumentException(ex);
-        }        
+        assert interfaceType.isInterface();
+        VxRifaFactory<I> factory = getFactory(interfaceType);
+        Context context = Vertx.currentContext();
+        if (context == null || ((ContextInternal) context).owner() != vertx) {
+            return create(() -> factory.createSender(vertx, eventBusAddress));
+        }
+        // Context is used by one thread at a time so check and put are not raced
+        String key = SENDERS_KEY + interfaceType.getName() + '/' + (eventBusAddress != null ? eventBusAddress : interfaceType.getCanonicalName());
+        I sender = interfaceType.cast(context.get(key));
+        if (sender == null) {
+            sender = create(() -> factory.createSender(vertx, eventBusAddress));
+            context.put(key, sender);
+        }
+        return sender;
     }
     
     /**
@@ -114,25 +368,10 @@ public class VxRifaUtil {
         return instantiatePublisherImplementation(vertx, interfaceType, eventBusAddress);
     }
 
-    @SuppressWarnings("unchecked")
     private static <I> I instantiatePublisherImplementation(Vertx vertx, Class<I> interfaceType, String eventBusAddress) {
-        assert interfaceType.isInterface();        
-        try {
-            Class<?> publisherClass = ClassLoader.getSystemClassLoader().loadClass(interfaceType.getCanonicalName() + PublisherGenerator.VXRIFA_PUBLISHER_SUFFIX);
-            try {                                
-                I newInstance;
-                if (eventBusAddress == null) {
-                    newInstance = (I) publisherClass.getDeclaredConstructor(Vertx.class).newInstance(vertx);
-                } else {
-                    newInstance = (I) publisherClass.getDeclaredConstructor(Vertx.class, String.class).newInstance(vertx, eventBusAddress);
-                }
-                return newInstance;
-            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                throw new IllegalArgumentException(ex);
-            }
-        } catch (NoSuchMethodException | SecurityException | ClassNotFoundException ex) {
-                throw new IllegalArgumentException(ex);
-        }        
+        assert interfaceType.isInterface();
+        VxRifaFactory<I> factory = getFactory(interfaceType);
+        return getSharedPublisher(vertx, interfaceType, eventBusAddress, () -> factory.createPublisher(vertx, eventBusAddress));
     }
     
     /**
@@ -206,25 +445,299 @@ public class VxRifaUtil {
         return promise.future();
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Registers pool of receivers with one instance per event loop on interface address, so calls of interface are spread over all cores.
+     * Every instance is created by factory on its own event loop and does not share it with others, calls of one instance are executed in order as usual.
+     * Pool is unregistered at once by returned {@link VxRifaReceiver} or when verticle that registered it is undeployed.
+     * @param <I> Interface
+     * @param vertx Vertx instance
+     * @param interfaceType Class for which receivers should be generated
+     * @param factory Creates interface implementation, it is called on event loop of instance
+     * @return Future that on completion returns successfully registered pool and fails otherwise
+     */
+    public static <I> Future<VxRifaReceiver<I>> registerReceiverPool(Vertx vertx, Class<I> interfaceType, Supplier<? extends I> factory) {
+        return registerReceiverPool(vertx, interfaceType, factory, interfaceType.getCanonicalName(), VxRifaReceiverPool.getEventLoopsCount(vertx));
+    }
+    
+    /**
+     * Same as {@link #registerReceiverPool(io.vertx.core.Vertx, java.lang.Class, java.util.function.Supplier)} but with chosen number of instances.
+     * Instances above number of event loops share event loops with others.
+     * @param <I> Interface
+     * @param vertx Vertx instance
+     * @param interfaceType Class for which receivers should be generated
+     * @param factory Creates interface implementation, it is called on event loop of instance
+     * @param instances Number of instances
+     * @return Future that on completion returns successfully registered pool and fails otherwise
+     */
+    public static <I> Future<VxRifaReceiver<I>> registerReceiverPool(Vertx vertx, Class<I> interfaceType, Supplier<? extends I> factory, int instances) {
+        return registerReceiverPool(vertx, interfaceType, factory, interfaceType.getCanonicalName(), instances);
+    }
+    
+    /**
+     * Same as {@link #registerReceiverPool(io.vertx.core.Vertx, java.lang.Class, java.util.function.Supplier, int)} but with possibility to choose alternate eventBus address
+     * @param <I> Interface
+     * @param vertx Vertx instance
+     * @param interfaceType Class for which receivers should be generated
+     * @param factory Creates interface implementation, it is called on event loop of instance
+     * @param eventBusAddress Alternate eventBus address, by default address came from interface FQN
+     * @param instances Number of instances
+     * @return Future that on completion returns successfully registered pool and fails otherwise
+     */
+    public static <I> Future<VxRifaReceiver<I>> registerReceiverPool(Vertx vertx, Class<I> interfaceType, Supplier<? extends I> factory, String eventBusAddress, int instances) {
+        VxRifaReceiverPool<I> pool = new VxRifaReceiverPool<>(vertx, interfaceType, eventBusAddress);
+        return pool.register(factory, instances).map(pool);
+    }
+
+    /**
+     * Registers receiver as one shard of interface, senders route calls to shards by parameter annotated with {@link VxRifaShardKey}.
+     * Receiver is registered on address returned by {@link VxRifaShardRing#getShardAddress} and joins ring of shards on all nodes.
+     * Shard leaves ring on unregistration or when verticle that registered it is undeployed.
+     * @param <I> Interface
+     * @param vertx Vertx instance
+     * @param interfaceType Class for which receiver should be generated
+     * @param receiver Interface implementation that should be registered
+     * @param shard Number of shard that should be unique for interface in cluster
+     * @return Future that on completion returns successfully registered {@link VxRifaReceiver} and fails otherwise
+     */
+    public static <I> Future<VxRifaReceiver<I>> registerShardReceiver(Vertx vertx, Class<I> interfaceType, I receiver, int shard) {
+        return registerShardReceiver(vertx, interfaceType, receiver, interfaceType.getCanonicalName(), shard);
+    }
+    
+    /**
+     * Same as {@link #registerShardReceiver(io.vertx.core.Vertx, java.lang.Class, java.lang.Object, int)} but with possibility to choose alternate eventBus address
+     * @param <I> Interface
+     * @param vertx Vertx instance
+     * @param interfaceType Class for which receiver should be generated
+     * @param receiver Interface implementation that should be registered
+     * @param eventBusAddress Alternate eventBus address without shard suffix, by default address came from interface FQN
+     * @param shard Number of shard that should be unique for interface in cluster
+     * @return Future that on completion returns successfully registered {@link VxRifaReceiver} and fails otherwise
+     */
+    public static <I> Future<VxRifaReceiver<I>> registerShardReceiver(Vertx vertx, Class<I> interfaceType, I receiver, String eventBusAddress, int shard) {
+        String shardAddress = VxRifaShardRing.getShardAddress(eventBusAddress, shard);
+        VxRifaShardRing ring = VxRifaShardRing.get(vertx, eventBusAddress);
+        return registerReceiver(vertx, interfaceType, receiver, shardAddress).map(registrator -> ring.joinLocal(shardAddress, registrator));
+    }
+
+    static <I> VxRifaReceiver<I> getObservedReceiverRegistrator(Vertx vertx, Class<I> interfaceType, String eventBusAddress, VxRifaCallObserver callObserver) {
+        assert interfaceType.isInterface();
+        VxRifaFactory<I> factory = getFactory(interfaceType);
+        return create(() -> factory.createReceiver(vertx, eventBusAddress, callObserver));
+    }
+    
     private static <I> VxRifaReceiver<I> instantiateReceiverRegistrator(Vertx vertx, Class<I> interfaceType, String eventBusAddress) {
-        assert interfaceType.isInterface();        
+        assert interfaceType.isInterface();
+        VxRifaFactory<I> factory = getFactory(interfaceType);
+        return create(() -> factory.createReceiver(vertx, eventBusAddress));
+    }
+    
+    static <I> I instantiateActorRouter(Class<I> interfaceType, VxRifaActors<I> actors) {
+        assert interfaceType.isInterface();
+        VxRifaFactory<I> factory = getFactory(interfaceType);
+        return create(() -> factory.createActorRouter(actors));
+    }
+    
+    /**
+     * Publishers are stateless so one instance per Vertx, interface and address is shared between all verticles.
+     */
+    private static synchronized <I> I getSharedPublisher(Vertx vertx, Class<I> interfaceType, String eventBusAddress, Supplier<I> constructor) {
+        if (vertx == null) {
+            // Let generated constructor complain about it
+            return create(constructor);
+        }
+        String key = interfaceType.getName() + '/' + (eventBusAddress == null ? "" : eventBusAddress);
+        LocalMap<String, SharedInstance> sharedInstances = vertx.sharedData().getLocalMap(SHARED_PUBLISHERS_MAP);
+        SharedInstance sharedInstance = sharedInstances.get(key);
+        if (sharedInstance == null) {
+            sharedInstance = new SharedInstance(create(constructor));
+            sharedInstances.put(key, sharedInstance);
+        }
+        return interfaceType.cast(sharedInstance.instance);
+    }
+    
+    private static <T> T create(Supplier<T> constructor) {
+        try {
+            return constructor.get();
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (RuntimeException | AssertionError ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <I> VxRifaFactory<I> getFactory(Class<I> interfaceType) {
+        return (VxRifaFactory<I>) FACTORIES.get(interfaceType);
+    }
+    
+    /**
+     * Looks for generated factory registered as service with classloader of interface.
+     * If services file was lost, for example by fat jar repackaging, factory is loaded by its name.
+     */
+    @SuppressWarnings("rawtypes")
+    private static VxRifaFactory<?> loadFactory(Class<?> interfaceType) {
+        ClassLoader classLoader = interfaceType.getClassLoader();
         try {
-            Class<VxRifaReceiver<I>> receiverRegistratorClass = (Class<VxRifaReceiver<I>>) ClassLoader.getSystemClassLoader().loadClass(interfaceType.getCanonicalName() + ReceiverGenerator.VXRIFA_RECEIVER_SUFFIX);
-            try {                                
-                VxRifaReceiver<I> newInstance;
-                if (eventBusAddress == null) {
-                    newInstance = (VxRifaReceiver<I>) receiverRegistratorClass.getDeclaredConstructor(Vertx.class).newInstance(vertx);
-                } else {
-                    newInstance = (VxRifaReceiver<I>) receiverRegistratorClass.getDeclaredConstructor(Vertx.class, String.class).newInstance(vertx, eventBusAddress);
-                }                
-                return newInstance;
-            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                throw new IllegalArgumentException(ex);
+            for (VxRifaFactory factory : ServiceLoader.load(VxRifaFactory.class, classLoader)) {
+                if (factory.getInterfaceType() == interfaceType) {
+                    return factory;
+                }
+            }
+        } catch (ServiceConfigurationError ex) {
+            // Stale or broken services file, try to find factory by name
+        }
+        String factoryClassName = interfaceType.getPackageName() + "." + interfaceType.getSimpleName() + FactoryGenerator.VXRIFA_FACTORY_SUFFIX;
+        try {
+            return (VxRifaFactory<?>) Class.forName(factoryClassName, true, classLoader).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new IllegalArgumentException("There is no generated factory for " + interfaceType.getName() + ". Is it annotated with @VxRifa or @VxRifaPublish?", ex);
+        }
+    }
+    
+    private static class SharedInstance implements Shareable {
+        
+        private final Object instance;
+
+        private SharedInstance(Object instance) {
+            this.instance = instance;
+        }
+        
+    }
+    
+    /**
+     * Message passed to receiver by {@link #requestLocally}. It is reply message too, then it has no reply handler.
+     */
+    private static class LocalMessage extends VxRifaTimeoutWheel.Timeout implements Message<Object> {
+        
+        private final String address;
+        private final MultiMap headers;
+        private final Object body;
+        private final Handler<AsyncResult<Message<Object>>> replyHandler;
+        private VxRifaTimeoutWheel timeoutWheel;
+
+        private LocalMessage(String address, MultiMap headers, Object body, Handler<AsyncResult<Message<Object>>> replyHandler) {
+            this.address = address;
+            this.headers = headers != null ? headers : MultiMap.caseInsensitiveMultiMap();
+            this.body = body;
+            this.replyHandler = replyHandler;
+        }
+
+        @Override
+        protected void expired() {
+            replyHandler.handle(Future.failedFuture(new ReplyException(ReplyFailure.TIMEOUT, "Timed out waiting for a reply. address: " + address)));
+        }
+        
+        private void complete(AsyncResult<Message<Object>> result) {
+            // Reply is passed only once and never inside the call, even if receiver replied at once
+            if (replyHandler != null && timeoutWheel.cancel(this)) {
+                context.runOnContext(v -> replyHandler.handle(result));
+            }
+        }
+
+        @Override
+        public String address() {
+            return address;
+        }
+
+        @Override
+        public MultiMap headers() {
+            return headers;
+        }
+
+        @Override
+        public Object body() {
+            return body;
+        }
+
+        @Override
+        public String replyAddress() {
+            return null;
+        }
+
+        @Override
+        public boolean isSend() {
+            return true;
+        }
+
+        @Override
+        public void reply(Object message) {
+            complete(Future.succeededFuture(new LocalMessage(address, null, message, null)));
+        }
+
+        @Override
+        @Deprecated
+        public <R> void reply(Object message, Handler<AsyncResult<Message<R>>> replyHandler) {
+            reply(message);
+        }
+
+        @Override
+        public void reply(Object message, DeliveryOptions options) {
+            reply(message);
+        }
+
+        @Override
+        @Deprecated
+        public <R> void reply(Object message, DeliveryOptions options, Handler<AsyncResult<Message<R>>> replyHandler) {
+            reply(message);
+        }
+
+        @Override
+        public void fail(int failureCode, String message) {
+            complete(Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE, failureCode, message)));
+        }
+        
+    }
+    
+    /**
+     * Immutable list of receivers registered on address, receiver is called directly only when it is the only one.
+     */
+    private static class LocalReceiver implements Shareable {
+        
+        private final Context[] contexts;
+        private final Object[] receivers;
+        private final Context context;
+        private final Object receiver;
+
+        private LocalReceiver(Context context, Object receiver) {
+            this(new Context[]{context}, new Object[]{receiver});
+        }
+
+        private LocalReceiver(Context[] contexts, Object[] receivers) {
+            this.contexts = contexts;
+            this.receivers = receivers;
+            this.context = contexts.length == 1 ? contexts[0] : null;
+            this.receiver = receivers.length == 1 ? receivers[0] : null;
+        }
+        
+        private LocalReceiver add(Context context, Object receiver) {
+            Context[] newContexts = Arrays.copyOf(contexts, contexts.length + 1);
+            Object[] newReceivers = Arrays.copyOf(receivers, receivers.length + 1);
+            newContexts[contexts.length] = context;
+            newReceivers[receivers.length] = receiver;
+            return new LocalReceiver(newContexts, newReceivers);
+        }
+        
+        /**
+         * @return Receivers without given one or null if there are no more receivers
+         */
+        private LocalReceiver remove(Object receiver) {
+            for (int i = 0; i < receivers.length; i++) {
+                if (receivers[i] == receiver) {
+                    if (receivers.length == 1) {
+                        return null;
+                    }
+                    Context[] newContexts = new Context[contexts.length - 1];
+                    Object[] newReceivers = new Object[receivers.length - 1];
+                    System.arraycopy(contexts, 0, newContexts, 0, i);
+                    System.arraycopy(contexts, i + 1, newContexts, i, contexts.length - i - 1);
+                    System.arraycopy(receivers, 0, newReceivers, 0, i);
+                    System.arraycopy(receivers, i + 1, newReceivers, i, receivers.length - i - 1);
+                    return new LocalReceiver(newContexts, newReceivers);
+                }
             }
-        } catch (NoSuchMethodException | SecurityException | ClassNotFoundException ex) {
-                throw new IllegalArgumentException(ex);
+            return this;
         }
+        
     }
     
 }
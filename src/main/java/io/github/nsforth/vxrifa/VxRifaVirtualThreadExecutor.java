@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs invocations of methods annotated with {@link VxRifaVirtualThreads} on virtual threads, or on worker pool of Vert.X when Java has no virtual threads.
+ * Invocation holds its slot until returned future completes. Invocations above limit are queued without taking any thread
+ * and started when slot is freed, so on older Java they never occupy worker threads while waiting; there number of invocations executed at once
+ * is also bounded by size of worker pool.
+ * Results are delivered back on context that started invocation and {@link VxRifaCallContext#current()} of it stays current during invocation.
+ * Used by generated receivers, every receiver has its own limit.
+ * @author Nikita Staroverov
+ */
+public final class VxRifaVirtualThreadExecutor {
+    
+    private static final ExecutorService VIRTUAL_THREADS = createVirtualThreads();
+    
+    private final Vertx vertx;
+    private final int maxConcurrency;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int active;
+
+    /**
+     * @param vertx Vertx instance
+     * @param maxConcurrency Maximum number of invocations executed at once
+     */
+    public VxRifaVirtualThreadExecutor(Vertx vertx, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency should be positive");
+        }
+        this.vertx = vertx;
+        this.maxConcurrency = maxConcurrency;
+    }
+    
+    /**
+     * Virtual threads are looked up by reflection because library is built for Java 11.
+     */
+    private static ExecutorService createVirtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+            // Java before 21 or preview feature is not enabled
+            return null;
+        }
+    }
+    
+    /**
+     * @return Whether invocations run on virtual threads rather than on worker pool
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return VIRTUAL_THREADS != null;
+    }
+    
+    /**
+     * @return Number of invocations started and not completed yet
+     */
+    public synchronized int getActive() {
+        return active;
+    }
+    
+    /**
+     * @return Number of invocations waiting for their turn
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+    
+    /**
+     * @param <T> Type of result
+     * @param invocation Invocation of method returning future
+     * @return Future completed on context of caller by result of invocation
+     */
+    public <T> Future<T> call(Supplier<Future<T>> invocation) {
+        Context context = vertx.getOrCreateContext();
+        VxRifaCallContext callContext = VxRifaCallContext.current();
+        Promise<T> promise = Promise.promise();
+        // Queued invocation is started by thread that freed slot, so worker pool is taken through context of caller
+        Runnable task = () -> execute(context, () -> {
+            VxRifaCallContext previousCallContext = callContext != null ? callContext.enter() : null;
+            try {
+                Future<T> result = invocation.get();
+                if (result == null) {
+                    complete(context, promise, Future.failedFuture(new NullPointerException("Returned future should not be null!")));
+                } else {
+                    result.onComplete(completed -> complete(context, promise, completed));
+                }
+            } catch (Throwable ex) {
+                complete(context, promise, Future.failedFuture(ex));
+            } finally {
+                if (callContext != null) {
+                    VxRifaCallContext.exit(previousCallContext);
+                }
+            }
+        });
+        boolean start;
+        synchronized (this) {
+            start = active < maxConcurrency;
+            if (start) {
+                active++;
+            } else {
+                waiting.add(task);
+            }
+        }
+        if (start) {
+            task.run();
+        }
+        return promise.future();
+    }
+    
+    /**
+     * @param invocation Invocation of method without result, its exceptions are reported by {@link VxRifaUtil#reportException}
+     */
+    public void run(Runnable invocation) {
+        call(() -> {
+            invocation.run();
+            return Future.<Void>succeededFuture();
+        }).onFailure(VxRifaUtil::reportException);
+    }
+    
+    private <T> void complete(Context context, Promise<T> promise, AsyncResult<T> result) {
+        // Slot is freed when result is known, next invocation takes it at once
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                active--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+        context.runOnContext(v -> promise.handle(result));
+    }
+    
+    private void execute(Context context, Runnable task) {
+        if (VIRTUAL_THREADS != null) {
+            VIRTUAL_THREADS.execute(task);
+        } else {
+            context.executeBlocking(blocking -> {
+                task.run();
+                blocking.complete();
+            }, false, null);
+        }
+    }
+    
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Receiver of annotated interface invokes methods returning void or {@link io.vertx.core.Future} on virtual thread per call when it runs on Java 21
+ * or later, so implementation could be written in plain synchronous style and block without stalling event loop. On older Java worker pool of Vert.X is used instead.
+ * Annotation on method overrides one on interface, methods annotated with {@link VxRifaBlocking} keep running on their worker pool.
+ * Calls are not ordered and reply is sent from event loop of receiver.
+ * @author Nikita Staroverov
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface VxRifaVirtualThreads {
+    
+    /**
+     * Call holds its turn until returned future completes. Calls waiting for their turn do not take any thread.
+     * On Java before 21 calls executed at once are also bounded by size of worker pool.
+     * @return Maximum number of calls executed by one receiver at once, others wait for their turn
+     */
+    int maxConcurrency() default 10_000;
+    
+}
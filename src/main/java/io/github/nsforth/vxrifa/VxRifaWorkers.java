@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import java.util.function.Supplier;
+
+/**
+ * Runs invocations of methods annotated with {@link VxRifaBlocking} on worker threads. Used by generated receivers.
+ * Results are delivered back on context of caller and {@link VxRifaCallContext#current()} of caller stays current during invocation.
+ * Ordered invocations are queued by context of caller, the next one starts when previous one returned even if its future is not completed yet.
+ * @author Nikita Staroverov
+ */
+public final class VxRifaWorkers {
+    
+    private VxRifaWorkers() {
+    }
+    
+    /**
+     * @param <T> Type of result
+     * @param vertx Vertx instance
+     * @param workerExecutor Named worker pool or null for default worker pool
+     * @param ordered Whether invocations from the same context are executed one by one until they return
+     * @param invocation Invocation of method returning future
+     * @return Future completed on context of caller by result of invocation
+     */
+    public static <T> Future<T> call(Vertx vertx, WorkerExecutor workerExecutor, boolean ordered, Supplier<Future<T>> invocation) {
+        VxRifaCallContext callContext = VxRifaCallContext.current();
+        Promise<T> promise = Promise.promise();
+        Handler<Promise<T>> blockingCode = blocking -> {
+            VxRifaCallContext previousCallContext = callContext != null ? callContext.enter() : null;
+            try {
+                Future<T> result = invocation.get();
+                if (result == null) {
+                    blocking.fail(new NullPointerException("Returned future should not be null!"));
+                } else {
+                    result.onComplete(blocking);
+                }
+            } catch (Throwable ex) {
+                blocking.fail(ex);
+            } finally {
+                if (callContext != null) {
+                    VxRifaCallContext.exit(previousCallContext);
+                }
+            }
+        };
+        if (workerExecutor == null) {
+            vertx.executeBlocking(blockingCode, ordered, promise);
+        } else {
+            workerExecutor.executeBlocking(blockingCode, ordered, promise);
+        }
+        return promise.future();
+    }
+    
+    /**
+     * @param vertx Vertx instance
+     * @param workerExecutor Named worker pool or null for default worker pool
+     * @param ordered Whether invocations from the same context are executed one by one until they return
+     * @param invocation Invocation of method without result, its exceptions are reported by {@link VxRifaUtil#reportException}
+     */
+    public static void run(Vertx vertx, WorkerExecutor workerExecutor, boolean ordered, Runnable invocation) {
+        call(vertx, workerExecutor, ordered, () -> {
+            invocation.run();
+            return Future.<Void>succeededFuture();
+        }).onFailure(VxRifaUtil::reportException);
+    }
+    
+}
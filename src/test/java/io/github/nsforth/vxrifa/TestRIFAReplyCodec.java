@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package io.github.nsforth.vxrifa;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+public class TestRIFAReplyCodec {
+    
+    private final RIFAReplyCodec codec = new RIFAReplyCodec();
+    
+    private RIFAReply roundTrip(RIFAReply reply) {
+        Buffer buffer = Buffer.buffer();
+        buffer.appendString("prefix");
+        codec.encodeToWire(buffer, reply);
+        return codec.decodeFromWire("prefix".length(), buffer);
+    }
+    
+    @Test
+    public void testResults() {
+        Object[] results = new Object[]{
+            null, "Строка", 1, 2L, 3.0d, 4.0f, true, (short) 5, (byte) 6, 'c',
+            Buffer.buffer("buffer"), new JsonObject().put("key", "value"), new JsonArray().add(1).add("two")
+        };
+        for (Object result : results) {
+            RIFAReply decoded = roundTrip(RIFAReply.of(result));
+            Assert.assertFalse(decoded.isExceptional());
+            Assert.assertEquals(result, decoded.getResult());
+        }
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) roundTrip(RIFAReply.of(new byte[]{1, 2, 3})).getResult());
+    }
+    
+    @Test
+    public void testBatchResults() {
+        RIFAReply[] replies = new RIFAReply[]{RIFAReply.of("first"), null, RIFAReply.of(new IllegalStateException("Failed"))};
+        RIFAReply[] decoded = (RIFAReply[]) roundTrip(RIFAReply.of(replies)).getResult();
+        Assert.assertEquals(3, decoded.length);
+        Assert.assertEquals("first", decoded[0].getResult());
+        Assert.assertNull(decoded[1].getResult());
+        Assert.assertEquals("Failed", decoded[2].getException().getMessage());
+    }
+    
+    @Test
+    public void testUnsupportedResult() {
+        RIFAReply decoded = roundTrip(RIFAReply.of(new Object()));
+        Assert.assertTrue(decoded.isExceptional());
+        Assert.assertEquals(UnsupportedOperationException.class.getName(), ((VxRifaRemoteException) decoded.getException()).getRemoteClassName());
+    }
+    
+    @Test
+    public void testExceptionWithoutStackTrace() {
+        RIFAReply decoded = roundTrip(RIFAReply.of(new IllegalStateException("Failed")));
+        VxRifaRemoteException exception = (VxRifaRemoteException) decoded.getException();
+        Assert.assertEquals(IllegalStateException.class.getName(), exception.getRemoteClassName());
+        Assert.assertEquals("Failed", exception.getMessage());
+        Assert.assertEquals(0, exception.getStackTrace().length);
+    }
+    
+    @Test
+    public void testExceptionWithLimitedStackTrace() {
+        IllegalStateException original = new IllegalStateException();
+        RIFAReply decoded = roundTrip(RIFAReply.of(original, 2));
+        VxRifaRemoteException exception = (VxRifaRemoteException) decoded.getException();
+        Assert.assertNull(exception.getMessage());
+        Assert.assertEquals(2, exception.getStackTrace().length);
+        Assert.assertEquals(original.getStackTrace()[0].getMethodName(), exception.getStackTrace()[0].getMethodName());
+        Assert.assertEquals(original.getStackTrace()[1].getMethodName(), exception.getStackTrace()[1].getMethodName());
+    }
+    
+}
@@ -0,0 +1,186 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaActors;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestActors {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger activations = new AtomicInteger();
+    private final List<Object> passivated = new CopyOnWriteArrayList<>();
+    
+    private VxRifaActors<SessionInterface> actors;
+    private volatile Promise<Void> awaited;
+
+    class Session implements SessionInterface {
+        
+        private int touches;
+
+        Session() {
+            activations.incrementAndGet();
+        }
+
+        @Override
+        public Future<Integer> touch(String session) {
+            return Future.succeededFuture(++touches);
+        }
+
+        @Override
+        public Future<String> threadOf(String session) {
+            return Future.succeededFuture(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void close(String session) {
+            touches = 0;
+        }
+
+        @Override
+        public Future<Void> await(String session) {
+            return awaited.future();
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        actors = new VxRifaActors<>(rule.vertx(), SessionInterface.class, key -> new Session())
+                .setPassivationHandler((key, session) -> passivated.add(key));
+        VxRifaUtil.registerReceiver(rule.vertx(), SessionInterface.class, actors.getReceiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testEveryKeyHasOwnPinnedActor(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        SessionInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SessionInterface.class);
+        sender.touch("a");
+        sender.touch("a");
+        sender.touch("b");
+        sender.close("b");
+        CompositeFuture.all(sender.touch("a"), sender.touch("b"), sender.threadOf("a"), sender.threadOf("a")).onComplete(testContext.asyncAssertSuccess(result -> {
+            testContext.assertEquals(3, result.resultAt(0));
+            testContext.assertEquals(1, result.resultAt(1));
+            testContext.assertEquals(result.resultAt(2), result.resultAt(3));
+            testContext.assertEquals(2, activations.get());
+            testContext.assertEquals(2, actors.getActiveCount());
+            async.complete();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testIdleActorsArePassivated(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        actors.setPassivationTimeout(50);
+        SessionInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SessionInterface.class);
+        sender.touch("a").onComplete(testContext.asyncAssertSuccess(touches -> {
+            rule.vertx().setTimer(300, id -> {
+                testContext.assertEquals(0, actors.getActiveCount());
+                testContext.assertEquals(1L, actors.getPassivationCount());
+                testContext.assertEquals("a", passivated.get(0));
+                // Next call activates new instance
+                sender.touch("a").onComplete(testContext.asyncAssertSuccess(newTouches -> {
+                    testContext.assertEquals(1, newTouches);
+                    testContext.assertEquals(2, activations.get());
+                    async.complete();
+                }));
+            });
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testLeastRecentlyUsedActorsArePassivatedAboveLimit(TestContext testContext) {
+
+        Async async = testContext.async();
+        Async passivation = testContext.async();
+
+        // Passivation handler is called on event loop of actor
+        actors.setMaxActiveActors(2).setPassivationHandler((key, session) -> {
+            testContext.assertEquals("AaBB", key);
+            passivation.complete();
+        });
+        // Keys have equal hash codes so they are kept by one partition
+        SessionInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SessionInterface.class);
+        sender.touch("AaAa")
+                .compose(touches -> sender.touch("AaBB"))
+                .compose(touches -> sender.touch("AaAa"))
+                .compose(touches -> sender.touch("BBAa"))
+                .onComplete(testContext.asyncAssertSuccess(touches -> {
+                    testContext.assertEquals(2, actors.getActiveCount());
+                    testContext.assertEquals(1L, actors.getPassivationCount());
+                    async.complete();
+                }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testActorIsNotPassivatedWhileFutureIsPending(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        awaited = Promise.promise();
+        actors.setPassivationTimeout(50);
+        SessionInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SessionInterface.class);
+        Future<Void> pending = sender.await("a");
+        rule.vertx().setTimer(300, id -> {
+            testContext.assertFalse(pending.isComplete());
+            testContext.assertEquals(1, actors.getActiveCount());
+            testContext.assertEquals(0L, actors.getPassivationCount());
+            awaited.complete();
+            pending.onComplete(testContext.asyncAssertSuccess(completed -> {
+                rule.vertx().setTimer(300, nextId -> {
+                    testContext.assertEquals(0, actors.getActiveCount());
+                    testContext.assertEquals(1L, actors.getPassivationCount());
+                    async.complete();
+                });
+            }));
+        });
+
+    }
+
+}
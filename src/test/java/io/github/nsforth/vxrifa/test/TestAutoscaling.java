@@ -0,0 +1,125 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaAutoscaler;
+import io.github.nsforth.vxrifa.VxRifaIgnore;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestAutoscaling {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger version = new AtomicInteger();
+
+    class Receiver implements ReadMostlyInterface {
+
+        @Override
+        public Future<String> load(String key, int version) {
+            Promise<String> promise = Promise.promise();
+            rule.vertx().setTimer(50, id -> promise.complete(key + version));
+            return promise.future();
+        }
+
+        @Override
+        public Future<Integer> checksum(byte[] data) {
+            return Future.succeededFuture(data.length);
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+    }
+
+    @Test(timeout = 5000L)
+    public void testInstancesFollowLoad(TestContext testContext) {
+
+        Async scaledUp = testContext.async();
+        Async scaledDown = testContext.async();
+
+        VxRifaAutoscaler<ReadMostlyInterface> autoscaler = new VxRifaAutoscaler<>(rule.vertx(), ReadMostlyInterface.class, Receiver::new)
+                .setMaxInstances(3)
+                .setInterval(50)
+                .setTargetLatency(20);
+
+        autoscaler.register().onComplete(testContext.asyncAssertSuccess(pool -> {
+            testContext.assertEquals(1, autoscaler.getInstancesCount());
+            ReadMostlyInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+            long load = rule.vertx().setPeriodic(5, id -> sender.load("key", version.incrementAndGet()).onComplete(testContext.asyncAssertSuccess()));
+            rule.vertx().setPeriodic(10, id -> {
+                if (!scaledUp.isCompleted()) {
+                    if (autoscaler.getInstancesCount() == 3) {
+                        testContext.assertTrue(autoscaler.getLatency() > 20);
+                        rule.vertx().cancelTimer(load);
+                        scaledUp.complete();
+                    }
+                } else if (autoscaler.getInstancesCount() == 1) {
+                    rule.vertx().cancelTimer(id);
+                    pool.unregisterReceiver().onComplete(testContext.asyncAssertSuccess(v -> scaledDown.complete()));
+                }
+            });
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testIgnoredMethodsAreRejected(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        class PartialReceiver extends Receiver {
+
+            @Override
+            @VxRifaIgnore
+            public Future<Integer> checksum(byte[] data) {
+                return super.checksum(data);
+            }
+
+        }
+
+        new VxRifaAutoscaler<>(rule.vertx(), ReadMostlyInterface.class, PartialReceiver::new).register().onComplete(testContext.asyncAssertSuccess(pool -> {
+            ReadMostlyInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+            sender.checksum(new byte[1]).onComplete(testContext.asyncAssertFailure(ex -> {
+                testContext.assertEquals("Method implementation is not provided", ex.getMessage());
+                async.complete();
+            }));
+        }));
+
+    }
+
+}
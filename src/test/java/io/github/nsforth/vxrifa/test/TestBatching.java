@@ -0,0 +1,115 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestBatching {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger sentMessages = new AtomicInteger();
+    private final List<String> records = new ArrayList<>();
+
+    class Receiver implements BatchingInterface {
+
+        @Override
+        public Future<Integer> increment(int value) {
+            return Future.succeededFuture(value + 1);
+        }
+
+        @Override
+        public Future<Void> fail(String text) {
+            throw new IllegalStateException(text);
+        }
+
+        @Override
+        public void record(String text) {
+            records.add(text);
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        rule.vertx().eventBus().addOutboundInterceptor(deliveryContext -> {
+            if (BatchingInterface.class.getName().equals(deliveryContext.message().address())) {
+                sentMessages.incrementAndGet();
+            }
+            deliveryContext.next();
+        });
+        VxRifaUtil.registerReceiver(rule.vertx(), BatchingInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsOfOneTickAreBatched(TestContext testContext) {
+
+        int requests = 100;
+        Async async = testContext.async(requests + 1);
+
+        BatchingInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), BatchingInterface.class);
+        for (int i = 0; i < requests; i++) {
+            int value = i;
+            sender.increment(value).onComplete(testContext.asyncAssertSuccess(result -> {
+                testContext.assertEquals(value + 1, result);
+                async.countDown();
+            }));
+        }
+        sender.record("recorded");
+        sender.fail("Expected").onComplete(testContext.asyncAssertFailure(ex -> {
+            testContext.assertTrue(ex instanceof IllegalStateException);
+            testContext.assertEquals("Expected", ex.getMessage());
+            testContext.assertEquals(1, sentMessages.get());
+            testContext.assertEquals(1, records.size());
+            async.countDown();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testSingleCallIsNotWrapped(TestContext testContext) {
+
+        BatchingInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), BatchingInterface.class);
+        sender.increment(1).onComplete(testContext.asyncAssertSuccess(result -> {
+            testContext.assertEquals(2, result);
+            testContext.assertEquals(1, sentMessages.get());
+        }));
+
+    }
+
+}
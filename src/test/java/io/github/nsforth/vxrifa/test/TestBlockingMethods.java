@@ -0,0 +1,152 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestBlockingMethods {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger runningScans = new AtomicInteger();
+    private final AtomicInteger maxRunningScans = new AtomicInteger();
+    private final AtomicInteger completedScans = new AtomicInteger();
+    private final CountDownLatch scansReleased = new CountDownLatch(1);
+
+    class Receiver implements BlockingStorageInterface {
+        
+        private final Map<String, String> storage = new ConcurrentHashMap<>();
+
+        @Override
+        public void write(String key, String value) {
+            sleep(10);
+            storage.put(key, value);
+        }
+
+        @Override
+        public Future<String> read(String key) {
+            if (Context.isOnEventLoopThread()) {
+                return Future.failedFuture("Blocking method is called on event loop");
+            }
+            return Future.succeededFuture(storage.get(key));
+        }
+
+        @Override
+        public Future<String> scan(long millis) {
+            maxRunningScans.accumulateAndGet(runningScans.incrementAndGet(), Math::max);
+            try {
+                // Scans block until test sees that event loop is free while all of them are running
+                scansReleased.await(millis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            runningScans.decrementAndGet();
+            completedScans.incrementAndGet();
+            return Future.succeededFuture(Thread.currentThread().getName());
+        }
+
+        @Override
+        public Future<String> ping() {
+            return Future.succeededFuture("pong");
+        }
+        
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), BlockingStorageInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testOrderedCallsRunOnWorkerThreads(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        // Sender is on the same context as receiver but does not call blocking methods directly
+        BlockingStorageInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), BlockingStorageInterface.class);
+        sender.write("key", "first");
+        sender.write("key", "second");
+        sender.read("key").onComplete(testContext.asyncAssertSuccess(result -> {
+            testContext.assertEquals("second", result);
+            testContext.assertTrue(Context.isOnEventLoopThread());
+            async.complete();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testUnorderedCallsRunInParallelWithoutStallingEventLoop(TestContext testContext) {
+
+        int calls = 4;
+        Async async = testContext.async(calls);
+        Async pinged = testContext.async();
+
+        BlockingStorageInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), BlockingStorageInterface.class);
+        for (int i = 0; i < calls; i++) {
+            sender.scan(2000).onComplete(testContext.asyncAssertSuccess(threadName -> {
+                testContext.assertTrue(threadName.startsWith("blocking-storage"));
+                // All of them were executed at once
+                testContext.assertEquals(calls, maxRunningScans.get());
+                async.countDown();
+            }));
+        }
+        rule.vertx().setPeriodic(5, id -> {
+            if (runningScans.get() == calls) {
+                rule.vertx().cancelTimer(id);
+                sender.ping().onComplete(testContext.asyncAssertSuccess(result -> {
+                    testContext.assertEquals(0, completedScans.get());
+                    scansReleased.countDown();
+                    pinged.complete();
+                }));
+            }
+        });
+
+    }
+
+}
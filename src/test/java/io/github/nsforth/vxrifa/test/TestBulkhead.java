@@ -0,0 +1,214 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaFlowControl;
+import io.github.nsforth.vxrifa.VxRifaInFlightLimit;
+import io.github.nsforth.vxrifa.VxRifaOverloadException;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestBulkhead {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final List<Promise<String>> pendingReads = new ArrayList<>();
+    private final List<Promise<Void>> pendingWrites = new ArrayList<>();
+    private final List<Promise<Void>> pendingFlushes = new ArrayList<>();
+
+    class Receiver implements SlowStorageInterface {
+
+        @Override
+        public Future<String> read(String key) {
+            Promise<String> promise = Promise.promise();
+            pendingReads.add(promise);
+            return promise.future();
+        }
+
+        @Override
+        public Future<Void> write(String key, String value) {
+            Promise<Void> promise = Promise.promise();
+            pendingWrites.add(promise);
+            return promise.future();
+        }
+
+        @Override
+        public Future<Void> flush() {
+            Promise<Void> promise = Promise.promise();
+            pendingFlushes.add(promise);
+            return promise.future();
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), SlowStorageInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsAboveLimitFailFast(TestContext testContext) {
+
+        Async async = testContext.async();
+        Async drained = testContext.async();
+
+        SlowStorageInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SlowStorageInterface.class);
+        VxRifaFlowControl flowControl = (VxRifaFlowControl) sender;
+        sender.read("a");
+        testContext.assertFalse(flowControl.writeQueueFull());
+        sender.read("b");
+        testContext.assertTrue(flowControl.writeQueueFull());
+        testContext.assertEquals(2, flowControl.getInFlight());
+        sender.read("c").onComplete(testContext.asyncAssertFailure(failure -> {
+            testContext.assertTrue(failure instanceof VxRifaOverloadException);
+            async.complete();
+        }));
+        flowControl.drainHandler(v -> {
+            testContext.assertFalse(flowControl.writeQueueFull());
+            drained.complete();
+        });
+        rule.vertx().setTimer(100, id -> pendingReads.get(0).complete("a"));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsAboveLimitAreQueued(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        SlowStorageInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SlowStorageInterface.class);
+        Future<Void> first = sender.write("a", "1");
+        Future<Void> queued = sender.write("b", "2");
+        sender.write("c", "3").onComplete(testContext.asyncAssertFailure(failure -> testContext.assertTrue(failure instanceof VxRifaOverloadException)));
+        rule.vertx().setTimer(100, id -> {
+            // Queued call is not sent until the first one is completed
+            testContext.assertEquals(1, pendingWrites.size());
+            pendingWrites.get(0).complete();
+            first.compose(v -> {
+                rule.vertx().setTimer(50, timer -> pendingWrites.get(1).complete());
+                return queued;
+            }).onComplete(testContext.asyncAssertSuccess(v -> {
+                testContext.assertEquals(2, pendingWrites.size());
+                async.complete();
+            }));
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testQueuedCallIsStartedOnContextOfCaller(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        VxRifaInFlightLimit limit = new VxRifaInFlightLimit(rule.vertx(), "limit", 1, 1);
+        Promise<String> first = Promise.promise();
+        ContextInternal callerContext = ((VertxInternal) rule.vertx()).createEventLoopContext(null, null, new JsonObject(), Thread.currentThread().getContextClassLoader());
+        callerContext.runOnContext(v -> {
+            limit.call(30_000, first::future);
+            limit.call(30_000, () -> {
+                testContext.assertEquals(callerContext, Vertx.currentContext());
+                return Future.succeededFuture("queued");
+            }).onComplete(testContext.asyncAssertSuccess(result -> async.complete()));
+            testContext.assertEquals(1, limit.getQueued());
+            // Slot is freed on other context
+            rule.vertx().getOrCreateContext().runOnContext(completion -> first.complete("first"));
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testQueuedCallWaitsNoLongerThanTimeout(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        VxRifaInFlightLimit limit = new VxRifaInFlightLimit(rule.vertx(), "limit", 1, 1);
+        limit.call(30_000, () -> Promise.<String>promise().future());
+        limit.call(200, () -> Future.succeededFuture("queued")).onComplete(testContext.asyncAssertFailure(failure -> {
+            testContext.assertTrue(failure instanceof VxRifaOverloadException);
+            testContext.assertEquals(0, limit.getQueued());
+            testContext.assertEquals(1, limit.getInFlight());
+            async.complete();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testQueuedCallGetsRemainingTimeout(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        VxRifaInFlightLimit limit = new VxRifaInFlightLimit(rule.vertx(), "limit", 1, 1);
+        Promise<String> first = Promise.promise();
+        limit.call(1000, remainingTimeout -> {
+            testContext.assertEquals(1000L, remainingTimeout);
+            return first.future();
+        });
+        limit.call(1000, remainingTimeout -> {
+            // Time spent in queue is taken from timeout of call
+            testContext.assertTrue(remainingTimeout > 0 && remainingTimeout <= 800, "Remaining timeout " + remainingTimeout);
+            return Future.succeededFuture("queued");
+        }).onComplete(testContext.asyncAssertSuccess(result -> async.complete()));
+        rule.vertx().setTimer(200, id -> first.complete("first"));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testQueuedCallIsSentWithRemainingTimeout(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        SlowStorageInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SlowStorageInterface.class);
+        sender.flush();
+        long started = System.currentTimeMillis();
+        sender.flush().onComplete(testContext.asyncAssertFailure(failure -> {
+            // Queued call would time out 600 ms later with its whole send timeout
+            testContext.assertTrue(failure instanceof ReplyException);
+            testContext.assertEquals(ReplyFailure.TIMEOUT, ((ReplyException) failure).failureType());
+            testContext.assertTrue(System.currentTimeMillis() - started < 1400, "Waited " + (System.currentTimeMillis() - started));
+            async.complete();
+        }));
+        rule.vertx().setTimer(600, id -> pendingFlushes.get(0).complete());
+
+    }
+
+}
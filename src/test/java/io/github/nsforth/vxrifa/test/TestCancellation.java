@@ -0,0 +1,257 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaCallContext;
+import io.github.nsforth.vxrifa.VxRifaCancellation;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.CancellationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestCancellation {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private Async receiverCancelled;
+    private TickStream tickStream;
+    private int lookups;
+    private int indexings;
+
+    class Receiver implements SearchInterface {
+
+        @Override
+        public Future<Integer> search(String query) {
+            VxRifaCallContext.current().cancellationHandler(v -> receiverCancelled.complete());
+            // Search runs until it is cancelled
+            return Promise.<Integer>promise().future();
+        }
+
+        @Override
+        public Future<Integer> report(String name) {
+            VxRifaCallContext.current().cancellationHandler(v -> receiverCancelled.complete());
+            return Promise.<Integer>promise().future();
+        }
+
+        @Override
+        public Future<Integer> count(String query) {
+            return Future.failedFuture(new IllegalArgumentException(query));
+        }
+
+        @Override
+        public Future<Integer> lookup(String name) {
+            lookups++;
+            VxRifaCallContext.current().cancellationHandler(v -> receiverCancelled.complete());
+            return Promise.<Integer>promise().future();
+        }
+
+        @Override
+        public Future<Integer> index(String name) {
+            indexings++;
+            VxRifaCallContext.current().cancellationHandler(v -> receiverCancelled.countDown());
+            return Promise.<Integer>promise().future();
+        }
+
+        @Override
+        public ReadStream<Integer> scan() {
+            tickStream = new TickStream();
+            return tickStream;
+        }
+
+    }
+    
+    class TickStream implements ReadStream<Integer> {
+        
+        private final long timerId;
+        private Handler<Integer> handler;
+        private boolean paused;
+        private int tick;
+
+        TickStream() {
+            timerId = rule.vertx().setPeriodic(5, id -> {
+                if (!paused && handler != null) {
+                    handler.handle(tick++);
+                }
+            });
+        }
+
+        @Override
+        public ReadStream<Integer> exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public ReadStream<Integer> handler(Handler<Integer> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Integer> pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Integer> resume() {
+            paused = false;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Integer> fetch(long amount) {
+            return resume();
+        }
+
+        @Override
+        public ReadStream<Integer> endHandler(Handler<Void> endHandler) {
+            return this;
+        }
+        
+        private void stop() {
+            rule.vertx().cancelTimer(timerId);
+        }
+        
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), SearchInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallerCancelsCall(TestContext testContext) {
+
+        receiverCancelled = testContext.async();
+
+        SearchInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SearchInterface.class);
+        Future<Integer> search = sender.search("query");
+        search.onComplete(testContext.asyncAssertFailure(failure -> testContext.assertTrue(failure instanceof CancellationException)));
+        rule.vertx().setTimer(50, id -> {
+            testContext.assertTrue(VxRifaCancellation.cancel(search));
+            testContext.assertFalse(VxRifaCancellation.cancel(search));
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testTimedOutCallIsCancelled(TestContext testContext) {
+
+        receiverCancelled = testContext.async();
+
+        SearchInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SearchInterface.class);
+        sender.report("daily").onComplete(testContext.asyncAssertFailure());
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testFailedCallIsNotCancelled(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        rule.vertx().eventBus().consumer(SearchInterface.class.getCanonicalName() + "#cancel", message -> testContext.fail("Failed call is cancelled"));
+        SearchInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SearchInterface.class);
+        sender.count("none").onComplete(testContext.asyncAssertFailure(failure -> rule.vertx().setTimer(100, id -> async.complete())));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testCancelledCallFailsCoalescedCalls(TestContext testContext) {
+
+        receiverCancelled = testContext.async();
+
+        SearchInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SearchInterface.class);
+        Future<Integer> leader = sender.lookup("name");
+        Future<Integer> follower = sender.lookup("name");
+        Future<Integer> joined = sender.lookup("name");
+        leader.onComplete(testContext.asyncAssertFailure(failure -> testContext.assertTrue(failure instanceof CancellationException)));
+        follower.onComplete(testContext.asyncAssertFailure(failure -> testContext.assertTrue(failure instanceof CancellationException)));
+        joined.onComplete(testContext.asyncAssertFailure(failure -> testContext.assertTrue(failure instanceof CancellationException)));
+        rule.vertx().setTimer(50, id -> {
+            testContext.assertEquals(1, lookups);
+            // Caller that only joined the call stops waiting but does not cancel it
+            testContext.assertTrue(VxRifaCancellation.cancel(joined));
+            testContext.assertFalse(follower.isComplete());
+            testContext.assertTrue(VxRifaCancellation.cancel(leader));
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testCancelledCallFreesBulkheadSlot(TestContext testContext) {
+
+        receiverCancelled = testContext.async(2);
+        Async async = testContext.async();
+
+        SearchInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SearchInterface.class);
+        Future<Integer> first = sender.index("first");
+        first.onComplete(testContext.asyncAssertFailure(failure -> testContext.assertTrue(failure instanceof CancellationException)));
+        rule.vertx().setTimer(50, id -> {
+            testContext.assertTrue(VxRifaCancellation.cancel(first));
+            Future<Integer> second = sender.index("second");
+            rule.vertx().setTimer(50, id2 -> {
+                testContext.assertEquals(2, indexings);
+                testContext.assertTrue(VxRifaCancellation.cancel(second));
+                async.complete();
+            });
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testCancelledStreamStopsSource(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        SearchInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SearchInterface.class);
+        ReadStream<Integer> scan = sender.scan();
+        scan.handler(tick -> {
+            if (tick == 3) {
+                testContext.assertTrue(VxRifaCancellation.cancel(scan));
+                rule.vertx().setTimer(100, id -> {
+                    testContext.assertTrue(tickStream.paused);
+                    testContext.assertNull(tickStream.handler);
+                    tickStream.stop();
+                    async.complete();
+                });
+            } else {
+                testContext.assertTrue(tick < 3, "Handler is called after cancellation");
+            }
+        });
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaCallContext;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestDeadlines {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger receivedCalls = new AtomicInteger();
+
+    class Receiver implements DeadlineInterface {
+
+        @Override
+        public Future<Void> work(long duration) {
+            receivedCalls.incrementAndGet();
+            try {
+                // Overloaded receiver does not process queued messages in time
+                Thread.sleep(duration);
+            } catch (InterruptedException ex) {
+                return Future.failedFuture(ex);
+            }
+            return Future.succeededFuture();
+        }
+
+        @Override
+        public Future<Long> remainingTime() {
+            return Future.succeededFuture(VxRifaCallContext.current().getRemainingTime());
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), DeadlineInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testExpiredCallsAreDropped(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        DeadlineInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), DeadlineInterface.class);
+        sender.work(150);
+        sender.work(0).onComplete(testContext.asyncAssertFailure(failure -> {
+            testContext.assertEquals(1, receivedCalls.get());
+            async.complete();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testRemainingTimeIsAvailable(TestContext testContext) {
+
+        DeadlineInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), DeadlineInterface.class);
+        sender.remainingTime().onComplete(testContext.asyncAssertSuccess(remainingTime -> {
+            testContext.assertTrue(remainingTime > 0 && remainingTime <= 1000, "Remaining time " + remainingTime);
+            testContext.assertNull(VxRifaCallContext.current());
+        }));
+
+    }
+
+}
@@ -0,0 +1,176 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestDirectInvocation {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    class Counter implements DirectInvocationInterface {
+
+        volatile int value;
+        
+        int squares;
+
+        @Override
+        public void increment(int delta) {
+            value += delta;
+        }
+
+        @Override
+        public Future<Integer> current() {
+            return Future.succeededFuture(value);
+        }
+
+        @Override
+        public Future<Void> fail(String text) {
+            throw new IllegalStateException(text);
+        }
+
+        @Override
+        public Future<Integer> square(int value) {
+            squares++;
+            return Future.succeededFuture(value * value);
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext context) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+    }
+
+    @Test(timeout = 3000L)
+    public void testSameContextIsCalledDirectly(TestContext context) {
+
+        Async async = context.async();
+
+        Counter counter = new Counter();
+        DirectInvocationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), DirectInvocationInterface.class);
+        VxRifaUtil.registerReceiver(rule.vertx(), DirectInvocationInterface.class, counter).onComplete(context.asyncAssertSuccess(receiver -> {
+            sender.increment(5);
+            // Receiver handles direct message at once so result is visible immediately
+            context.assertEquals(5, counter.value);
+            Future<Integer> current = sender.current();
+            // But reply is passed to invoker later on its context
+            context.assertFalse(current.isComplete());
+            current.onComplete(context.asyncAssertSuccess(value -> {
+                context.assertEquals(5, value);
+                sender.fail("Direct").onComplete(context.asyncAssertFailure(ex -> {
+                    context.assertTrue(ex instanceof IllegalStateException);
+                    context.assertEquals("Direct", ex.getMessage());
+                    receiver.unregisterReceiver().onComplete(context.asyncAssertSuccess(v -> {
+                        sender.current().onComplete(context.asyncAssertFailure(noReceiver -> async.complete()));
+                    }));
+                }));
+            }));
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testDirectInvocationResumesWhenOneReceiverIsLeft(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        Counter first = new Counter();
+        Counter second = new Counter();
+        DirectInvocationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), DirectInvocationInterface.class);
+        VxRifaUtil.registerReceiver(rule.vertx(), DirectInvocationInterface.class, first).onComplete(testContext.asyncAssertSuccess(firstReceiver -> {
+            VxRifaUtil.registerReceiver(rule.vertx(), DirectInvocationInterface.class, second).onComplete(testContext.asyncAssertSuccess(secondReceiver -> {
+                // EventBus chooses one of two receivers so call is not direct
+                sender.increment(1);
+                testContext.assertEquals(0, first.value + second.value);
+                secondReceiver.unregisterReceiver().onComplete(testContext.asyncAssertSuccess(v -> {
+                    int before = first.value;
+                    sender.increment(1);
+                    testContext.assertEquals(before + 1, first.value);
+                    firstReceiver.unregisterReceiver().onComplete(testContext.asyncAssertSuccess(unregistered -> {
+                        sender.current().onComplete(testContext.asyncAssertFailure(noReceiver -> async.complete()));
+                    }));
+                }));
+            }));
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testOtherContextUsesEventBus(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        Counter counter = new Counter();
+        VxRifaUtil.registerReceiver(rule.vertx(), DirectInvocationInterface.class, counter).onComplete(testContext.asyncAssertSuccess(receiver -> {
+            // Other context shares event loop thread with receiver so receiver can't handle message before assertion
+            ContextInternal receiverContext = (ContextInternal) Vertx.currentContext();
+            ContextInternal otherContext = ((VertxInternal) rule.vertx()).createEventLoopContext(receiverContext.nettyEventLoop(), null, Thread.currentThread().getContextClassLoader());
+            otherContext.runOnContext(v -> {
+                DirectInvocationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), DirectInvocationInterface.class);
+                sender.increment(7);
+                testContext.assertEquals(0, counter.value);
+                sender.current().onComplete(testContext.asyncAssertSuccess(value -> {
+                    testContext.assertEquals(7, value);
+                    receiver.unregisterReceiver().onComplete(testContext.asyncAssertSuccess(unregistered -> async.complete()));
+                }));
+            });
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testDirectCallsAreMemoized(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        Counter counter = new Counter();
+        DirectInvocationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), DirectInvocationInterface.class);
+        VxRifaUtil.registerReceiver(rule.vertx(), DirectInvocationInterface.class, counter).onComplete(testContext.asyncAssertSuccess(receiver -> {
+            sender.square(3).onComplete(testContext.asyncAssertSuccess(first -> {
+                sender.square(3).onComplete(testContext.asyncAssertSuccess(second -> {
+                    testContext.assertEquals(9, first);
+                    testContext.assertEquals(9, second);
+                    testContext.assertEquals(1, counter.squares);
+                    receiver.unregisterReceiver().onComplete(testContext.asyncAssertSuccess(unregistered -> async.complete()));
+                }));
+            }));
+        }));
+
+    }
+
+}
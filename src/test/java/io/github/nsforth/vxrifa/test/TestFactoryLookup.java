@@ -0,0 +1,117 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestFactoryLookup {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    interface NotAnnotatedInterface {
+    }
+
+    @Test
+    public void testFactoryFromOtherClassLoader(TestContext testContext) throws Exception {
+
+        ClassLoader classLoader = new ChildFirstClassLoader(false);
+        Class<?> interfaceType = classLoader.loadClass(SenderReceiverInterface.class.getName());
+        testContext.assertFalse(interfaceType == SenderReceiverInterface.class);
+
+        Object sender = VxRifaUtil.getSenderByInterface(rule.vertx(), interfaceType);
+        testContext.assertTrue(interfaceType.isInstance(sender));
+        testContext.assertEquals(classLoader, sender.getClass().getClassLoader());
+        testContext.assertNotNull(VxRifaUtil.getReceiverRegistrator(rule.vertx(), interfaceType));
+
+    }
+
+    @Test
+    public void testFactoryFoundByNameWithoutServicesFile(TestContext testContext) throws Exception {
+
+        ClassLoader classLoader = new ChildFirstClassLoader(true);
+        Class<?> interfaceType = classLoader.loadClass(SenderReceiverInterface.class.getName());
+
+        Object sender = VxRifaUtil.getSenderByInterface(rule.vertx(), interfaceType);
+        testContext.assertTrue(interfaceType.isInstance(sender));
+        testContext.assertEquals(classLoader, sender.getClass().getClassLoader());
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoFactoryForNotAnnotatedInterface() {
+        VxRifaUtil.getSenderByInterface(rule.vertx(), NotAnnotatedInterface.class);
+    }
+
+    /**
+     * Loads test classes by itself like fat jar launchers or OSGi bundles do, other classes come from parent.
+     */
+    private static class ChildFirstClassLoader extends URLClassLoader {
+
+        private final boolean hideServices;
+
+        private ChildFirstClassLoader(boolean hideServices) {
+            super(new URL[]{TestFactoryLookup.class.getProtectionDomain().getCodeSource().getLocation()}, TestFactoryLookup.class.getClassLoader());
+            this.hideServices = hideServices;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(TestFactoryLookup.class.getPackage().getName() + ".")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loadedClass = findLoadedClass(name);
+                if (loadedClass == null) {
+                    loadedClass = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(loadedClass);
+                }
+                return loadedClass;
+            }
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            if (hideServices && name.startsWith("META-INF/services/")) {
+                return Collections.emptyEnumeration();
+            }
+            return super.getResources(name);
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestHedgedRequests {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger receivedCalls = new AtomicInteger();
+
+    class Replica implements ReplicatedInterface {
+        
+        private final String name;
+        private final boolean paused;
+
+        Replica(String name, boolean paused) {
+            this.name = name;
+            this.paused = paused;
+        }
+
+        @Override
+        public Future<String> lookup(String key) {
+            receivedCalls.incrementAndGet();
+            // Paused replica never replies like receiver stuck in GC
+            return paused ? Promise.<String>promise().future() : Future.succeededFuture(name + ":" + key);
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), ReplicatedInterface.class, new Replica("fast", false)).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testFastRepliesAreNotHedged(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        ReplicatedInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReplicatedInterface.class);
+        sender.lookup("a")
+                .compose(result -> sender.lookup("b"))
+                .compose(result -> sender.lookup("c"))
+                .onComplete(testContext.asyncAssertSuccess(result -> {
+                    testContext.assertEquals("fast:c", result);
+                    testContext.assertEquals(3, receivedCalls.get());
+                    async.complete();
+                }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testSlowReplicaIsHedged(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        VxRifaUtil.registerReceiver(rule.vertx(), ReplicatedInterface.class, new Replica("paused", true)).onComplete(testContext.asyncAssertSuccess(registered -> {
+            ReplicatedInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReplicatedInterface.class);
+            // Event bus delivers calls to replicas in turn so some of them reach paused one
+            sender.lookup("a")
+                    .compose(result -> sender.lookup("b"))
+                    .compose(result -> sender.lookup("c"))
+                    .compose(result -> sender.lookup("d"))
+                    .onComplete(testContext.asyncAssertSuccess(result -> {
+                        testContext.assertEquals("fast:d", result);
+                        testContext.assertTrue(receivedCalls.get() > 4);
+                        async.complete();
+                    }));
+        }));
+
+    }
+
+}
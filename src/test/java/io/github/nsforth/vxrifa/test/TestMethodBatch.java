@@ -0,0 +1,128 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestMethodBatch {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger sentMessages = new AtomicInteger();
+    private final List<String> audits = new ArrayList<>();
+    private final List<List<Long>> metrics = new ArrayList<>();
+
+    class Receiver implements TelemetryInterface {
+
+        @Override
+        public void audit(String event, int severity) {
+            audits.add(event + ":" + severity);
+        }
+
+        @Override
+        public void metric(long value) {
+            throw new IllegalStateException("Batch should be passed to List overload");
+        }
+
+        @Override
+        public void metric(List<Long> values) {
+            metrics.add(values);
+        }
+
+        @Override
+        public Future<Void> flush() {
+            return Future.succeededFuture();
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        rule.vertx().eventBus().addOutboundInterceptor(deliveryContext -> {
+            if (TelemetryInterface.class.getName().equals(deliveryContext.message().address())) {
+                sentMessages.incrementAndGet();
+            }
+            deliveryContext.next();
+        });
+        VxRifaUtil.registerReceiver(rule.vertx(), TelemetryInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsAreReplayedInOrder(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        TelemetryInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), TelemetryInterface.class);
+        for (int i = 0; i < 25; i++) {
+            sender.audit("event" + i, i);
+        }
+        
+        // Two full batches are sent at once and the rest after timeout
+        testContext.assertEquals(2, sentMessages.get());
+        rule.vertx().setTimer(200, id -> {
+            testContext.assertEquals(3, sentMessages.get());
+            testContext.assertEquals(25, audits.size());
+            for (int i = 0; i < 25; i++) {
+                testContext.assertEquals("event" + i + ":" + i, audits.get(i));
+            }
+            async.complete();
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testBatchIsPassedToListOverload(TestContext testContext) {
+
+        TelemetryInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), TelemetryInterface.class);
+        for (long i = 0; i < 100; i++) {
+            sender.metric(i);
+        }
+        
+        // Batch is flushed on the next tick so it is delivered before later request
+        rule.vertx().runOnContext(v -> {
+            sender.flush().onComplete(testContext.asyncAssertSuccess(result -> {
+                testContext.assertEquals(1, metrics.size());
+                testContext.assertEquals(100, metrics.get(0).size());
+                testContext.assertEquals(99L, metrics.get(0).get(99));
+                testContext.assertEquals(2, sentMessages.get());
+            }));
+        });
+
+    }
+
+}
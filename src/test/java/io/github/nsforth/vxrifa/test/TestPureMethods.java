@@ -0,0 +1,132 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaReceiver;
+import io.github.nsforth.vxrifa.VxRifaResultCache;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestPureMethods {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger receivedCalls = new AtomicInteger();
+    
+    private VxRifaReceiver<PureFunctionsInterface> receiver;
+
+    class Receiver implements PureFunctionsInterface {
+
+        @Override
+        public Future<Long> factorial(int n) {
+            receivedCalls.incrementAndGet();
+            if (n < 0) {
+                return Future.failedFuture(new IllegalArgumentException("Negative argument"));
+            }
+            long result = 1;
+            for (int i = 2; i <= n; i++) {
+                result *= i;
+            }
+            return Future.succeededFuture(result);
+        }
+
+        @Override
+        public Future<Long> random() {
+            receivedCalls.incrementAndGet();
+            return Future.succeededFuture(System.nanoTime());
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), PureFunctionsInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess(registered -> receiver = registered));
+    }
+
+    @Test(timeout = 3000L)
+    public void testResultsAreMemoizedForAllSenders(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        PureFunctionsInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), PureFunctionsInterface.class);
+        PureFunctionsInterface otherSender = new PureFunctionsInterfaceVxRifaSender(rule.vertx());
+        sender.factorial(5).compose(result -> {
+            testContext.assertEquals(120L, result);
+            return otherSender.factorial(5);
+        }).compose(result -> {
+            testContext.assertEquals(120L, result);
+            testContext.assertEquals(1, receivedCalls.get());
+            return sender.factorial(-1);
+        }).recover(failure -> {
+            testContext.assertEquals("Negative argument", failure.getMessage());
+            // Failed results are not memoized
+            return sender.factorial(-1);
+        }).recover(failure -> {
+            testContext.assertEquals(3, receivedCalls.get());
+            return sender.random();
+        }).compose(result -> sender.random()).onComplete(testContext.asyncAssertSuccess(result -> {
+            testContext.assertEquals(5, receivedCalls.get());
+            VxRifaResultCache memoizedResults = receiver.getMemoizedResults().get("factorial(int)");
+            testContext.assertEquals(1L, memoizedResults.getHitCount());
+            testContext.assertEquals(3L, memoizedResults.getMissCount());
+            testContext.assertEquals(1, receiver.getMemoizedResults().size());
+            async.complete();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testLeastRecentlyUsedResultsAreEvicted(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        PureFunctionsInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), PureFunctionsInterface.class);
+        sender.factorial(1)
+                .compose(result -> sender.factorial(2))
+                .compose(result -> sender.factorial(1))
+                .compose(result -> sender.factorial(3))
+                .compose(result -> sender.factorial(1))
+                .onComplete(testContext.asyncAssertSuccess(result -> {
+                    testContext.assertEquals(3, receivedCalls.get());
+                    VxRifaResultCache memoizedResults = receiver.getMemoizedResults().get("factorial(int)");
+                    testContext.assertEquals(2, memoizedResults.size());
+                    testContext.assertEquals(1L, memoizedResults.getEvictionCount());
+                    testContext.assertEquals(2L, memoizedResults.getHitCount());
+                    async.complete();
+                }));
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.VertxOptions;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestReceiverPool {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger createdInstances = new AtomicInteger();
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    class Receiver implements ReadMostlyInterface {
+        
+        private final Thread thread = Thread.currentThread();
+
+        @Override
+        public Future<String> load(String key, int version) {
+            if (Thread.currentThread() != thread) {
+                return Future.failedFuture("Instance is called out of its event loop");
+            }
+            threads.add(thread.getName());
+            return Future.succeededFuture(key + version);
+        }
+
+        @Override
+        public Future<Integer> checksum(byte[] data) {
+            return Future.succeededFuture(data.length);
+        }
+
+    }
+    
+    private ReadMostlyInterface createReceiver() {
+        createdInstances.incrementAndGet();
+        return new Receiver();
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsAreSpreadOverEventLoops(TestContext testContext) {
+
+        int instances = 4;
+        int requests = 40;
+        Async async = testContext.async(requests);
+
+        VxRifaUtil.registerReceiverPool(rule.vertx(), ReadMostlyInterface.class, this::createReceiver, instances).onComplete(testContext.asyncAssertSuccess(pool -> {
+            testContext.assertEquals(instances, createdInstances.get());
+            ReadMostlyInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+            for (int i = 0; i < requests; i++) {
+                sender.load("key", i).onComplete(testContext.asyncAssertSuccess(result -> async.countDown()));
+            }
+            // Instances above number of event loops share them
+            async.handler(done -> testContext.assertEquals(Math.min(instances, VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE), threads.size()));
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testInstancesDoNotShareEventLoops(TestContext testContext) {
+
+        Set<Thread> instanceThreads = ConcurrentHashMap.newKeySet();
+        VxRifaUtil.registerReceiverPool(rule.vertx(), ReadMostlyInterface.class, () -> {
+            instanceThreads.add(Thread.currentThread());
+            return createReceiver();
+        }).onComplete(testContext.asyncAssertSuccess(pool -> testContext.assertEquals(VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE, instanceThreads.size())));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testPoolIsUnregisteredAtOnce(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        VxRifaUtil.registerReceiverPool(rule.vertx(), ReadMostlyInterface.class, this::createReceiver).onComplete(testContext.asyncAssertSuccess(pool -> {
+            testContext.assertTrue(createdInstances.get() > 1);
+            pool.unregisterReceiver().onComplete(testContext.asyncAssertSuccess(unregistered -> {
+                ReadMostlyInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+                sender.load("key", 1).onComplete(testContext.asyncAssertFailure(ex -> async.complete()));
+            }));
+        }));
+
+    }
+
+}
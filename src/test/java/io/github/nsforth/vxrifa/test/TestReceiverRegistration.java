@@ -0,0 +1,112 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaIgnore;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestReceiverRegistration {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    static class CompleteReceiver implements ReadMostlyInterface {
+
+        @Override
+        public Future<String> load(String key, int version) {
+            return Future.succeededFuture(key + version);
+        }
+
+        @Override
+        public Future<Integer> checksum(byte[] data) {
+            return Future.succeededFuture(data.length);
+        }
+
+    }
+
+    static class PartialReceiver extends CompleteReceiver {
+
+        @Override
+        @VxRifaIgnore
+        public Future<Integer> checksum(byte[] data) {
+            return super.checksum(data);
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+    }
+
+    @Test(timeout = 3000L)
+    public void testIgnoredMethodsAreResolvedPerImplementationClass(TestContext testContext) {
+
+        Async async = testContext.async(2);
+
+        Future<?> complete = VxRifaUtil.registerReceiver(rule.vertx(), ReadMostlyInterface.class, new CompleteReceiver(), "complete");
+        Future<?> partial = VxRifaUtil.registerReceiver(rule.vertx(), ReadMostlyInterface.class, new PartialReceiver(), "partial");
+
+        CompositeFuture.all(complete, partial).onComplete(testContext.asyncAssertSuccess(registered -> {
+            VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class, "complete").checksum(new byte[3]).onComplete(testContext.asyncAssertSuccess(result -> {
+                testContext.assertEquals(3, result);
+                async.countDown();
+            }));
+            VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class, "partial").checksum(new byte[3]).onComplete(testContext.asyncAssertFailure(ex -> {
+                testContext.assertEquals("Method implementation is not provided", ex.getMessage());
+                async.countDown();
+            }));
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testManyReceiversOfTheSameClass(TestContext testContext) {
+
+        int receivers = 2000;
+        List<Future> registrations = new ArrayList<>(receivers);
+        for (int i = 0; i < receivers; i++) {
+            registrations.add(VxRifaUtil.registerReceiver(rule.vertx(), ReadMostlyInterface.class, new PartialReceiver(), "receiver" + i));
+        }
+
+        CompositeFuture.all(registrations).onComplete(testContext.asyncAssertSuccess(registered -> {
+            ReadMostlyInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class, "receiver" + (receivers - 1));
+            sender.load("a", 1).onComplete(testContext.asyncAssertSuccess(result -> testContext.assertEquals("a1", result)));
+        }));
+
+    }
+
+}
@@ -0,0 +1,176 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestReplyChannel {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    class Receiver implements ReplyChannelInterface {
+
+        @Override
+        public Future<String> echo(String text) {
+            return Future.succeededFuture(text);
+        }
+
+        @Override
+        public Future<Void> fail(String text) {
+            return Future.failedFuture(new IllegalStateException(text));
+        }
+
+        @Override
+        public Future<Void> neverReplies() {
+            return Promise.<Void>promise().future();
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext context) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), ReplyChannelInterface.class, new Receiver()).onComplete(context.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testConcurrentRequests(TestContext context) {
+
+        int requests = 100;
+        Async async = context.async(requests);
+
+        ReplyChannelInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReplyChannelInterface.class);
+        for (int i = 0; i < requests; i++) {
+            String text = "Request " + i;
+            sender.echo(text).onComplete(context.asyncAssertSuccess(reply -> {
+                context.assertEquals(text, reply);
+                async.countDown();
+            }));
+        }
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testFailure(TestContext context) {
+
+        ReplyChannelInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReplyChannelInterface.class);
+        sender.fail("Expected").onComplete(context.asyncAssertFailure(ex -> {
+            context.assertTrue(ex instanceof IllegalStateException);
+            context.assertEquals("Expected", ex.getMessage());
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testTimeout(TestContext context) {
+
+        ReplyChannelInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReplyChannelInterface.class);
+        sender.neverReplies().onComplete(context.asyncAssertFailure(ex -> {
+            context.assertTrue(ex instanceof ReplyException);
+            context.assertEquals(ReplyFailure.TIMEOUT, ((ReplyException) ex).failureType());
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testNoHandlersFailsAtOnce(TestContext context) {
+
+        ReplyChannelInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReplyChannelInterface.class, "nowhere");
+        sender.echo("Lost").onComplete(context.asyncAssertFailure(ex -> {
+            context.assertTrue(ex instanceof ReplyException);
+            context.assertEquals(ReplyFailure.NO_HANDLERS, ((ReplyException) ex).failureType());
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testSenderSurvivesUndeployOfOtherCaller(TestContext testContext) {
+
+        class SenderVerticle extends AbstractVerticle {
+
+            private ReplyChannelInterface sender;
+
+            @Override
+            public void start(Promise<Void> startPromise) {
+                sender = VxRifaUtil.getSenderByInterface(vertx, ReplyChannelInterface.class);
+                sender.echo("Before undeploy").<Void>mapEmpty().onComplete(startPromise);
+            }
+
+        }
+
+        ReplyChannelInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReplyChannelInterface.class);
+        SenderVerticle senderVerticle = new SenderVerticle();
+        rule.vertx().deployVerticle(senderVerticle, testContext.asyncAssertSuccess(deploymentId -> {
+            testContext.assertFalse(sender == senderVerticle.sender);
+            rule.vertx().undeploy(deploymentId, testContext.asyncAssertSuccess(v -> {
+                sender.echo("After undeploy").onComplete(testContext.asyncAssertSuccess(reply -> {
+                    testContext.assertEquals("After undeploy", reply);
+                }));
+            }));
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testPendingRequestsFailOnUndeployOfCaller(TestContext testContext) {
+
+        class SenderVerticle extends AbstractVerticle {
+
+            private Future<Void> pending;
+
+            @Override
+            public void start() {
+                pending = VxRifaUtil.getSenderByInterface(vertx, ReplyChannelInterface.class).neverReplies();
+            }
+
+        }
+
+        SenderVerticle senderVerticle = new SenderVerticle();
+        rule.vertx().deployVerticle(senderVerticle, testContext.asyncAssertSuccess(deploymentId -> {
+            rule.vertx().undeploy(deploymentId, testContext.asyncAssertSuccess(v -> {
+                // Request is failed by closed channel, not by its timeout
+                senderVerticle.pending.onComplete(testContext.asyncAssertFailure(ex -> {
+                    testContext.assertTrue(ex instanceof ReplyException);
+                    testContext.assertEquals(ReplyFailure.NO_HANDLERS, ((ReplyException) ex).failureType());
+                }));
+            }));
+        }));
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestResultCache {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger receivedCalls = new AtomicInteger();
+    private final Map<String, String> configuration = new HashMap<>();
+
+    class Receiver implements ConfigurationInterface {
+
+        @Override
+        public Future<String> get(String key) {
+            receivedCalls.incrementAndGet();
+            return Future.succeededFuture(configuration.get(key));
+        }
+
+        @Override
+        public Future<Void> set(String key, String value) {
+            configuration.put(key, value);
+            return Future.succeededFuture();
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        configuration.put("a", "1");
+        configuration.put("b", "2");
+        configuration.put("c", "3");
+        VxRifaUtil.registerReceiver(rule.vertx(), ConfigurationInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testResultIsCachedUntilTtl(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        ConfigurationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ConfigurationInterface.class);
+        sender.get("a").compose(first -> {
+            testContext.assertEquals("1", first);
+            configuration.put("a", "changed");
+            return sender.get("a");
+        }).compose(cached -> {
+            testContext.assertEquals("1", cached);
+            testContext.assertEquals(1, receivedCalls.get());
+            Future<Void> delay = Future.future(promise -> rule.vertx().setTimer(300, id -> promise.complete()));
+            return delay.compose(v -> sender.get("a"));
+        }).onComplete(testContext.asyncAssertSuccess(expired -> {
+            testContext.assertEquals("changed", expired);
+            testContext.assertEquals(2, receivedCalls.get());
+            async.complete();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testLeastRecentlyUsedIsEvicted(TestContext testContext) {
+
+        ConfigurationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ConfigurationInterface.class);
+        sender.get("a")
+                .compose(v -> sender.get("b"))
+                .compose(v -> sender.get("a"))
+                .compose(v -> sender.get("c"))
+                .compose(v -> {
+                    testContext.assertEquals(3, receivedCalls.get());
+                    return sender.get("a");
+                })
+                .compose(v -> {
+                    testContext.assertEquals(3, receivedCalls.get());
+                    return sender.get("b");
+                })
+                .onComplete(testContext.asyncAssertSuccess(v -> testContext.assertEquals(4, receivedCalls.get())));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testInvalidation(TestContext testContext) {
+
+        ConfigurationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ConfigurationInterface.class);
+        sender.get("a").compose(first -> {
+            VxRifaUtil.invalidateCachedResults(rule.vertx(), ConfigurationInterface.class);
+            return sender.get("a");
+        }).onComplete(testContext.asyncAssertSuccess(v -> testContext.assertEquals(2, receivedCalls.get())));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testInvalidationByPublisher(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        ConfigurationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ConfigurationInterface.class);
+        ConfigurationChanged publisher = VxRifaUtil.getPublisherByInterface(rule.vertx(), ConfigurationChanged.class);
+        sender.get("a").compose(first -> sender.set("a", "changed")).onComplete(testContext.asyncAssertSuccess(v -> {
+            // Subscription of cache is registered asynchronously
+            rule.vertx().setTimer(100, id -> {
+                publisher.changed("a");
+                rule.vertx().setTimer(100, id2 -> sender.get("a").onComplete(testContext.asyncAssertSuccess(value -> {
+                    testContext.assertEquals("changed", value);
+                    async.complete();
+                })));
+            });
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testSendersOfOtherContextsShareCache(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        ConfigurationInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ConfigurationInterface.class);
+        sender.get("a").onComplete(testContext.asyncAssertSuccess(first -> {
+            ContextInternal otherContext = ((VertxInternal) rule.vertx()).createEventLoopContext(null, null, new JsonObject(), Thread.currentThread().getContextClassLoader());
+            otherContext.runOnContext(v -> {
+                ConfigurationInterface otherSender = VxRifaUtil.getSenderByInterface(rule.vertx(), ConfigurationInterface.class);
+                testContext.assertFalse(sender == otherSender);
+                testContext.assertTrue(Vertx.currentContext() == otherContext);
+                otherSender.get("a").onComplete(testContext.asyncAssertSuccess(cached -> {
+                    testContext.assertEquals("1", cached);
+                    testContext.assertEquals(1, receivedCalls.get());
+                    async.complete();
+                }));
+            });
+        }));
+
+    }
+
+}
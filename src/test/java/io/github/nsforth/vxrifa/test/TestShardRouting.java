@@ -0,0 +1,188 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaReceiver;
+import io.github.nsforth.vxrifa.VxRifaShardRing;
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestShardRouting {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private static final int SHARDS = 3;
+    private static final int ACCOUNTS = 100;
+    
+    private final List<VxRifaReceiver<AccountsInterface>> shards = new ArrayList<>();
+
+    class Receiver implements AccountsInterface {
+        
+        private final String name;
+        private final Map<String, Integer> balances = new HashMap<>();
+
+        Receiver(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Future<Integer> deposit(String account, int amount) {
+            return Future.succeededFuture(balances.merge(account, amount, Integer::sum));
+        }
+
+        @Override
+        public Future<String> shardOf(String account) {
+            return Future.succeededFuture(name);
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        for (int shard = 0; shard < SHARDS; shard++) {
+            VxRifaUtil.registerShardReceiver(rule.vertx(), AccountsInterface.class, new Receiver("shard" + shard), shard)
+                    .onComplete(testContext.asyncAssertSuccess(shards::add));
+        }
+    }
+
+    @Test(timeout = 3000L)
+    public void testEqualKeysReachTheSameShard(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        AccountsInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), AccountsInterface.class);
+        List<Future> deposits = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            deposits.add(sender.deposit("account" + i, 1));
+            deposits.add(sender.deposit("account" + i, 2));
+        }
+        List<Future> owners = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            owners.add(sender.shardOf("account" + i));
+        }
+        CompositeFuture.all(deposits).compose(v -> CompositeFuture.all(owners)).onComplete(testContext.asyncAssertSuccess(result -> {
+            Map<String, Integer> accountsPerShard = new HashMap<>();
+            for (int i = 0; i < ACCOUNTS; i++) {
+                // Second deposit sees the first one so both reached the same shard
+                testContext.assertEquals(3, deposits.get(i * 2 + 1).result());
+                accountsPerShard.merge((String) owners.get(i).result(), 1, Integer::sum);
+            }
+            testContext.assertEquals(SHARDS, accountsPerShard.size());
+            async.complete();
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testOnlyKeysOfLeftShardAreMoved(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        VxRifaShardRing ring = VxRifaShardRing.get(rule.vertx(), AccountsInterface.class.getCanonicalName());
+        testContext.assertEquals(SHARDS, ring.getShards().size());
+        Map<String, String> routes = new HashMap<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            routes.put("account" + i, ring.route("account" + i));
+        }
+
+        String leftShard = VxRifaShardRing.getShardAddress(AccountsInterface.class.getCanonicalName(), 0);
+        shards.get(0).unregisterReceiver().onComplete(testContext.asyncAssertSuccess(v -> {
+            testContext.assertFalse(ring.getShards().contains(leftShard));
+            AccountsInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), AccountsInterface.class);
+            List<Future> owners = new ArrayList<>();
+            for (int i = 0; i < ACCOUNTS; i++) {
+                owners.add(sender.shardOf("account" + i));
+            }
+            CompositeFuture.all(owners).onComplete(testContext.asyncAssertSuccess(result -> {
+                for (int i = 0; i < ACCOUNTS; i++) {
+                    String previousRoute = routes.get("account" + i);
+                    testContext.assertNotEquals("shard0", owners.get(i).result());
+                    if (!previousRoute.equals(leftShard)) {
+                        testContext.assertEquals(previousRoute, ring.route("account" + i));
+                    }
+                }
+                async.complete();
+            }));
+        }));
+
+    }
+
+    @Test(timeout = 6000L)
+    public void testSilentShardOfOtherNodeLeavesRing(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        VxRifaShardRing ring = VxRifaShardRing.get(rule.vertx(), AccountsInterface.class.getCanonicalName());
+        String remoteShard = VxRifaShardRing.getShardAddress(AccountsInterface.class.getCanonicalName(), SHARDS);
+        rule.vertx().eventBus().publish(AccountsInterface.class.getCanonicalName() + "#ring", "join:" + remoteShard);
+        rule.vertx().setTimer(VxRifaShardRing.HEARTBEAT_INTERVAL, joined -> {
+            testContext.assertTrue(ring.getShards().contains(remoteShard));
+            rule.vertx().setPeriodic(VxRifaShardRing.HEARTBEAT_INTERVAL, timerId -> {
+                if (!ring.getShards().contains(remoteShard)) {
+                    // Local shards never expire
+                    testContext.assertEquals(SHARDS, ring.getShards().size());
+                    async.complete();
+                }
+            });
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsFailWithoutShards(TestContext testContext) {
+
+        AccountsInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), AccountsInterface.class, "unsharded.accounts");
+        // Sender passes only message of eventBus failure to invoker
+        sender.deposit("account", 1).onComplete(testContext.asyncAssertFailure(failure -> {
+            testContext.assertEquals("No handlers for address unsharded.accounts", failure.getMessage());
+        }));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsWithoutShardsAreSentToInterfaceAddress(TestContext testContext) {
+
+        VxRifaUtil.registerReceiver(rule.vertx(), AccountsInterface.class, new Receiver("unsharded"), "unsharded.accounts").onComplete(testContext.asyncAssertSuccess(registered -> {
+            AccountsInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), AccountsInterface.class, "unsharded.accounts");
+            sender.shardOf("account").onComplete(testContext.asyncAssertSuccess(shard -> testContext.assertEquals("unsharded", shard)));
+        }));
+
+    }
+
+}
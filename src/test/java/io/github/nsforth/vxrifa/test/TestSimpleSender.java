@@ -203,7 +203,8 @@ public class TestSimpleSender {
                         context.fail("Should catch exception by timeout");
                     } else {
                         Throwable cause = handler.cause();
-                        context.assertTrue(cause instanceof io.vertx.core.impl.NoStackTraceThrowable);
+                        context.assertTrue(cause instanceof io.vertx.core.eventbus.ReplyException);
+                        context.assertEquals(io.vertx.core.eventbus.ReplyFailure.TIMEOUT, ((io.vertx.core.eventbus.ReplyException) cause).failureType());
                     }
                     async.countDown();
                 });
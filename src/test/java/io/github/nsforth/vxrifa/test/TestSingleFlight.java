@@ -0,0 +1,149 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestSingleFlight {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger receivedCalls = new AtomicInteger();
+
+    class Receiver implements ReadMostlyInterface {
+
+        @Override
+        public Future<String> load(String key, int version) {
+            receivedCalls.incrementAndGet();
+            Promise<String> promise = Promise.promise();
+            rule.vertx().setTimer(50, id -> promise.complete(key + version));
+            return promise.future();
+        }
+
+        @Override
+        public Future<Integer> checksum(byte[] data) {
+            receivedCalls.incrementAndGet();
+            int sum = 0;
+            for (byte b : data) {
+                sum += b;
+            }
+            return Future.succeededFuture(sum);
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), ReadMostlyInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testIdenticalCallsAreCoalesced(TestContext testContext) {
+
+        int requests = 10;
+        Async async = testContext.async(requests + 1);
+        Async afterCompletion = testContext.async();
+
+        ReadMostlyInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+        for (int i = 0; i < requests; i++) {
+            sender.load("a", 1).onComplete(testContext.asyncAssertSuccess(result -> {
+                testContext.assertEquals("a1", result);
+                async.countDown();
+            }));
+        }
+        sender.load("a", 2).onComplete(testContext.asyncAssertSuccess(result -> {
+            testContext.assertEquals("a2", result);
+            async.countDown();
+        }));
+
+        async.handler(done -> {
+            testContext.assertEquals(2, receivedCalls.get());
+            // Completed call is not in flight anymore
+            sender.load("a", 1).onComplete(testContext.asyncAssertSuccess(result -> {
+                testContext.assertEquals(3, receivedCalls.get());
+                afterCompletion.complete();
+            }));
+        });
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testArraysAreComparedByContent(TestContext testContext) {
+
+        Async async = testContext.async(2);
+
+        ReadMostlyInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+        Handler<Integer> checkResult = result -> {
+            testContext.assertEquals(6, result);
+            testContext.assertEquals(1, receivedCalls.get());
+            async.countDown();
+        };
+        sender.checksum(new byte[]{1, 2, 3}).onComplete(testContext.asyncAssertSuccess(checkResult));
+        sender.checksum(new byte[]{1, 2, 3}).onComplete(testContext.asyncAssertSuccess(checkResult));
+
+    }
+
+    @Test
+    public void testMessagesEquality() {
+        Assert.assertEquals(new ReadMostlyInterfaceVxRifaMessages.LoadMessage("a", 1), new ReadMostlyInterfaceVxRifaMessages.LoadMessage("a", 1));
+        Assert.assertEquals(new ReadMostlyInterfaceVxRifaMessages.LoadMessage("a", 1).hashCode(), new ReadMostlyInterfaceVxRifaMessages.LoadMessage("a", 1).hashCode());
+        Assert.assertNotEquals(new ReadMostlyInterfaceVxRifaMessages.LoadMessage("a", 1), new ReadMostlyInterfaceVxRifaMessages.LoadMessage("a", 2));
+        Assert.assertNotEquals(new ReadMostlyInterfaceVxRifaMessages.LoadMessage(null, 1), new ReadMostlyInterfaceVxRifaMessages.LoadMessage("a", 1));
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallersOfOneContextShareSender(TestContext testContext) {
+
+        Async async = testContext.async(2);
+
+        ReadMostlyInterface first = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+        ReadMostlyInterface second = VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class);
+        testContext.assertTrue(first == second);
+        testContext.assertFalse(first == VxRifaUtil.getSenderByInterface(rule.vertx(), ReadMostlyInterface.class, "other"));
+        Handler<String> checkResult = result -> {
+            testContext.assertEquals("b1", result);
+            testContext.assertEquals(1, receivedCalls.get());
+            async.countDown();
+        };
+        first.load("b", 1).onComplete(testContext.asyncAssertSuccess(checkResult));
+        second.load("b", 1).onComplete(testContext.asyncAssertSuccess(checkResult));
+
+    }
+
+}
@@ -0,0 +1,115 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaTimeoutWheel;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestTimeoutWheel {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Test(timeout = 3000L)
+    public void testExpirationAndCancel(TestContext testContext) {
+
+        Async async = testContext.async(2);
+
+        VxRifaTimeoutWheel timeoutWheel = VxRifaTimeoutWheel.configure(rule.vertx(), 10);
+        testContext.assertEquals(timeoutWheel, VxRifaTimeoutWheel.get(rule.vertx()));
+
+        Context timeoutContext = Vertx.currentContext();
+        long started = System.currentTimeMillis();
+        for (int i = 0; i < 2; i++) {
+            timeoutWheel.schedule(new VxRifaTimeoutWheel.Timeout() {
+                @Override
+                protected void expired() {
+                    testContext.assertEquals(timeoutContext, Vertx.currentContext());
+                    testContext.assertTrue(System.currentTimeMillis() - started >= 50);
+                    async.countDown();
+                }
+            }, 50);
+        }
+
+        VxRifaTimeoutWheel.Timeout cancelled = new VxRifaTimeoutWheel.Timeout() {
+            @Override
+            protected void expired() {
+                testContext.fail("Cancelled timeout should not expire");
+            }
+        };
+        timeoutWheel.schedule(cancelled, 20);
+        testContext.assertTrue(timeoutWheel.cancel(cancelled));
+        testContext.assertFalse(timeoutWheel.cancel(cancelled));
+
+    }
+
+    @Test(timeout = 5000L)
+    public void testTimeoutScheduledDuringTickDoesNotExpireEarly(TestContext testContext) {
+
+        long[] offsets = {30, 130, 250, 360};
+        long[] delays = {100, 300};
+        Async async = testContext.async(offsets.length * delays.length);
+
+        VxRifaTimeoutWheel timeoutWheel = VxRifaTimeoutWheel.configure(rule.vertx(), 100);
+        // Wheel is already ticking when timeouts are scheduled at different points of its ticks
+        timeoutWheel.schedule(new VxRifaTimeoutWheel.Timeout() {
+            @Override
+            protected void expired() {
+            }
+        }, 10);
+        for (long offset : offsets) {
+            rule.vertx().setTimer(offset, id -> {
+                for (long delay : delays) {
+                    long scheduled = System.nanoTime();
+                    timeoutWheel.schedule(new VxRifaTimeoutWheel.Timeout() {
+                        @Override
+                        protected void expired() {
+                            long elapsed = System.nanoTime() - scheduled;
+                            testContext.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(delay), "Timeout of " + delay + "ms expired after " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+                            testContext.assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(delay + 100 * 3), "Timeout of " + delay + "ms expired too late");
+                            async.countDown();
+                        }
+                    }, delay);
+                }
+            });
+        }
+
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReconfigure() {
+        VxRifaTimeoutWheel.configure(rule.vertx(), 10);
+        VxRifaTimeoutWheel.configure(rule.vertx(), 20);
+    }
+
+}
@@ -0,0 +1,185 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.VxRifaUtil;
+import io.github.nsforth.vxrifa.VxRifaVirtualThreadExecutor;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+@RunWith(VertxUnitRunner.class)
+public class TestVirtualThreads {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+    
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Queue<String> lines = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean virtualThread = new AtomicBoolean();
+
+    class Receiver implements SynchronousServiceInterface {
+
+        @Override
+        public Future<Integer> fetch(long millis) {
+            return Future.succeededFuture(block(millis));
+        }
+
+        @Override
+        public Future<Integer> fetchWide(long millis) {
+            return Future.succeededFuture(block(millis));
+        }
+
+        @Override
+        public Future<Integer> delay(long millis) {
+            // Method returns at once but its future holds the turn until timer fires
+            int concurrency = running.incrementAndGet();
+            maxRunning.accumulateAndGet(concurrency, Math::max);
+            Promise<Integer> promise = Promise.promise();
+            rule.vertx().setTimer(millis, id -> {
+                running.decrementAndGet();
+                promise.complete(concurrency);
+            });
+            return promise.future();
+        }
+
+        @Override
+        public void log(String line) {
+            if (!Context.isOnEventLoopThread()) {
+                lines.add(line);
+            }
+        }
+        
+        private int block(long millis) {
+            int concurrency = running.incrementAndGet();
+            maxRunning.accumulateAndGet(concurrency, Math::max);
+            try {
+                // Thread.isVirtual is looked up by reflection because tests are built for Java 11
+                virtualThread.set((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+            } catch (ReflectiveOperationException ex) {
+                virtualThread.set(false);
+            }
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+            return concurrency;
+        }
+
+    }
+
+    @Before
+    public void setUp(TestContext testContext) {
+        VxRifaUtil.registerRIFACodec(rule.vertx());
+        VxRifaUtil.registerReceiver(rule.vertx(), SynchronousServiceInterface.class, new Receiver()).onComplete(testContext.asyncAssertSuccess());
+    }
+
+    @Test(timeout = 3000L)
+    public void testConcurrencyIsLimitedPerInterface(TestContext testContext) {
+
+        int calls = 6;
+        Async async = testContext.async(calls);
+
+        SynchronousServiceInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SynchronousServiceInterface.class);
+        for (int i = 0; i < calls; i++) {
+            sender.fetch(100).onComplete(testContext.asyncAssertSuccess(result -> {
+                testContext.assertTrue(Context.isOnEventLoopThread());
+                async.countDown();
+            }));
+        }
+        async.handler(done -> testContext.assertEquals(2, maxRunning.get()));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testMethodLimitOverridesInterfaceOne(TestContext testContext) {
+
+        int calls = 10;
+        Async async = testContext.async(calls);
+
+        SynchronousServiceInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SynchronousServiceInterface.class);
+        for (int i = 0; i < calls; i++) {
+            sender.fetchWide(300).onComplete(testContext.asyncAssertSuccess(result -> async.countDown()));
+        }
+        async.handler(done -> testContext.assertEquals(calls, maxRunning.get()));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testTurnIsHeldUntilFutureCompletes(TestContext testContext) {
+
+        int calls = 3;
+        Async async = testContext.async(calls);
+
+        SynchronousServiceInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SynchronousServiceInterface.class);
+        for (int i = 0; i < calls; i++) {
+            sender.delay(50).onComplete(testContext.asyncAssertSuccess(result -> async.countDown()));
+        }
+        async.handler(done -> testContext.assertEquals(1, maxRunning.get()));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testCallsRunOnVirtualThreads(TestContext testContext) {
+
+        Assume.assumeTrue("Java 21 or later is required", VxRifaVirtualThreadExecutor.isVirtualThreadsAvailable());
+
+        SynchronousServiceInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SynchronousServiceInterface.class);
+        sender.fetch(1).onComplete(testContext.asyncAssertSuccess(result -> testContext.assertTrue(virtualThread.get())));
+
+    }
+
+    @Test(timeout = 3000L)
+    public void testVoidMethodsRunOffEventLoop(TestContext testContext) {
+
+        Async async = testContext.async();
+
+        SynchronousServiceInterface sender = VxRifaUtil.getSenderByInterface(rule.vertx(), SynchronousServiceInterface.class);
+        sender.log("line");
+        rule.vertx().setPeriodic(10, id -> {
+            if (lines.contains("line")) {
+                rule.vertx().cancelTimer(id);
+                async.complete();
+            }
+        });
+
+    }
+
+}
@@ -0,0 +1,119 @@
+package io.github.nsforth.vxrifa.test;
+/*
+ * Copyright (C) 2017 Nikita Staroverov.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import io.github.nsforth.vxrifa.RIFABatch;
+import io.github.nsforth.vxrifa.RIFAInvocation;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Nikita Staroverov
+ */
+public class TestWireCodec {
+    
+    // Method ids are indexes of methods sorted by name and parameters types
+    private static final int BOXED = 0;
+    private static final int OBJECTS = 1;
+    private static final int PRIMITIVES = 2;
+    
+    private final WireTypesInterfaceVxRifaCodec codec = new WireTypesInterfaceVxRifaCodec();
+    
+    private RIFAInvocation roundTrip(RIFAInvocation message) {
+        Buffer buffer = Buffer.buffer();
+        buffer.appendString("prefix");
+        codec.encodeToWire(buffer, message);
+        return codec.decodeFromWire("prefix".length(), buffer);
+    }
+
+    @Test
+    public void testPrimitives() {
+        RIFAInvocation invocation = roundTrip(new WireTypesInterfaceVxRifaMessages.PrimitivesMessage(true, (byte) 1, (short) 2, 'c', 3, 4L, 5.5f, 6.5d));
+        Assert.assertEquals(PRIMITIVES, invocation.getMethodId());
+        WireTypesInterfaceVxRifaMessages.PrimitivesMessage decoded = (WireTypesInterfaceVxRifaMessages.PrimitivesMessage) invocation;
+        Assert.assertEquals(true, decoded.bool);
+        Assert.assertEquals((byte) 1, decoded.b);
+        Assert.assertEquals((short) 2, decoded.s);
+        Assert.assertEquals('c', decoded.c);
+        Assert.assertEquals(3, decoded.i);
+        Assert.assertEquals(4L, decoded.l);
+        Assert.assertEquals(5.5f, decoded.f, 0);
+        Assert.assertEquals(6.5d, decoded.d, 0);
+    }
+    
+    @Test
+    public void testBoxedWithNulls() {
+        RIFAInvocation invocation = roundTrip(new WireTypesInterfaceVxRifaMessages.BoxedMessage(1, null, 2.0d, null));
+        Assert.assertEquals(BOXED, invocation.getMethodId());
+        WireTypesInterfaceVxRifaMessages.BoxedMessage decoded = (WireTypesInterfaceVxRifaMessages.BoxedMessage) invocation;
+        Assert.assertEquals(Integer.valueOf(1), decoded.integer);
+        Assert.assertNull(decoded.longValue);
+        Assert.assertEquals(Double.valueOf(2.0d), decoded.doubleValue);
+        Assert.assertNull(decoded.bool);
+    }
+    
+    @Test
+    public void testObjects() {
+        JsonObject json = new JsonObject().put("key", "value");
+        RIFAInvocation invocation = roundTrip(new WireTypesInterfaceVxRifaMessages.ObjectsMessage("Текст", new byte[]{1, 2, 3}, Buffer.buffer("buffer"), json, TimeUnit.SECONDS));
+        Assert.assertEquals(OBJECTS, invocation.getMethodId());
+        WireTypesInterfaceVxRifaMessages.ObjectsMessage decoded = (WireTypesInterfaceVxRifaMessages.ObjectsMessage) invocation;
+        Assert.assertEquals("Текст", decoded.text);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, decoded.bytes);
+        Assert.assertEquals(Buffer.buffer("buffer"), decoded.buffer);
+        Assert.assertEquals(json, decoded.json);
+        Assert.assertEquals(TimeUnit.SECONDS, decoded.unit);
+        decoded = (WireTypesInterfaceVxRifaMessages.ObjectsMessage) roundTrip(new WireTypesInterfaceVxRifaMessages.ObjectsMessage(null, null, null, null, null));
+        Assert.assertNull(decoded.text);
+        Assert.assertNull(decoded.bytes);
+        Assert.assertNull(decoded.buffer);
+        Assert.assertNull(decoded.json);
+        Assert.assertNull(decoded.unit);
+    }
+    
+    @Test
+    public void testBatch() {
+        RIFABatch batch = new RIFABatch(Arrays.asList(
+                new WireTypesInterfaceVxRifaMessages.BoxedMessage(1, null, 2.0d, true),
+                new WireTypesInterfaceVxRifaMessages.ObjectsMessage("Текст", null, null, null, TimeUnit.SECONDS)
+        ), new boolean[]{true, false});
+        RIFABatch decoded = (RIFABatch) roundTrip(batch);
+        Assert.assertEquals(RIFABatch.METHOD_ID, decoded.getMethodId());
+        Assert.assertEquals(2, decoded.size());
+        Assert.assertTrue(decoded.isReplyExpected(0));
+        Assert.assertFalse(decoded.isReplyExpected(1));
+        Assert.assertEquals(Integer.valueOf(1), ((WireTypesInterfaceVxRifaMessages.BoxedMessage) decoded.getInvocation(0)).integer);
+        Assert.assertEquals("Текст", ((WireTypesInterfaceVxRifaMessages.ObjectsMessage) decoded.getInvocation(1)).text);
+        Assert.assertEquals(TimeUnit.SECONDS, ((WireTypesInterfaceVxRifaMessages.ObjectsMessage) decoded.getInvocation(1)).unit);
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testSignatureMismatch() {
+        Buffer buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, new WireTypesInterfaceVxRifaMessages.BoxedMessage(1, 2L, 3.0d, true));
+        buffer.setInt(0, WireTypesInterfaceVxRifaCodec.SIGNATURE_HASH + 1);
+        codec.decodeFromWire(0, buffer);
+    }
+    
+}